@@ -0,0 +1,63 @@
+package com.gsk.architect.benchmarks;
+
+import com.gsk.architect.generator.service.LanguageModelService;
+
+import java.util.function.Consumer;
+
+/**
+ * In-memory stand-in for a model backend. Returns fixed Markdown of a configurable size without any latency,
+ * so benchmarks measure only the generator's own work. Streams in small chunks like a real backend.
+ */
+public class CannedLanguageModelService implements LanguageModelService {
+    private static final int CHUNK_SIZE = 16;
+
+    private final String question;
+    private final String hints;
+    private final String combined;
+
+    public CannedLanguageModelService(int responseKb) {
+        this.question = markdown("Design a Globally Distributed Rate Limiter", responseKb);
+        this.hints = markdown("Hints", responseKb);
+        this.combined = "===SLUG===\nglobal_rate_limiter\n===QUESTION===\n" + question + "===HINTS===\n" + hints;
+    }
+
+    @Override
+    public String generateResponse(String prompt) {
+        if (prompt.startsWith("For the following system design question")) {
+            return hints;
+        }
+        return prompt.contains("===QUESTION===") ? combined : question;
+    }
+
+    @Override
+    public void streamResponse(String prompt, Consumer<String> onChunk) {
+        String response = generateResponse(prompt);
+        for (int i = 0; i < response.length(); i += CHUNK_SIZE) {
+            onChunk.accept(response.substring(i, Math.min(response.length(), i + CHUNK_SIZE)));
+        }
+    }
+
+    @Override
+    public String getBackendName() {
+        return "canned";
+    }
+
+    @Override
+    public String getModelName() {
+        return "canned";
+    }
+
+    @Override
+    public double getTemperature() {
+        return 0;
+    }
+
+    static String markdown(String title, int sizeKb) {
+        StringBuilder text = new StringBuilder("# ").append(title).append("\n\n");
+        String line = "- Serve 1M requests/s with p99 latency under 10ms across 5 regions and 100TB of data\n";
+        while (text.length() < sizeKb * 1024) {
+            text.append(line);
+        }
+        return text.toString();
+    }
+}
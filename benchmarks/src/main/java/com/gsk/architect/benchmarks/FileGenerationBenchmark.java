@@ -0,0 +1,54 @@
+package com.gsk.architect.benchmarks;
+
+import com.gsk.architect.generator.model.Domain;
+import com.gsk.architect.generator.service.FileGeneratorService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileGeneratorService#generateQuestionFiles} across a catalogue of many packages, so directory
+ * creation and writes are measured with a realistically populated domain directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileGenerationBenchmark {
+
+    @Param({"1000", "20000"})
+    public int packages;
+
+    @Param({"4", "64"})
+    public int contentKb;
+
+    private Path scratch;
+    private FileGeneratorService fileGenerator;
+    private String question;
+    private String hints;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scratch = Files.createTempDirectory("file-generation-bench");
+        fileGenerator = new FileGeneratorService(scratch);
+        question = CannedLanguageModelService.markdown("Question", contentKb);
+        hints = CannedLanguageModelService.markdown("Hints", contentKb);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Scratch.delete(scratch);
+    }
+
+    @Benchmark
+    public Path generateQuestionFiles() {
+        String questionPackage = "question_" + (next++ % packages);
+        return fileGenerator.generateQuestionFiles(Domain.GENERIC, questionPackage, question, hints);
+    }
+}
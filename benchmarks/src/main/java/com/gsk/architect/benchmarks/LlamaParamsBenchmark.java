@@ -0,0 +1,31 @@
+package com.gsk.architect.benchmarks;
+
+import com.gsk.architect.generator.service.LlamaService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the JNA {@code llama_model_params} structure, including the copy to native memory
+ * that JNA performs before every native call taking the structure. Does not need libllama.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LlamaParamsBenchmark {
+
+    @Benchmark
+    public LlamaService.llama_model_params defaultParams() {
+        return LlamaService.llama_model_params.defaultParams();
+    }
+
+    @Benchmark
+    public LlamaService.llama_model_params defaultParamsWritten() {
+        LlamaService.llama_model_params params = LlamaService.llama_model_params.defaultParams();
+        params.write();
+        return params;
+    }
+}
@@ -0,0 +1,201 @@
+package com.gsk.architect.benchmarks;
+
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.gsk.architect.generator.model.Domain;
+import com.gsk.architect.generator.service.FileGeneratorService;
+import com.gsk.architect.generator.service.InstrumentedLanguageModelService;
+import com.gsk.architect.generator.service.LanguageModelService;
+import com.gsk.architect.generator.service.QuestionCatalogue;
+import com.gsk.architect.generator.service.QuestionGeneratorService;
+import com.gsk.architect.generator.service.TimeoutLanguageModelService;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Runs the real generation pipeline, {@link QuestionGeneratorService} writing through
+ * {@link FileGeneratorService} and a {@link QuestionCatalogue}, against a {@link SimulatedLanguageModelService}
+ * at increasing concurrency. Each level is a closed loop: that many workers each generate questions one after
+ * another until the level's question count is reached. Every level writes into its own directory under a
+ * scratch root, never into lab-solutions.
+ *
+ * <p>For each level it prints throughput, percentiles of the end-to-end question latency, and the I/O cost
+ * per question: time spent in file writes, size of the completed question packages and process CPU time.
+ * Directories left behind by failed questions are not counted in the package size.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.gsk.architect.benchmarks.LoadTestDriver --concurrency=1,8,64
+ * </pre>
+ */
+public class LoadTestDriver {
+
+    /**
+     * Results of one concurrency level.
+     */
+    record LevelResult(int concurrency, int succeeded, int failed, Duration elapsed, LatencyHistogram.Snapshot latency,
+                       long fileWriteNanos, long packageBytes, long cpuNanos) {
+        double questionsPerSecond() {
+            return succeeded / (elapsed.toNanos() / 1e9);
+        }
+    }
+
+    private final SimulatedLanguageModelService.Settings settings;
+    private final QuestionGeneratorService.GenerationMode mode;
+    private final Domain domain;
+    private final Duration callTimeout;
+
+    /**
+     * @param callTimeout deadline of every model call, or null for none
+     */
+    public LoadTestDriver(SimulatedLanguageModelService.Settings settings, QuestionGeneratorService.GenerationMode mode,
+                          Domain domain, Duration callTimeout) {
+        this.settings = settings;
+        this.mode = mode;
+        this.domain = domain;
+        this.callTimeout = callTimeout;
+    }
+
+    /**
+     * Generates {@code questions} questions with {@code concurrency} workers into {@code solutionsRoot}.
+     */
+    LevelResult run(int concurrency, int questions, Path solutionsRoot) throws IOException, InterruptedException {
+        MetricsRegistry metrics = MetricsRegistry.global();
+        LatencyHistogram fileWrites = metrics.histogram("generation_stage_duration_seconds", "stage", "file_writes");
+        long fileWriteNanosBefore = fileWrites.snapshot().sum();
+        long cpuBefore = processCpuNanos();
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder failed = new LongAdder();
+        AtomicInteger remaining = new AtomicInteger(questions);
+        Queue<Path> packages = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+        LanguageModelService backend = new InstrumentedLanguageModelService(new SimulatedLanguageModelService(settings), metrics);
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(solutionsRoot);
+             LanguageModelService model = callTimeout == null ? backend : new TimeoutLanguageModelService(backend, callTimeout)) {
+            QuestionGeneratorService generator = new QuestionGeneratorService(
+                    model, new FileGeneratorService(solutionsRoot, catalogue), mode);
+            try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < concurrency; i++) {
+                    workers.submit(() -> {
+                        while (remaining.getAndDecrement() > 0) {
+                            long questionStart = System.nanoTime();
+                            try {
+                                packages.add(generator.generateQuestion(domain));
+                                latency.recordNanosSince(questionStart);
+                            } catch (RuntimeException e) {
+                                failed.increment();
+                            }
+                        }
+                    });
+                }
+            }
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        return new LevelResult(concurrency, questions - failed.intValue(), failed.intValue(), elapsed,
+                latency.snapshot(), fileWrites.snapshot().sum() - fileWriteNanosBefore, bytesOnDisk(packages),
+                processCpuNanos() - cpuBefore);
+    }
+
+    private static long bytesOnDisk(Collection<Path> directories) throws IOException {
+        long bytes = 0;
+        for (Path directory : directories) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                bytes += paths.filter(Files::isRegularFile).mapToLong(path -> {
+                    try {
+                        return Files.size(path);
+                    } catch (IOException e) {
+                        return 0;
+                    }
+                }).sum();
+            }
+        }
+        return bytes;
+    }
+
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    static void printHeader() {
+        System.out.printf("%11s %6s %6s %8s %8s %8s %8s %8s %10s %8s %8s%n", "concurrency", "ok", "failed",
+                "q/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "write ms/q", "pkg KB/q", "CPU ms/q");
+    }
+
+    static void print(LevelResult result) {
+        LatencyHistogram.Snapshot latency = result.latency();
+        int perQuestion = Math.max(1, result.succeeded());
+        System.out.printf("%11d %6d %6d %8.2f %8d %8d %8d %8d %10.2f %8.1f %8.1f%n",
+                result.concurrency(), result.succeeded(), result.failed(), result.questionsPerSecond(),
+                latency.percentile(50) / 1_000_000, latency.percentile(95) / 1_000_000,
+                latency.percentile(99) / 1_000_000, latency.max() / 1_000_000,
+                result.fileWriteNanos() / 1e6 / perQuestion, result.packageBytes() / 1024.0 / perQuestion,
+                result.cpuNanos() / 1e6 / perQuestion);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        SimulatedLanguageModelService.Settings defaults = SimulatedLanguageModelService.Settings.defaults();
+        SimulatedLanguageModelService.Settings settings = new SimulatedLanguageModelService.Settings(
+                Duration.ofMillis(Long.parseLong(options.getOrDefault("latency-ms", Long.toString(defaults.medianLatency().toMillis())))),
+                Double.parseDouble(options.getOrDefault("latency-spread", Double.toString(defaults.latencySpread()))),
+                Double.parseDouble(options.getOrDefault("failure-rate", Double.toString(defaults.failureRate()))),
+                Integer.parseInt(options.getOrDefault("words", Integer.toString(defaults.responseWords()))),
+                Duration.ofMillis(Long.parseLong(options.getOrDefault("token-interval-ms", Long.toString(defaults.tokenInterval().toMillis())))));
+        int[] levels = Arrays.stream(options.getOrDefault("concurrency", "1,2,4,8,16,32,64").split(","))
+                .mapToInt(level -> Integer.parseInt(level.trim()))
+                .toArray();
+        int questionsPerWorker = Integer.parseInt(options.getOrDefault("questions-per-worker", "4"));
+        LoadTestDriver driver = new LoadTestDriver(settings,
+                QuestionGeneratorService.GenerationMode.valueOf(options.getOrDefault("mode", "TWO_CALLS").toUpperCase()),
+                Domain.valueOf(options.getOrDefault("domain", "GENERIC").toUpperCase()),
+                options.containsKey("call-timeout-ms") ? Duration.ofMillis(Long.parseLong(options.get("call-timeout-ms"))) : null);
+
+        boolean keep = options.containsKey("scratch");
+        Path scratch = keep ? Path.of(options.get("scratch")) : Files.createTempDirectory("load-test");
+        if (keep && Files.isDirectory(scratch)) {
+            try (Stream<Path> entries = Files.list(scratch)) {
+                if (entries.findAny().isPresent()) {
+                    // Earlier questions would be counted as this run's bytes and crowd its catalogue
+                    throw new IllegalArgumentException("Scratch directory is not empty: " + scratch);
+                }
+            }
+        }
+        System.out.println("Simulated backend: " + settings);
+        System.out.println("Writing into " + scratch.toAbsolutePath());
+        printHeader();
+        try {
+            for (int concurrency : levels) {
+                Path solutionsRoot = Files.createDirectories(scratch.resolve("concurrency-" + concurrency));
+                print(driver.run(concurrency, concurrency * questionsPerWorker, solutionsRoot));
+            }
+        } finally {
+            if (!keep) {
+                Scratch.delete(scratch);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.gsk.architect.benchmarks;
+
+import com.gsk.architect.generator.service.QuestionGeneratorService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QuestionGeneratorService#generatePackageName} splits the whole response to read its first line,
+ * so its cost grows with the response size even though only the title matters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackageNameBenchmark {
+
+    @Param({"1", "16", "128"})
+    public int responseKb;
+
+    private String response;
+
+    @Setup
+    public void setUp() {
+        response = CannedLanguageModelService.markdown("Design a Globally Distributed Rate Limiter", responseKb);
+    }
+
+    @Benchmark
+    public String generatePackageName() {
+        return QuestionGeneratorService.generatePackageName(response);
+    }
+}
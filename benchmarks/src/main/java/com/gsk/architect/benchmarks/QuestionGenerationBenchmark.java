@@ -0,0 +1,50 @@
+package com.gsk.architect.benchmarks;
+
+import com.gsk.architect.generator.model.Domain;
+import com.gsk.architect.generator.service.FileGeneratorService;
+import com.gsk.architect.generator.service.QuestionGeneratorService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of {@link QuestionGeneratorService#generateQuestion} with a zero-latency model:
+ * prompt formatting, streaming, response parsing and the file writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuestionGenerationBenchmark {
+
+    @Param({"4", "64"})
+    public int responseKb;
+
+    @Param({"TWO_CALLS", "SINGLE_CALL"})
+    public QuestionGeneratorService.GenerationMode mode;
+
+    private Path scratch;
+    private QuestionGeneratorService generator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scratch = Files.createTempDirectory("question-generation-bench");
+        generator = new QuestionGeneratorService(
+                new CannedLanguageModelService(responseKb), new FileGeneratorService(scratch), mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Scratch.delete(scratch);
+    }
+
+    @Benchmark
+    public Path generateQuestion() {
+        return generator.generateQuestion(Domain.GENERIC);
+    }
+}
@@ -0,0 +1,70 @@
+package com.gsk.architect.benchmarks;
+
+import com.gsk.architect.generator.service.QuestionIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Near-duplicate lookup in {@link QuestionIndex} against catalogues of distinct questions,
+ * the check made for every generated question before its hints are requested.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuestionIndexBenchmark {
+    private static final int VOCABULARY = 5000;
+    private static final int WORDS_PER_QUESTION = 400;
+
+    @Param({"1000", "20000"})
+    public int questions;
+
+    private Path scratch;
+    private QuestionIndex index;
+    private String[] probes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scratch = Files.createTempDirectory("question-index-bench");
+        Path catalogue = scratch.resolve("catalogue");
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < questions; i++) {
+            Path dir = catalogue.resolve("generic").resolve("question_" + i);
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve("README.md"), randomText(random));
+        }
+        index = QuestionIndex.open(catalogue, scratch.resolve("index"), QuestionIndex.DEFAULT_THRESHOLD);
+
+        probes = new String[64];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = randomText(random);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+        Scratch.delete(scratch);
+    }
+
+    @Benchmark
+    public QuestionIndex.Match findDuplicate() {
+        return index.findDuplicate(probes[next++ & (probes.length - 1)]);
+    }
+
+    private static String randomText(SplittableRandom random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < WORDS_PER_QUESTION; i++) {
+            text.append("w").append(random.nextInt(VOCABULARY)).append(i % 12 == 11 ? ".\n" : " ");
+        }
+        return text.toString();
+    }
+}
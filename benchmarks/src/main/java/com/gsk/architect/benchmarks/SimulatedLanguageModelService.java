@@ -0,0 +1,150 @@
+package com.gsk.architect.benchmarks;
+
+import com.gsk.architect.generator.service.CancellationToken;
+import com.gsk.architect.generator.service.LanguageModelService;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Model backend that behaves like a remote one without calling anything: every call waits for a time to
+ * first token drawn from a log-normal distribution, then streams its response one word at a time with a
+ * fixed interval between words, and a configurable fraction of calls fail after the wait. Responses are
+ * random Markdown that the generator parses like a real answer, with a unique first line per call so every
+ * question gets its own package.
+ *
+ * <p>Sleeping parks the calling virtual thread, so hundreds of concurrent calls cost no more than the
+ * generator's own work, which is what {@link LoadTestDriver} measures. A cancelled call wakes up at once
+ * and fails like a real backend that aborts its request.
+ */
+public class SimulatedLanguageModelService implements LanguageModelService {
+    private static final String[] WORDS = {
+            "cache", "shard", "replica", "queue", "latency", "throughput", "partition", "index", "consistency",
+            "quorum", "leader", "follower", "stream", "batch", "window", "bucket", "token", "ledger", "graph",
+            "trie", "heap", "bloom", "filter", "ring", "hash", "snapshot", "compaction", "region", "failover",
+            "checkpoint", "watermark", "backpressure", "gateway", "session", "inventory", "catalogue", "feed"
+    };
+
+    /**
+     * @param medianLatency   median time to first token
+     * @param latencySpread   sigma of the log-normal time to first token; 0 makes every call take the median,
+     *                        1 puts the 99th percentile at about ten times the median
+     * @param failureRate     fraction of calls that throw after the time to first token
+     * @param responseWords   words per response
+     * @param tokenInterval   pause between streamed words
+     */
+    public record Settings(Duration medianLatency, double latencySpread, double failureRate, int responseWords,
+                           Duration tokenInterval) {
+        public static Settings defaults() {
+            return new Settings(Duration.ofMillis(800), 0.5, 0.0, 400, Duration.ofMillis(2));
+        }
+    }
+
+    private final Settings settings;
+    private final AtomicLong responseCounter = new AtomicLong();
+
+    public SimulatedLanguageModelService(Settings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public String generateResponse(String prompt) {
+        return generateResponse(prompt, CancellationToken.none());
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        StringBuilder response = new StringBuilder();
+        streamResponse(prompt, cancellation, response::append);
+        return response.toString();
+    }
+
+    @Override
+    public void streamResponse(String prompt, Consumer<String> onChunk) {
+        streamResponse(prompt, CancellationToken.none(), onChunk);
+    }
+
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CancellationToken.Registration registration = cancellation.onCancel(cancelled::countDown);
+        try {
+            stream(prompt, onChunk, duration -> sleep(duration, cancelled, cancellation));
+        } finally {
+            registration.close();
+        }
+    }
+
+    private void stream(String prompt, Consumer<String> onChunk, Consumer<Duration> sleep) {
+        sleep.accept(timeToFirstToken());
+        if (settings.failureRate() > 0 && ThreadLocalRandom.current().nextDouble() < settings.failureRate()) {
+            throw new RuntimeException("Simulated backend failure");
+        }
+        long id = responseCounter.incrementAndGet();
+        SplittableRandom random = new SplittableRandom(id);
+        if (prompt.startsWith("For the following system design question")) {
+            onChunk.accept("# Hints\n\n");
+        } else if (prompt.contains("===QUESTION===")) {
+            onChunk.accept("===SLUG===\nsimulated_question_" + id + "\n===QUESTION===\n");
+            onChunk.accept(title(random, id));
+            streamWords(random, settings.responseWords() / 2, onChunk, sleep);
+            onChunk.accept("\n===HINTS===\n# Hints\n\n");
+            streamWords(random, settings.responseWords() - settings.responseWords() / 2, onChunk, sleep);
+            return;
+        } else {
+            onChunk.accept(title(random, id));
+        }
+        streamWords(random, settings.responseWords(), onChunk, sleep);
+    }
+
+    private Duration timeToFirstToken() {
+        double factor = Math.exp(settings.latencySpread() * ThreadLocalRandom.current().nextGaussian());
+        return Duration.ofNanos((long) (settings.medianLatency().toNanos() * factor));
+    }
+
+    private static String title(SplittableRandom random, long id) {
+        return "Design a " + WORDS[random.nextInt(WORDS.length)] + " service number " + id + "\n\n";
+    }
+
+    private void streamWords(SplittableRandom random, int count, Consumer<String> onChunk, Consumer<Duration> sleep) {
+        for (int i = 1; i <= count; i++) {
+            sleep.accept(settings.tokenInterval());
+            onChunk.accept(WORDS[random.nextInt(WORDS.length)] + (i % 15 == 0 ? ".\n" : " "));
+        }
+    }
+
+    /**
+     * Waits for {@code duration} unless the call is cancelled first, in which case it throws the token's exception.
+     */
+    private static void sleep(Duration duration, CountDownLatch cancelled, CancellationToken cancellation) {
+        try {
+            if (!duration.isZero()) {
+                cancelled.await(duration.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            cancellation.throwIfCancelled();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during simulated call", e);
+        }
+    }
+
+    @Override
+    public String getBackendName() {
+        return "simulated";
+    }
+
+    @Override
+    public String getModelName() {
+        return "simulated";
+    }
+
+    @Override
+    public double getTemperature() {
+        return 0;
+    }
+}
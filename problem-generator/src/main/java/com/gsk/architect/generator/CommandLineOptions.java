@@ -0,0 +1,108 @@
+package com.gsk.architect.generator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parsed command line: positional arguments followed by optional {@code --name} or {@code --name=value} flags.
+ */
+public class CommandLineOptions {
+    private static final Set<String> KNOWN_FLAGS = Set.of(
+            "count",
+            "max-in-flight",
+            "cache",
+            "refresh-cache",
+            "cache-dir",
+            "cache-max-mb",
+            "single-call",
+            "allow-duplicates",
+            "metrics-out",
+            "metrics-interval",
+            "openai-base-url",
+            "route",
+            "hedge-percentile",
+            "no-hedging",
+            "port",
+            "numa",
+            "profile-out",
+            "draft-model",
+            "draft-tokens",
+            "no-journal",
+            "no-compile-check",
+            "call-timeout",
+            "prompt-budget"
+    );
+
+    private final List<String> positional;
+    private final Map<String, String> flags;
+
+    private CommandLineOptions(List<String> positional, Map<String, String> flags) {
+        this.positional = positional;
+        this.flags = flags;
+    }
+
+    public static CommandLineOptions parse(String[] args) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> flags = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int separator = arg.indexOf('=');
+                String name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+                String value = separator < 0 ? "true" : arg.substring(separator + 1);
+                if (!KNOWN_FLAGS.contains(name)) {
+                    throw new IllegalArgumentException("Unknown option: --" + name);
+                }
+                flags.put(name, value);
+            } else {
+                positional.add(arg);
+            }
+        }
+        return new CommandLineOptions(positional, flags);
+    }
+
+    public int positionalCount() {
+        return positional.size();
+    }
+
+    public String positional(int index) {
+        return positional.get(index);
+    }
+
+    public boolean hasFlag(String name) {
+        return flags.containsKey(name);
+    }
+
+    public String flag(String name, String defaultValue) {
+        return flags.getOrDefault(name, defaultValue);
+    }
+
+    public int intFlag(String name, int defaultValue) {
+        return parseInt(name, defaultValue, 1, "a positive number");
+    }
+
+    /**
+     * Like {@link #intFlag}, but also accepts 0, for options where it means "none".
+     */
+    public int nonNegativeIntFlag(String name, int defaultValue) {
+        return parseInt(name, defaultValue, 0, "zero or a positive number");
+    }
+
+    private int parseInt(String name, int defaultValue, int minimum, String expected) {
+        String value = flags.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < minimum) {
+                throw new IllegalArgumentException("Option --" + name + " must be " + expected);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects a number but got: " + value);
+        }
+    }
+}
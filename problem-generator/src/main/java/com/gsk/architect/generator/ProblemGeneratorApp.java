@@ -1,74 +1,194 @@
 package com.gsk.architect.generator;
 
+import com.gsk.architect.generator.daemon.DaemonClient;
+import com.gsk.architect.generator.daemon.GeneratorDaemon;
+import com.gsk.architect.generator.metrics.MetricsExporter;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.gsk.architect.generator.metrics.MetricsReporter;
+import com.gsk.architect.generator.metrics.Tracer;
+import com.gsk.architect.generator.model.BatchReport;
 import com.gsk.architect.generator.model.Domain;
 import com.gsk.architect.generator.service.*;
 import java.io.File;
-import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryMXBean;
-import java.lang.management.MemoryUsage;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class ProblemGeneratorApp {
-    private static final long MIN_HEAP_SIZE = 4L * 1024 * 1024 * 1024; // 4GB minimum for 1.7B model
+    private static final String ALL_DOMAINS = "ALL";
+    // Longer than the daemon's drain: its shutdown grace plus the grace for cancelled calls
+    private static final Duration DAEMON_SHUTDOWN_TIMEOUT = Duration.ofMinutes(1);
     private static final String USAGE_MESSAGE = """
-        Usage: java -jar problem-generator.jar <MODEL_TYPE> <CONFIG> <DOMAIN>
+        Usage: java -jar problem-generator.jar <MODEL_TYPE> <CONFIG> <DOMAIN> [OPTIONS]
+               java -jar problem-generator.jar LIST [DOMAIN]
+               java -jar problem-generator.jar FIND <SLUG>
+               java -jar problem-generator.jar VERIFY [DOMAIN]
+               java -jar problem-generator.jar SERVE <MODEL_TYPE> <CONFIG> [OPTIONS]
+               java -jar problem-generator.jar REMOTE <DOMAIN> [--count=N]
+               java -jar problem-generator.jar STOP
+               java -jar problem-generator.jar CALIBRATE <MODEL_PATH> [--numa]
         MODEL_TYPE: OPENAI or LLAMA
         CONFIG: OpenAI API key or path to Llama model file
-        DOMAIN: ECOMMERCE, VIDEO_STREAMING, APPLE, GENERIC
+        DOMAIN: ECOMMERCE, VIDEO_STREAMING, APPLE, GENERIC or ALL
+        LIST: List generated questions from the catalogue, optionally for one domain
+        FIND: Print the directory of the question with the given slug
+        VERIFY: Compile the Solution.java of every catalogued question, optionally for one domain
+        SERVE: Keep the model loaded in a background daemon that REMOTE runs use (--port=N to fix its port)
+        REMOTE: Generate questions in the running daemon
+        STOP: Shut the daemon down and release the model
+        CALIBRATE: Measure the fastest thread, batch and NUMA settings for a Llama model on this host
+                   and save them as the profile that LLAMA runs load (--numa to measure NUMA only)
 
-        For Llama models, recommended memory settings:
-          - 1.7B model: -Xmx4g
-          - 7B model: -Xmx8g
-          - 13B model: -Xmx16g
-          - 30B+ models: -Xmx32g
+        Options:
+          --count=N          Generate N questions per domain concurrently (batch mode)
+          --max-in-flight=N  Maximum concurrent model calls per backend in batch mode, and the number of
+                             sequences LLAMA sizes its context for (default: 8 for OPENAI, 4 for LLAMA)
+          --cache            Replay cached responses to identical prompts and store new ones
+          --refresh-cache    Like --cache, but always call the model and replace cached responses
+          --cache-dir=PATH   Response cache directory (default: ~/.architect-lab/cache/responses)
+          --cache-max-mb=N   Size limit of the on-disk response cache (default: 512)
+          --single-call      Request question, hints and package name in one model call
+          --allow-duplicates Keep questions that nearly duplicate one already in lab-solutions
+          --no-journal       Do not journal batch progress; an interrupted batch then starts over
+          --no-compile-check Do not compile the generated Solution.java files after the run
+          --call-timeout=N   Give up on a model call after N seconds, stopping Llama generation and aborting
+                             the HTTP request (default: 600, 0 for no limit)
+          --prompt-budget=N  Send prompts of at most N tokens, cutting the question in the hints prompt to fit
+                             (default: what the model's context leaves after room for the response)
+          --metrics-out=PATH Write metrics at the end of the run (.json for JSON, else Prometheus text)
+          --metrics-interval=N  Also rewrite the metrics file every N seconds during the run
+          --openai-base-url=URL Send OpenAI requests to URL instead of https://api.openai.com/v1/
+          --route=TYPE:CONFIG[,TYPE:CONFIG]  Also use these backends, routing each call to the least loaded
+          --hedge-percentile=P  Duplicate a routed call to another backend once it exceeds the P-th latency
+                             percentile of its backend (default: 95)
+          --no-hedging       Route calls across backends without duplicating slow ones
+          --draft-model=PATH Speculative decoding for LLAMA: a small GGUF model with the same tokenizer
+                             drafts tokens that the main model verifies in one pass
+          --draft-tokens=N   Tokens the draft model proposes per pass (default: 5)
+
+        Llama models are loaded outside the Java heap, so no -Xmx setting is needed. The context
+        and batch sizes are chosen from the model's GGUF metadata to fit the available physical memory.
+        Thread counts default to one per physical core until CALIBRATE has saved a profile for the model.
 
         Example:
           OpenAI: java -jar problem-generator.jar OPENAI sk-your-api-key ECOMMERCE
-          Llama:  java -Xmx4g -jar problem-generator.jar LLAMA /path/to/model.gguf GENERIC
+          Llama:  java -jar problem-generator.jar LLAMA /path/to/model.gguf GENERIC
+          Batch:  java -jar problem-generator.jar OPENAI sk-your-api-key ALL --count=20
         """;
 
     public static void main(String[] args) {
         try {
-            if (args.length < 3) {
+            CommandLineOptions options = CommandLineOptions.parse(args);
+            if (options.positionalCount() > 0 && (runCatalogueCommand(options) || runDaemonClientCommand(options)
+                || runCalibrateCommand(options))) {
+                return;
+            }
+            boolean serve = options.positionalCount() > 0 && options.positional(0).equalsIgnoreCase("SERVE");
+            if (options.positionalCount() < 3) {
                 System.out.println(USAGE_MESSAGE);
                 System.exit(1);
             }
 
-            // Check memory settings before proceeding
-            checkMemorySettings();
-
-            String modelType = args[0].toUpperCase();
-            String config = args[1];
-            String domainStr = args[2].toUpperCase();
+            int first = serve ? 1 : 0;
+            String modelType = options.positional(first).toUpperCase();
+            String config = options.positional(first + 1);
 
             // Validate domain
-            Domain domain;
-            try {
-                domain = Domain.valueOf(domainStr);
-            } catch (IllegalArgumentException e) {
-                System.err.println("Error: Invalid domain. Available domains: " +
-                    String.join(", ", Arrays.toString(Domain.values())));
-                System.exit(1);
-                return;
+            List<Domain> domains = List.of();
+            if (!serve) {
+                String domainStr = options.positional(2).toUpperCase();
+                try {
+                    domains = domainStr.equals(ALL_DOMAINS) ? List.of(Domain.values()) : List.of(Domain.valueOf(domainStr));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Error: Invalid domain. Available domains: " +
+                        String.join(", ", Arrays.toString(Domain.values())) + " or " + ALL_DOMAINS);
+                    System.exit(1);
+                    return;
+                }
             }
 
             // Validate configuration and create model
             validateConfig(modelType, config);
-            LanguageModelService modelService = ModelFactory.createModel(
-                ModelFactory.ModelType.valueOf(modelType),
-                config
-            );
+            ModelFactory.ModelType type = ModelFactory.ModelType.valueOf(modelType);
+            // The daemon serves concurrent clients, so it needs the same in-flight limits as a batch
+            boolean batchMode = serve || options.hasFlag("count") || domains.size() > 1;
+            BatchReport report = null;
+            List<Path> generated = new ArrayList<>();
+
+            Path solutionsRoot = FileGeneratorService.DEFAULT_SOLUTIONS_ROOT;
+            CountDownLatch backendReleased = new CountDownLatch(1);
+            MetricsReporter metricsReporter = createMetricsReporter(options);
+            try (QuestionCatalogue catalogue = QuestionCatalogue.open(solutionsRoot);
+                 QuestionIndex questionIndex = options.hasFlag("allow-duplicates")
+                     ? null
+                     : QuestionIndex.open(solutionsRoot);
+                 LanguageModelService backend = createBackends(type, config, options, batchMode)) {
+                FileGeneratorService fileGenerator = new FileGeneratorService(solutionsRoot, catalogue);
+                LanguageModelService modelService = backend;
+                // Opt-in: a repeated command would otherwise replay the questions of the last run
+                if (options.hasFlag("cache") || options.hasFlag("refresh-cache")) {
+                    modelService = createCache(modelService, options);
+                }
+
+                // Create services
+                QuestionGeneratorService.GenerationMode mode = options.hasFlag("single-call")
+                    ? QuestionGeneratorService.GenerationMode.SINGLE_CALL
+                    : QuestionGeneratorService.GenerationMode.TWO_CALLS;
+                QuestionGeneratorService questionGenerator =
+                    new QuestionGeneratorService(modelService, fileGenerator, mode, questionIndex);
+
+                if (serve) {
+                    serve(new BatchGeneratorService(questionGenerator), options, backendReleased);
+                    return;
+                } else if (batchMode) {
+                    BatchGeneratorService batchGenerator = new BatchGeneratorService(questionGenerator,
+                        options.hasFlag("no-journal") ? null : solutionsRoot.resolve(GenerationJournal.FILE_NAME));
+                    report = batchGenerator.generate(domains, options.intFlag("count", 1));
+                    for (BatchReport.Item item : report.items()) {
+                        if (item.succeeded()) {
+                            generated.add(item.outputDirectory().resolve("Solution.java"));
+                        }
+                    }
+                } else {
+                    // Generate the question
+                    generated.add(questionGenerator.generateQuestion(domains.getFirst()).resolve("Solution.java"));
+                }
+            } finally {
+                // After the backend is closed, so the export includes its final counters
+                if (metricsReporter != null) {
+                    metricsReporter.close();
+                }
+                backendReleased.countDown();
+            }
 
-            // Create services
-            FileGeneratorService fileGenerator = new FileGeneratorService();
-            QuestionGeneratorService questionGenerator = new QuestionGeneratorService(modelService, fileGenerator);
+            String speculation = LlamaService.speculativeDecodingSummary(MetricsRegistry.global());
+            if (speculation != null) {
+                System.out.println(speculation);
+            }
 
-            // Generate the question
-            questionGenerator.generateQuestion(domain);
-            System.out.println("Question generated successfully");
+            boolean compiled = options.hasFlag("no-compile-check")
+                || printCompileReport(new SolutionCompiler().compile(generated));
+            if (report != null) {
+                printBatchReport(report);
+                if (report.failureCount() > 0 || !compiled) {
+                    System.exit(3);
+                }
+            } else if (compiled) {
+                System.out.println("Question generated successfully");
+            } else {
+                System.exit(3);
+            }
 
         } catch (IllegalArgumentException e) {
             log.error("Configuration error: {}", e.getMessage());
@@ -82,22 +202,290 @@ public class ProblemGeneratorApp {
         }
     }
 
-    private static void checkMemorySettings() {
-        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
-        MemoryUsage heapUsage = memoryBean.getHeapMemoryUsage();
-        long maxMemory = heapUsage.getMax();
-
-        if (maxMemory < MIN_HEAP_SIZE) {
-            System.err.println("\nWarning: Insufficient JVM heap space allocated!");
-            System.err.println("Current maximum heap size: " + (maxMemory / (1024*1024)) + "MB");
-            System.err.println("Recommended minimum: 4GB (-Xmx4g) for 1.7B model");
-            System.err.println("For larger models, use:");
-            System.err.println("  - 7B models: -Xmx8g");
-            System.err.println("  - 13B models: -Xmx16g");
-            System.err.println("  - 30B+ models: -Xmx32g\n");
-            System.err.println("Example: java -Xmx4g -jar problem-generator.jar ...\n");
-            throw new IllegalStateException("Insufficient memory allocated. Please increase JVM heap size.");
+    /**
+     * Runs LIST, FIND or VERIFY against the catalogue. Returns false if the first argument is not one of them.
+     */
+    private static boolean runCatalogueCommand(CommandLineOptions options) {
+        String command = options.positional(0).toUpperCase();
+        if (!command.equals("LIST") && !command.equals("FIND") && !command.equals("VERIFY")) {
+            return false;
+        }
+        Path solutionsRoot = FileGeneratorService.DEFAULT_SOLUTIONS_ROOT;
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(solutionsRoot)) {
+            String domainStr = options.positionalCount() > 1 ? options.positional(1).toUpperCase() : ALL_DOMAINS;
+            if (command.equals("VERIFY")) {
+                Domain domain = domainStr.equals(ALL_DOMAINS) ? null : Domain.valueOf(domainStr);
+                if (!printCompileReport(new SolutionCompiler().compileCatalogue(catalogue, solutionsRoot, domain))) {
+                    System.exit(3);
+                }
+                return true;
+            }
+            if (command.equals("LIST")) {
+                Domain domain = domainStr.equals(ALL_DOMAINS) ? null : Domain.valueOf(domainStr);
+                List<QuestionCatalogue.Entry> entries = catalogue.list(domain);
+                for (QuestionCatalogue.Entry entry : entries) {
+                    System.out.printf("%-16s %-50s %s  %s%n", entry.domain(), entry.slug(),
+                        LocalDate.ofInstant(entry.createdAt(), ZoneId.systemDefault()), entry.title());
+                }
+                System.out.printf("%d question(s)%n", entries.size());
+                return true;
+            }
+
+            if (options.positionalCount() < 2) {
+                throw new IllegalArgumentException("FIND needs a slug");
+            }
+            String slug = options.positional(1);
+            boolean found = false;
+            for (Domain domain : Domain.values()) {
+                QuestionCatalogue.Entry entry = catalogue.find(domain, slug);
+                if (entry != null) {
+                    System.out.printf("%s  %s%n", solutionsRoot.resolve(domain.name().toLowerCase()).resolve(slug), entry.title());
+                    found = true;
+                }
+            }
+            if (!found) {
+                System.err.println("No question with slug " + slug);
+                System.exit(4);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Runs the daemon until a client sends STOP or the process is terminated. On termination the shutdown
+     * hook waits for the backend to be closed, so a Llama model is released before the JVM exits.
+     */
+    private static void serve(BatchGeneratorService batchGenerator, CommandLineOptions options,
+                              CountDownLatch backendReleased) throws IOException, InterruptedException {
+        int port = options.hasFlag("port") ? options.intFlag("port", 0) : 0;
+        try (GeneratorDaemon daemon = GeneratorDaemon.start(batchGenerator, port, GeneratorDaemon.DEFAULT_ENDPOINT_FILE)) {
+            // The daemon drains its requests and then closes the backend; Llama's own hook must not close it first
+            LlamaService.deferShutdownUntil(backendReleased, DAEMON_SHUTDOWN_TIMEOUT);
+            Thread shutdownHook = new Thread(() -> {
+                daemon.requestStop();
+                try {
+                    backendReleased.await(DAEMON_SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "daemon-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            System.out.printf("Generator daemon listening on 127.0.0.1:%d (pid %d). Use REMOTE <DOMAIN> to generate, STOP to shut down.%n",
+                daemon.endpoint().port(), daemon.endpoint().pid());
+            daemon.awaitStop();
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down; the hook is waiting for the backend to close
+            }
+        }
+    }
+
+    /**
+     * Runs REMOTE or STOP against the daemon. Returns false if the first argument is not one of them.
+     */
+    private static boolean runDaemonClientCommand(CommandLineOptions options) throws IOException, InterruptedException {
+        String command = options.positional(0).toUpperCase();
+        if (!command.equals("REMOTE") && !command.equals("STOP")) {
+            return false;
+        }
+        DaemonClient client = DaemonClient.connect(GeneratorDaemon.DEFAULT_ENDPOINT_FILE);
+        if (command.equals("STOP")) {
+            client.shutdown();
+            System.out.println("Generator daemon is shutting down");
+            return true;
+        }
+        if (options.positionalCount() < 2) {
+            throw new IllegalArgumentException("REMOTE needs a domain");
+        }
+        String domainStr = options.positional(1).toUpperCase();
+        if (!domainStr.equals(ALL_DOMAINS)) {
+            Domain.valueOf(domainStr);
+        }
+        BatchReport report = client.generate(domainStr, options.intFlag("count", 1));
+        printBatchReport(report);
+        if (report.failureCount() > 0) {
+            System.exit(3);
+        }
+        return true;
+    }
+
+    /**
+     * Runs CALIBRATE. Returns false if the first argument is something else. The NUMA setting can only be
+     * chosen once per process, so on hosts with several NUMA nodes the NUMA variant is measured in a child
+     * JVM that writes its result to {@code --profile-out}, and the faster of the two profiles is saved.
+     */
+    private static boolean runCalibrateCommand(CommandLineOptions options) throws IOException, InterruptedException {
+        if (!options.positional(0).equalsIgnoreCase("CALIBRATE")) {
+            return false;
+        }
+        if (options.positionalCount() < 2) {
+            throw new IllegalArgumentException("CALIBRATE needs a Llama model path");
+        }
+        validateConfig("LLAMA", options.positional(1));
+        Path modelPath = Path.of(options.positional(1));
+        boolean numa = options.hasFlag("numa");
+        LlamaTuningProfile profile = new LlamaCalibrator(modelPath, numa).calibrate();
+        if (options.hasFlag("profile-out")) {
+            profile.write(Path.of(options.flag("profile-out", null)));
+            return true;
+        }
+        if (!numa && LlamaCalibrator.hasMultipleNumaNodes()) {
+            LlamaTuningProfile numaProfile = calibrateNumaInChildProcess(modelPath);
+            if (numaProfile != null && numaProfile.typicalRequestSeconds() < profile.typicalRequestSeconds()) {
+                profile = numaProfile;
+            }
+        }
+        Path profileFile = LlamaTuningProfile.profileFile(modelPath);
+        profile.write(profileFile);
+        System.out.printf("Best settings: %s%nSaved to %s%n", profile, profileFile);
+        return true;
+    }
+
+    private static LlamaTuningProfile calibrateNumaInChildProcess(Path modelPath) throws IOException, InterruptedException {
+        Path profileOut = Files.createTempFile("llama-numa", ".properties");
+        try {
+            String java = ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ProblemGeneratorApp.class.getName(), "CALIBRATE", modelPath.toString(), "--numa",
+                "--profile-out=" + profileOut)
+                .inheritIO()
+                .start();
+            if (child.waitFor() != 0) {
+                log.warn("NUMA calibration exited with status {}, keeping the profile without NUMA", child.exitValue());
+                return null;
+            }
+            return LlamaTuningProfile.read(profileOut);
+        } finally {
+            Files.deleteIfExists(profileOut);
+        }
+    }
+
+    private static LanguageModelService createCache(LanguageModelService modelService, CommandLineOptions options) {
+        CachingLanguageModelService.Mode mode = options.hasFlag("refresh-cache")
+            ? CachingLanguageModelService.Mode.REFRESH
+            : CachingLanguageModelService.Mode.READ_WRITE;
+        Path directory = options.hasFlag("cache-dir")
+            ? Path.of(options.flag("cache-dir", null))
+            : CachingLanguageModelService.DEFAULT_DIRECTORY;
+        long maxBytes = options.hasFlag("cache-max-mb")
+            ? options.intFlag("cache-max-mb", 0) * 1024L * 1024
+            : CachingLanguageModelService.DEFAULT_MAX_DISK_BYTES;
+        return new CachingLanguageModelService(modelService, mode, directory, maxBytes);
+    }
+
+    private static MetricsReporter createMetricsReporter(CommandLineOptions options) {
+        if (!options.hasFlag("metrics-out")) {
+            return null;
+        }
+        Path file = Path.of(options.flag("metrics-out", null));
+        Duration interval = options.hasFlag("metrics-interval")
+            ? Duration.ofSeconds(options.intFlag("metrics-interval", 0))
+            : null;
+        return new MetricsReporter(new MetricsExporter(MetricsRegistry.global(), Tracer.global()), file, interval);
+    }
+
+    /**
+     * Creates the backend given on the command line, plus those listed in {@code --route}, each with its own
+     * instrumentation and in-flight limit. With more than one, calls are routed and hedged across them.
+     */
+    private static LanguageModelService createBackends(ModelFactory.ModelType type, String config,
+                                                       CommandLineOptions options, boolean batchMode) {
+        List<LanguageModelService> backends = new ArrayList<>();
+        try {
+            backends.add(createBackend(type, config, options, batchMode));
+            if (options.hasFlag("route")) {
+                for (String route : options.flag("route", "").split(",")) {
+                    int separator = route.indexOf(':');
+                    if (separator < 0) {
+                        throw new IllegalArgumentException("Expected TYPE:CONFIG in --route but got: " + route);
+                    }
+                    String routeType = route.substring(0, separator).toUpperCase();
+                    String routeConfig = route.substring(separator + 1);
+                    validateConfig(routeType, routeConfig);
+                    backends.add(createBackend(ModelFactory.ModelType.valueOf(routeType), routeConfig, options, batchMode));
+                }
+            }
+        } catch (RuntimeException e) {
+            backends.forEach(LanguageModelService::close);
+            throw e;
+        }
+        if (backends.size() == 1) {
+            return backends.getFirst();
+        }
+        double hedgePercentile = options.hasFlag("no-hedging")
+            ? 0
+            : Double.parseDouble(options.flag("hedge-percentile", Double.toString(RoutingLanguageModelService.DEFAULT_HEDGE_PERCENTILE)));
+        return new RoutingLanguageModelService(backends, hedgePercentile);
+    }
+
+    private static LanguageModelService createBackend(ModelFactory.ModelType type, String config,
+                                                      CommandLineOptions options, boolean batchMode) {
+        int maxInFlight = options.intFlag("max-in-flight", type.getDefaultMaxInFlight());
+        LanguageModelService backend = new InstrumentedLanguageModelService(
+            ModelFactory.createModel(type, config, openAIBaseUrl(options), draftModel(options), maxInFlight),
+            MetricsRegistry.global());
+        int callTimeoutSeconds = options.nonNegativeIntFlag("call-timeout", (int) TimeoutLanguageModelService.DEFAULT_TIMEOUT.toSeconds());
+        if (callTimeoutSeconds > 0) {
+            // Inside the in-flight limit, so the deadline covers the call itself and not its wait for a slot
+            backend = new TimeoutLanguageModelService(backend, Duration.ofSeconds(callTimeoutSeconds));
+        }
+        if (batchMode) {
+            backend = new BoundedLanguageModelService(backend, maxInFlight);
+        }
+        // Outside the in-flight limit, so a prompt over budget is turned away without waiting for a slot
+        int promptBudget = options.intFlag("prompt-budget", 0);
+        return new TokenBudgetLanguageModelService(backend, promptBudget > 0 ? promptBudget : Integer.MAX_VALUE,
+            MetricsRegistry.global());
+    }
+
+    private static LlamaService.DraftModel draftModel(CommandLineOptions options) {
+        if (!options.hasFlag("draft-model")) {
+            return null;
+        }
+        return new LlamaService.DraftModel(Path.of(options.flag("draft-model", null)),
+            options.intFlag("draft-tokens", LlamaService.DEFAULT_DRAFT_TOKENS));
+    }
+
+    private static URI openAIBaseUrl(CommandLineOptions options) {
+        if (!options.hasFlag("openai-base-url")) {
+            return null;
+        }
+        String url = options.flag("openai-base-url", null);
+        // Relative paths such as chat/completions resolve against the last directory of the base URL
+        return URI.create(url.endsWith("/") ? url : url + "/");
+    }
+
+    private static void printBatchReport(BatchReport report) {
+        for (BatchReport.Item item : report.items()) {
+            if (item.succeeded()) {
+                System.out.printf("[OK]     %s #%d -> %s (%ds)%n",
+                    item.domain(), item.index(), item.outputDirectory(), item.elapsed().toSeconds());
+            } else {
+                System.out.printf("[FAILED] %s #%d: %s (%ds)%n",
+                    item.domain(), item.index(), item.error(), item.elapsed().toSeconds());
+            }
+        }
+        System.out.printf("Batch finished in %ds: %d succeeded, %d failed%n",
+            report.elapsed().toSeconds(), report.successCount(), report.failureCount());
+    }
+
+    /**
+     * Prints the sources that failed to compile with their errors. Returns whether all compiled.
+     */
+    private static boolean printCompileReport(SolutionCompiler.Report report) {
+        for (SolutionCompiler.Failure failure : report.failures()) {
+            System.out.printf("[COMPILE FAILED] %s%n", failure.source());
+            for (String error : failure.errors()) {
+                System.out.printf("    %s%n", error);
+            }
         }
+        if (report.compiled() > 0) {
+            System.out.printf("Compiled %d solution(s) in %dms: %d failed%n",
+                report.compiled(), report.elapsed().toMillis(), report.failures().size());
+        }
+        return report.succeeded();
     }
 
     private static void validateConfig(String modelType, String config) {
@@ -110,24 +498,11 @@ public class ProblemGeneratorApp {
                 throw new IllegalArgumentException("Cannot read model file: " + config);
             }
 
-            // Check if the model file is in GGUF format
-            if (!config.toLowerCase().endsWith(".gguf")) {
-                System.err.println("Warning: Model file does not have .gguf extension. " +
-                    "Make sure it's a valid GGUF format model.");
-            }
-
-            // Validate model size and available memory
-            long modelSize = modelFile.length();
-            long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
-
-            // For 1.7B model, we need about 4GB of heap space
-            if (modelSize > freeMemory) {
-                throw new IllegalArgumentException(
-                    String.format("Insufficient memory for model (%.2fGB). Available: %.2fGB. " +
-                                "Use -Xmx4g for 1.7B model.",
-                                modelSize / (1024.0 * 1024 * 1024),
-                                freeMemory / (1024.0 * 1024 * 1024))
-                );
+            // Reads the GGUF metadata only; whether the model fits in memory is decided when it is loaded
+            try {
+                log.info("Model {}: {}", modelFile.getName(), GgufHeader.read(modelFile.toPath()));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
             }
 
             // Check if llama.cpp library exists
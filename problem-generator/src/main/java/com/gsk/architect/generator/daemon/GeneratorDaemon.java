@@ -0,0 +1,334 @@
+package com.gsk.architect.generator.daemon;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsExporter;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.gsk.architect.generator.metrics.Tracer;
+import com.gsk.architect.generator.model.BatchReport;
+import com.gsk.architect.generator.model.Domain;
+import com.gsk.architect.generator.service.BatchGeneratorService;
+import com.gsk.architect.generator.service.CancellationToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running generator that keeps the model loaded between runs. It listens on the loopback interface
+ * and serves {@code POST /generate} with a JSON body such as {@code {"domain": "ALL", "count": 5}},
+ * answering with the batch report. Concurrent requests share the backend and its in-flight limits.
+ * {@code GET /health}, {@code GET /metrics} (Prometheus text) and {@code POST /shutdown} complete the API.
+ *
+ * <p>On start the daemon writes its port and a random access token to {@value #ENDPOINT_FILE_NAME}
+ * (readable by the owner only). Every request must carry the token in {@value #TOKEN_HEADER}, so only
+ * the local user, through {@link DaemonClient}, can drive it.
+ */
+@Slf4j
+public class GeneratorDaemon implements AutoCloseable {
+    public static final Path DEFAULT_ENDPOINT_FILE = Path.of(System.getProperty("user.home"), ".architect-lab", "daemon.properties");
+    static final String ENDPOINT_FILE_NAME = "daemon.properties";
+    static final String TOKEN_HEADER = "X-Architect-Token";
+    private static final Duration SHUTDOWN_GRACE = Duration.ofSeconds(30);
+    // Time for cancelled model calls to stop and release the backend after the grace period
+    private static final Duration CANCEL_GRACE = Duration.ofSeconds(5);
+
+    /**
+     * Where a running daemon can be reached.
+     */
+    public record Endpoint(int port, String token, long pid) {
+        public static Endpoint read(Path file) throws IOException {
+            Properties properties = new Properties();
+            try (var in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+            try {
+                return new Endpoint(Integer.parseInt(properties.getProperty("port")), properties.getProperty("token"),
+                        Long.parseLong(properties.getProperty("pid")));
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed daemon endpoint file " + file, e);
+            }
+        }
+
+        void write(Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("port", Integer.toString(port));
+            properties.setProperty("token", token);
+            properties.setProperty("pid", Long.toString(pid));
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), ENDPOINT_FILE_NAME, ".tmp");
+            try {
+                try {
+                    Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+                } catch (UnsupportedOperationException e) {
+                    // Not a POSIX file system; rely on the home directory's permissions
+                }
+                try (Writer out = Files.newBufferedWriter(temp)) {
+                    properties.store(out, "architect-lab generator daemon");
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final BatchGeneratorService batchGenerator;
+    private final Path endpointFile;
+    private final Endpoint endpoint;
+    private final CountDownLatch stopRequested = new CountDownLatch(1);
+    private final Object activeLock = new Object();
+    private int activeRequests;
+    private boolean closing;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private final LatencyHistogram requestLatency = metrics.histogram("daemon_generate_seconds");
+    // Parent of every batch the daemon runs, cancelled when running batches outlast the shutdown grace
+    private final CancellationToken running = CancellationToken.create();
+
+    private GeneratorDaemon(HttpServer server, BatchGeneratorService batchGenerator, Path endpointFile) {
+        this.server = server;
+        this.batchGenerator = batchGenerator;
+        this.endpointFile = endpointFile;
+        byte[] token = new byte[24];
+        new SecureRandom().nextBytes(token);
+        this.endpoint = new Endpoint(server.getAddress().getPort(), HexFormat.of().formatHex(token), ProcessHandle.current().pid());
+    }
+
+    /**
+     * Starts serving on {@code port} of the loopback interface (0 picks a free port) and publishes the
+     * endpoint in {@code endpointFile}. Fails if another daemon is already answering at the published endpoint.
+     */
+    public static GeneratorDaemon start(BatchGeneratorService batchGenerator, int port, Path endpointFile) throws IOException {
+        if (DaemonClient.isRunning(endpointFile)) {
+            throw new IllegalStateException("A generator daemon is already running (see " + endpointFile + ")");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        GeneratorDaemon daemon = new GeneratorDaemon(server, batchGenerator, endpointFile);
+        server.createContext("/generate", exchange -> daemon.handle(exchange, "POST", daemon::generate));
+        server.createContext("/health", exchange -> daemon.handle(exchange, "GET", body -> "{\"status\":\"ok\"}"));
+        server.createContext("/metrics", exchange -> daemon.handle(exchange, "GET", body -> daemon.metricsText()));
+        server.createContext("/shutdown", exchange -> daemon.handle(exchange, "POST", body -> {
+            daemon.requestStop();
+            return "{\"status\":\"stopping\"}";
+        }));
+        server.setExecutor(daemon.executor);
+        server.start();
+        daemon.endpoint.write(endpointFile);
+        log.info("Generator daemon listening on 127.0.0.1:{} (pid {})", daemon.endpoint.port(), daemon.endpoint.pid());
+        return daemon;
+    }
+
+    public Endpoint endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Blocks until a client asks the daemon to shut down or {@link #requestStop()} is called.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopRequested.await();
+    }
+
+    public void requestStop() {
+        stopRequested.countDown();
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        String handle(byte[] body) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        synchronized (activeLock) {
+            activeRequests++;
+        }
+        try (exchange) {
+            String token = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+            int status;
+            String response;
+            if (isClosing()) {
+                status = 503;
+                response = error("Daemon is shutting down");
+            } else if (token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                    endpoint.token().getBytes(StandardCharsets.UTF_8))) {
+                status = 403;
+                response = error("Missing or wrong access token");
+            } else if (!exchange.getRequestMethod().equals(method)) {
+                status = 405;
+                response = error("Use " + method);
+            } else {
+                try {
+                    response = handler.handle(exchange.getRequestBody().readAllBytes());
+                    status = 200;
+                } catch (IllegalArgumentException | IOException e) {
+                    status = 400;
+                    response = error(e.getMessage());
+                } catch (RuntimeException e) {
+                    log.error("Daemon request {} failed", exchange.getRequestURI(), e);
+                    status = 500;
+                    response = error(e.getMessage());
+                }
+            }
+            metrics.counter("daemon_requests_total", "path", exchange.getHttpContext().getPath(),
+                    "status", Integer.toString(status)).increment();
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                    exchange.getHttpContext().getPath().equals("/metrics") && status == 200 ? "text/plain" : "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } finally {
+            synchronized (activeLock) {
+                activeRequests--;
+                activeLock.notifyAll();
+            }
+        }
+    }
+
+    private boolean isClosing() {
+        synchronized (activeLock) {
+            return closing;
+        }
+    }
+
+    /**
+     * Turns new requests away and waits up to {@link #SHUTDOWN_GRACE} for running ones to finish. Requests
+     * still running then have their model calls cancelled, which stops them at the next token or chunk and
+     * releases the backend, and get {@link #CANCEL_GRACE} more to report their batches.
+     */
+    private void drain() {
+        synchronized (activeLock) {
+            closing = true;
+            awaitActiveRequests(SHUTDOWN_GRACE);
+            if (activeRequests > 0) {
+                log.warn("Cancelling {} request(s) still running after {} s", activeRequests, SHUTDOWN_GRACE.toSeconds());
+                running.cancel();
+                awaitActiveRequests(CANCEL_GRACE);
+            }
+            if (activeRequests > 0) {
+                log.warn("Stopping the daemon with {} request(s) still running", activeRequests);
+            }
+        }
+    }
+
+    private void awaitActiveRequests(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (activeRequests > 0 && deadline - System.nanoTime() > 0) {
+                activeLock.wait(Math.max(1, (deadline - System.nanoTime()) / 1_000_000));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String generate(byte[] body) throws IOException {
+        JsonNode request = mapper.readTree(body);
+        if (request == null || !request.isObject()) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        String domainName = request.path("domain").asText("").toUpperCase();
+        List<Domain> domains = domainName.equals("ALL") ? List.of(Domain.values()) : List.of(Domain.valueOf(domainName));
+        int count = request.path("count").asInt(1);
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be a positive number");
+        }
+        long start = System.nanoTime();
+        BatchReport report = batchGenerator.generate(domains, count, running);
+        requestLatency.recordNanosSince(start);
+        return mapper.writeValueAsString(toJson(report));
+    }
+
+    private String metricsText() {
+        StringWriter out = new StringWriter();
+        try {
+            new MetricsExporter(metrics, Tracer.global()).writePrometheus(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private String error(String message) {
+        ObjectNode error = mapper.createObjectNode().put("error", message == null ? "unknown error" : message);
+        return error.toString();
+    }
+
+    private ObjectNode toJson(BatchReport report) {
+        ObjectNode json = mapper.createObjectNode().put("elapsedMillis", report.elapsed().toMillis());
+        ArrayNode items = json.putArray("items");
+        for (BatchReport.Item item : report.items()) {
+            ObjectNode node = items.addObject()
+                    .put("domain", item.domain().name())
+                    .put("index", item.index())
+                    .put("elapsedMillis", item.elapsed().toMillis());
+            if (item.succeeded()) {
+                node.put("outputDirectory", item.outputDirectory().toString());
+            } else {
+                node.put("error", item.error());
+            }
+        }
+        return json;
+    }
+
+    static BatchReport fromJson(JsonNode json) {
+        List<BatchReport.Item> items = new ArrayList<>();
+        for (JsonNode node : json.path("items")) {
+            items.add(new BatchReport.Item(
+                    Domain.valueOf(node.path("domain").asText()),
+                    node.path("index").asInt(),
+                    node.hasNonNull("outputDirectory") ? Path.of(node.path("outputDirectory").asText()) : null,
+                    node.hasNonNull("error") ? node.path("error").asText() : null,
+                    Duration.ofMillis(node.path("elapsedMillis").asLong())));
+        }
+        return new BatchReport(items, Duration.ofMillis(json.path("elapsedMillis").asLong()));
+    }
+
+    /**
+     * Stops accepting requests, gives running ones a grace period to finish
+     * and removes the endpoint file. The caller then closes the backend.
+     */
+    @Override
+    public void close() {
+        requestStop();
+        drain();
+        // HttpServer.stop waits for its whole delay even when idle, so drain() does the waiting
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            // Only remove the file if it still describes this daemon
+            if (Endpoint.read(endpointFile).pid() == endpoint.pid()) {
+                Files.deleteIfExists(endpointFile);
+            }
+        } catch (IOException e) {
+            log.debug("Could not remove daemon endpoint file {}: {}", endpointFile, e.getMessage());
+        }
+        log.info("Generator daemon stopped");
+    }
+}
@@ -0,0 +1,111 @@
+package com.gsk.architect.generator.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram in the style of HdrHistogram. Every power of two is split into
+ * {@value #SUB_BUCKETS_PER_OCTAVE} linear sub-buckets, so recorded values keep about three percent relative
+ * precision over the full {@code long} range with a fixed array of counters. Recording is a handful of
+ * arithmetic operations and one atomic increment, cheap enough for every model call and file write.
+ *
+ * <p>Units are up to the caller; latency histograms in this package record nanoseconds.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS_PER_OCTAVE = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKET_COUNT = indexOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        counts.incrementAndGet(indexOf(clamped));
+        totalCount.increment();
+        sum.add(clamped);
+        max.accumulate(clamped);
+    }
+
+    public void recordNanosSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    static int indexOf(long value) {
+        int exponent = 63 - Long.numberOfLeadingZeros(value | 1);
+        int bucket = Math.max(0, exponent - SUB_BUCKET_BITS + 1);
+        int subBucket = (int) (value >>> bucket);
+        return (bucket << (SUB_BUCKET_BITS - 1)) + subBucket;
+    }
+
+    static long highestValueAt(int index) {
+        int bucket = index < (1 << SUB_BUCKET_BITS) ? 0 : (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = index - ((long) bucket << (SUB_BUCKET_BITS - 1));
+        long next = (subBucket + 1) << bucket;
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    /**
+     * Point-in-time copy of the histogram. Concurrent recording may make {@code count} lag the counters slightly.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile (0-100), capped at the recorded maximum.
+         */
+        public long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueAt(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.gsk.architect.generator.metrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the contents of a {@link MetricsRegistry} (and finished spans, for JSON) as a Prometheus
+ * text-format file or a JSON snapshot. Histograms are exported as Prometheus summaries with the
+ * percentiles below; latencies are converted from nanoseconds to seconds.
+ */
+public class MetricsExporter {
+    private static final double[] PERCENTILES = {50, 90, 95, 99, 99.9};
+
+    public enum Format { PROMETHEUS, JSON }
+
+    private final MetricsRegistry registry;
+    private final Tracer tracer;
+
+    public MetricsExporter(MetricsRegistry registry, Tracer tracer) {
+        this.registry = registry;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Picks the format from the file extension: {@code .json} for JSON, anything else for Prometheus text.
+     */
+    public static Format formatFor(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".json") ? Format.JSON : Format.PROMETHEUS;
+    }
+
+    /**
+     * Writes to a temporary file and moves it into place, so scrapers never see a half-written file.
+     */
+    public void export(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            if (formatFor(file) == Format.JSON) {
+                writeJson(writer);
+            } else {
+                writePrometheus(writer);
+            }
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public void writePrometheus(Writer out) throws IOException {
+        String lastName = null;
+        for (Map.Entry<MetricsRegistry.MetricId, Counter> entry : registry.counters().entrySet()) {
+            MetricsRegistry.MetricId id = entry.getKey();
+            if (!id.name().equals(lastName)) {
+                out.write("# TYPE " + id.name() + " counter\n");
+                lastName = id.name();
+            }
+            out.write(id.name() + labels(id.labels(), null) + " " + entry.getValue().get() + "\n");
+        }
+
+        lastName = null;
+        for (Map.Entry<MetricsRegistry.MetricId, LatencyHistogram> entry : registry.histograms().entrySet()) {
+            MetricsRegistry.MetricId id = entry.getKey();
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            boolean seconds = isDuration(id.name());
+            if (!id.name().equals(lastName)) {
+                out.write("# TYPE " + id.name() + " summary\n");
+                lastName = id.name();
+            }
+            for (double percentile : PERCENTILES) {
+                String quantile = "quantile=\"" + BigDecimal.valueOf(percentile).movePointLeft(2).stripTrailingZeros().toPlainString() + "\"";
+                out.write(id.name() + labels(id.labels(), quantile) + " "
+                        + value(snapshot.percentile(percentile), seconds) + "\n");
+            }
+            out.write(id.name() + "_sum" + labels(id.labels(), null) + " " + value(snapshot.sum(), seconds) + "\n");
+            out.write(id.name() + "_count" + labels(id.labels(), null) + " " + snapshot.count() + "\n");
+        }
+    }
+
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\n  \"timestamp\": " + System.currentTimeMillis() + ",\n  \"counters\": [");
+        Iterator<Map.Entry<MetricsRegistry.MetricId, Counter>> counters = registry.counters().entrySet().iterator();
+        while (counters.hasNext()) {
+            Map.Entry<MetricsRegistry.MetricId, Counter> entry = counters.next();
+            out.write("\n    {" + jsonId(entry.getKey()) + ", \"value\": " + entry.getValue().get() + "}");
+            out.write(counters.hasNext() ? "," : "\n  ");
+        }
+
+        out.write("],\n  \"histograms\": [");
+        Iterator<Map.Entry<MetricsRegistry.MetricId, LatencyHistogram>> histograms =
+                registry.histograms().entrySet().iterator();
+        while (histograms.hasNext()) {
+            Map.Entry<MetricsRegistry.MetricId, LatencyHistogram> entry = histograms.next();
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            boolean seconds = isDuration(entry.getKey().name());
+            out.write("\n    {" + jsonId(entry.getKey())
+                    + ", \"unit\": \"" + (seconds ? "seconds" : "value") + "\""
+                    + ", \"count\": " + snapshot.count()
+                    + ", \"sum\": " + value(snapshot.sum(), seconds)
+                    + ", \"mean\": " + value(Math.round(snapshot.mean()), seconds)
+                    + ", \"max\": " + value(snapshot.max(), seconds));
+            for (double percentile : PERCENTILES) {
+                out.write(", \"p" + formatPercentile(percentile) + "\": " + value(snapshot.percentile(percentile), seconds));
+            }
+            out.write("}");
+            out.write(histograms.hasNext() ? "," : "\n  ");
+        }
+
+        out.write("],\n  \"spans\": [");
+        List<Span> spans = tracer.finishedSpans();
+        for (int i = 0; i < spans.size(); i++) {
+            out.write("\n    ");
+            writeSpan(out, spans.get(i));
+            out.write(i < spans.size() - 1 ? "," : "\n  ");
+        }
+        out.write("]\n}\n");
+    }
+
+    private void writeSpan(Writer out, Span span) throws IOException {
+        out.write("{\"name\": " + quote(span.name())
+                + ", \"start\": " + span.startEpochMillis()
+                + ", \"durationSeconds\": " + value(span.durationNanos(), true));
+        if (span.error() != null) {
+            out.write(", \"error\": " + quote(span.error()));
+        }
+        Map<String, String> attributes = span.attributes();
+        if (!attributes.isEmpty()) {
+            out.write(", \"attributes\": " + jsonObject(attributes));
+        }
+        List<Span> children = span.children();
+        if (!children.isEmpty()) {
+            out.write(", \"children\": [");
+            for (int i = 0; i < children.size(); i++) {
+                writeSpan(out, children.get(i));
+                if (i < children.size() - 1) {
+                    out.write(", ");
+                }
+            }
+            out.write("]");
+        }
+        out.write("}");
+    }
+
+    /**
+     * Histograms whose name ends in {@code _seconds} hold nanoseconds and are exported in seconds.
+     */
+    private static boolean isDuration(String name) {
+        return name.endsWith("_seconds");
+    }
+
+    private static String value(long raw, boolean nanosToSeconds) {
+        return nanosToSeconds ? Double.toString(raw / 1_000_000_000.0) : Long.toString(raw);
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private static String labels(Map<String, String> labels, String extra) {
+        if (labels.isEmpty() && extra == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("{");
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+            if (text.length() > 1) {
+                text.append(',');
+            }
+            text.append(label.getKey()).append("=\"").append(escapePrometheus(label.getValue())).append('"');
+        }
+        if (extra != null) {
+            if (text.length() > 1) {
+                text.append(',');
+            }
+            text.append(extra);
+        }
+        return text.append('}').toString();
+    }
+
+    private static String jsonId(MetricsRegistry.MetricId id) {
+        return "\"name\": " + quote(id.name()) + ", \"labels\": " + jsonObject(id.labels());
+    }
+
+    private static String jsonObject(Map<String, String> values) {
+        StringBuilder text = new StringBuilder("{");
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            if (text.length() > 1) {
+                text.append(", ");
+            }
+            text.append(quote(value.getKey())).append(": ").append(quote(value.getValue()));
+        }
+        return text.append('}').toString();
+    }
+
+    private static String escapePrometheus(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String quote(String value) {
+        StringBuilder text = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> text.append("\\\"");
+                case '\\' -> text.append("\\\\");
+                case '\n' -> text.append("\\n");
+                case '\r' -> text.append("\\r");
+                case '\t' -> text.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        text.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        text.append(c);
+                    }
+                }
+            }
+        }
+        return text.append('"').toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.gsk.architect.generator.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named counters and histograms, each identified by a metric name plus label pairs such as
+ * {@code backend=openai}. Metrics are created on first use and live for the lifetime of the registry.
+ *
+ * <p>The generator records into the {@link #global()} registry so that backends, decorators and
+ * services need no extra wiring; exporters read it at the end of a run.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private final ConcurrentMap<MetricId, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricId, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @param labels alternating label names and values
+     */
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(MetricId.of(name, labels), id -> new Counter());
+    }
+
+    /**
+     * @param labels alternating label names and values
+     */
+    public LatencyHistogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(MetricId.of(name, labels), id -> new LatencyHistogram());
+    }
+
+    public Map<MetricId, Counter> counters() {
+        return new TreeMap<>(counters);
+    }
+
+    public Map<MetricId, LatencyHistogram> histograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * Metric name with its labels in a stable order.
+     */
+    public record MetricId(String name, Map<String, String> labels) implements Comparable<MetricId> {
+
+        static MetricId of(String name, String... labels) {
+            if (labels.length % 2 != 0) {
+                throw new IllegalArgumentException("Labels must be name/value pairs: " + String.join(",", labels));
+            }
+            Map<String, String> sorted = new TreeMap<>();
+            for (int i = 0; i < labels.length; i += 2) {
+                sorted.put(labels[i], labels[i + 1]);
+            }
+            return new MetricId(name, Map.copyOf(sorted));
+        }
+
+        @Override
+        public Map<String, String> labels() {
+            return new TreeMap<>(labels);
+        }
+
+        @Override
+        public int compareTo(MetricId other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : labels().toString().compareTo(other.labels().toString());
+        }
+    }
+}
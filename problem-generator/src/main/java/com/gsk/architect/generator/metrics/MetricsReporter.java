@@ -0,0 +1,56 @@
+package com.gsk.architect.generator.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports metrics to a file periodically during a run and once more when closed.
+ * Exporting happens on a background thread, off the generation path.
+ */
+@Slf4j
+public class MetricsReporter implements AutoCloseable {
+    private final MetricsExporter exporter;
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param interval export period, or {@code null} to export only when closed
+     */
+    public MetricsReporter(MetricsExporter exporter, Path file, Duration interval) {
+        this.exporter = exporter;
+        this.file = file;
+        if (interval == null) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::export, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void export() {
+        try {
+            exporter.export(file);
+        } catch (IOException e) {
+            log.warn("Failed to export metrics to {}", file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        export();
+        log.info("Metrics written to {}", file);
+    }
+}
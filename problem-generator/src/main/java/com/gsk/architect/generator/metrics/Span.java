@@ -0,0 +1,86 @@
+package com.gsk.architect.generator.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A timed unit of work, e.g. generating one question, with optional child spans for its stages.
+ * Finished root spans are kept by the {@link Tracer} for export.
+ */
+public class Span implements AutoCloseable {
+    private final Tracer tracer;
+    private final Span parent;
+    private final String name;
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, String> attributes = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final List<Span> children = Collections.synchronizedList(new ArrayList<>());
+    private volatile long durationNanos = -1;
+    private volatile String error;
+
+    Span(Tracer tracer, Span parent, String name) {
+        this.tracer = tracer;
+        this.parent = parent;
+        this.name = name;
+    }
+
+    public Span child(String childName) {
+        Span child = new Span(tracer, this, childName);
+        children.add(child);
+        return child;
+    }
+
+    public Span attribute(String key, String value) {
+        attributes.put(key, value);
+        return this;
+    }
+
+    public void fail(Throwable cause) {
+        error = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * Ends the span; later calls are ignored.
+     */
+    @Override
+    public void close() {
+        if (durationNanos >= 0) {
+            return;
+        }
+        durationNanos = System.nanoTime() - startNanos;
+        if (parent == null) {
+            tracer.finished(this);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long startEpochMillis() {
+        return startEpochMillis;
+    }
+
+    public long durationNanos() {
+        return durationNanos;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public Map<String, String> attributes() {
+        synchronized (attributes) {
+            return new LinkedHashMap<>(attributes);
+        }
+    }
+
+    public List<Span> children() {
+        synchronized (children) {
+            return new ArrayList<>(children);
+        }
+    }
+}
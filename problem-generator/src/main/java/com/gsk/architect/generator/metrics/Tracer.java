@@ -0,0 +1,44 @@
+package com.gsk.architect.generator.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Starts root spans and keeps the most recently finished ones for export. Only a bounded number
+ * of spans is retained, so tracing a long batch run does not grow memory without limit.
+ */
+public class Tracer {
+    private static final Tracer GLOBAL = new Tracer(1000);
+
+    private final int capacity;
+    private final Deque<Span> finished = new ArrayDeque<>();
+
+    public Tracer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public static Tracer global() {
+        return GLOBAL;
+    }
+
+    public Span start(String name) {
+        return new Span(this, null, name);
+    }
+
+    void finished(Span span) {
+        synchronized (finished) {
+            if (finished.size() == capacity) {
+                finished.removeFirst();
+            }
+            finished.addLast(span);
+        }
+    }
+
+    public List<Span> finishedSpans() {
+        synchronized (finished) {
+            return new ArrayList<>(finished);
+        }
+    }
+}
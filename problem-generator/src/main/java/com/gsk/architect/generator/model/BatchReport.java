@@ -0,0 +1,28 @@
+package com.gsk.architect.generator.model;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a batch run: one entry per requested question, in submission order.
+ */
+public record BatchReport(List<Item> items, Duration elapsed) {
+
+    /**
+     * Result of a single question in the batch. Exactly one of {@code outputDirectory} and {@code error} is set.
+     */
+    public record Item(Domain domain, int index, Path outputDirectory, String error, Duration elapsed) {
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    public long successCount() {
+        return items.stream().filter(Item::succeeded).count();
+    }
+
+    public long failureCount() {
+        return items.size() - successCount();
+    }
+}
@@ -0,0 +1,108 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.model.BatchReport;
+import com.gsk.architect.generator.model.Domain;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates many questions concurrently, one virtual thread per question.
+ * Backend concurrency is limited by wrapping the model in a {@link BoundedLanguageModelService};
+ * this service only fans the work out and collects per-item results.
+ *
+ * <p>With a journal file, every question of a batch is a {@link GenerationJournal} job identified by its
+ * domain and index. Running the same batch again after a crash skips the questions already written and
+ * continues the others from their last recorded stage.
+ */
+@Slf4j
+public class BatchGeneratorService {
+    private final QuestionGeneratorService questionGenerator;
+    private final Path journalFile;
+
+    public BatchGeneratorService(QuestionGeneratorService questionGenerator) {
+        this(questionGenerator, null);
+    }
+
+    /**
+     * @param journalFile journal that makes batches resumable, or null to keep no journal
+     */
+    public BatchGeneratorService(QuestionGeneratorService questionGenerator, Path journalFile) {
+        this.questionGenerator = questionGenerator;
+        this.journalFile = journalFile;
+    }
+
+    public BatchReport generate(List<Domain> domains, int countPerDomain) {
+        return generate(domains, countPerDomain, CancellationToken.none());
+    }
+
+    /**
+     * Like {@link #generate(List, int)}; once {@code cancellation} is cancelled, running model calls stop
+     * and the questions not yet finished are reported as failed. A journaled batch can resume them.
+     */
+    public BatchReport generate(List<Domain> domains, int countPerDomain, CancellationToken cancellation) {
+        log.info("Starting batch of {} question(s) per domain for {}", countPerDomain, domains);
+        long batchStart = System.nanoTime();
+
+        List<Future<BatchReport.Item>> futures = new ArrayList<>();
+        try (GenerationJournal journal = journalFile == null
+                ? null
+                : GenerationJournal.open(journalFile, domains + " x " + countPerDomain);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Domain domain : domains) {
+                for (int i = 0; i < countPerDomain; i++) {
+                    int index = i;
+                    GenerationJournal.Job job = journal == null
+                            ? GenerationJournal.Job.untracked()
+                            : journal.job(domain.name() + "-" + index);
+                    futures.add(executor.submit(() -> generateItem(domain, index, job, cancellation)));
+                }
+            }
+        }
+
+        List<BatchReport.Item> items = new ArrayList<>(futures.size());
+        for (Future<BatchReport.Item> future : futures) {
+            items.add(resultOf(future));
+        }
+
+        BatchReport report = new BatchReport(items, Duration.ofNanos(System.nanoTime() - batchStart));
+        log.info("Batch finished in {}s: {} succeeded, {} failed",
+                report.elapsed().toSeconds(), report.successCount(), report.failureCount());
+        return report;
+    }
+
+    private BatchReport.Item generateItem(Domain domain, int index, GenerationJournal.Job job, CancellationToken cancellation) {
+        if (job.isComplete()) {
+            log.info("Question {} for domain {} was already generated in {}", index, domain, job.outputDirectory());
+            return new BatchReport.Item(domain, index, job.outputDirectory(), null, Duration.ZERO);
+        }
+        long start = System.nanoTime();
+        try {
+            Path outputDirectory = questionGenerator.generateQuestion(domain, job, cancellation);
+            return new BatchReport.Item(domain, index, outputDirectory, null, Duration.ofNanos(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.error("Question {} for domain {} failed", index, domain, e);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return new BatchReport.Item(domain, index, null, message, Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private BatchReport.Item resultOf(Future<BatchReport.Item> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while collecting batch results", e);
+        } catch (ExecutionException e) {
+            // generateItem never throws, so this only happens on an unexpected error in the executor itself
+            throw new RuntimeException("Batch task failed unexpectedly", e.getCause());
+        }
+    }
+}
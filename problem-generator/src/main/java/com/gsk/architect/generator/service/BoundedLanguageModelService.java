@@ -0,0 +1,69 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Caps the number of in-flight calls to a backend so that a batch fanned out over
+ * virtual threads does not overwhelm the API or the local Llama process.
+ */
+public class BoundedLanguageModelService extends DelegatingLanguageModelService {
+    private static final long CANCELLATION_POLL_MILLIS = 50;
+    private final Semaphore permits;
+    private final LatencyHistogram queueWait;
+
+    public BoundedLanguageModelService(LanguageModelService delegate, int maxInFlight) {
+        super(delegate);
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.permits = new Semaphore(maxInFlight, true);
+        this.queueWait = MetricsRegistry.global().histogram("llm_queue_wait_seconds", "backend", delegate.getBackendName());
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        acquire(cancellation);
+        try {
+            return delegate.generateResponse(prompt, cancellation);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        acquire(cancellation);
+        try {
+            delegate.streamResponse(prompt, cancellation, onChunk);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Waits for a slot, checking the token every {@value #CANCELLATION_POLL_MILLIS} ms so that a call
+     * cancelled while queued never reaches the backend.
+     */
+    private void acquire(CancellationToken cancellation) {
+        long start = System.nanoTime();
+        try {
+            while (!permits.tryAcquire(Math.min(cancellation.remainingNanos(),
+                    TimeUnit.MILLISECONDS.toNanos(CANCELLATION_POLL_MILLIS)), TimeUnit.NANOSECONDS)) {
+                cancellation.throwIfCancelled();
+            }
+            queueWait.recordNanosSince(start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a model call slot", e);
+        }
+        if (cancellation.isCancelled()) {
+            permits.release();
+            cancellation.throwIfCancelled();
+        }
+    }
+}
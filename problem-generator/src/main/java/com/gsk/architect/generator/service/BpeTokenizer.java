@@ -0,0 +1,183 @@
+package com.gsk.architect.generator.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Counts tokens exactly as the OpenAI models do, with the byte-pair encoding table of the model's encoding
+ * in the tiktoken file format: one line per token, its bytes in Base64 followed by its rank. Text is split
+ * into pieces with the encoding's pattern, and each piece that is not a token itself is merged pair by pair,
+ * lowest rank first, as tiktoken does. Counts of recent pieces are cached, since most words recur.
+ *
+ * <p>The tables are not shipped with the generator; {@link #forModel} looks for them in
+ * {@link #DEFAULT_DIRECTORY} and falls back to {@link TokenCounter#APPROXIMATE} if the file is missing.
+ */
+@Slf4j
+public final class BpeTokenizer implements TokenCounter {
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".architect-lab", "tiktoken");
+    private static final int MAX_CACHED_PIECES = 65_536;
+    private static final Map<Path, TokenCounter> LOADED = new ConcurrentHashMap<>();
+
+    public enum Encoding {
+        CL100K_BASE("cl100k_base",
+                "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*"
+                        + "|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+"),
+        O200K_BASE("o200k_base",
+                "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                        + "|[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                        + "|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+        private final String fileName;
+        private final Pattern pattern;
+
+        Encoding(String name, String pattern) {
+            this.fileName = name + ".tiktoken";
+            this.pattern = Pattern.compile(pattern, Pattern.UNICODE_CHARACTER_CLASS);
+        }
+
+        public String fileName() {
+            return fileName;
+        }
+
+        /**
+         * Encoding of an OpenAI model: o200k_base for the GPT-4o generation and later, cl100k_base before.
+         */
+        public static Encoding forModel(String model) {
+            for (String prefix : new String[]{"gpt-4o", "chatgpt-4o", "gpt-4.1", "gpt-4.5", "gpt-5", "o1", "o3", "o4"}) {
+                if (model.startsWith(prefix)) {
+                    return O200K_BASE;
+                }
+            }
+            return CL100K_BASE;
+        }
+    }
+
+    private final Encoding encoding;
+    // Token bytes as ISO-8859-1 strings, one char per byte, so pieces can be looked up without copying
+    private final Map<String, Integer> ranks;
+    private final Map<String, Integer> pieceCounts = new ConcurrentHashMap<>();
+
+    BpeTokenizer(Encoding encoding, Map<String, Integer> ranks) {
+        this.encoding = encoding;
+        this.ranks = ranks;
+    }
+
+    /**
+     * The tokenizer of {@code model} from {@code directory}, loaded once per process, or
+     * {@link TokenCounter#APPROXIMATE} if the directory has no table for the model's encoding.
+     */
+    public static TokenCounter forModel(String model, Path directory) {
+        Encoding encoding = Encoding.forModel(model);
+        Path file = directory.resolve(encoding.fileName());
+        return LOADED.computeIfAbsent(file.toAbsolutePath(), path -> {
+            if (!Files.isRegularFile(path)) {
+                log.warn("No {} table at {}, counting {} tokens approximately", encoding.fileName(), path, model);
+                return TokenCounter.APPROXIMATE;
+            }
+            return load(encoding, path);
+        });
+    }
+
+    public static BpeTokenizer load(Encoding encoding, Path file) {
+        long start = System.nanoTime();
+        Map<String, Integer> ranks = new HashMap<>(256 * 1024);
+        Base64.Decoder base64 = Base64.getDecoder();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new IllegalArgumentException("Malformed line in " + file + ": " + line);
+                }
+                byte[] token = base64.decode(line.substring(0, space));
+                ranks.put(new String(token, StandardCharsets.ISO_8859_1), Integer.parseInt(line.substring(space + 1).trim()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file, e);
+        }
+        log.info("Loaded {} {} tokens from {} in {} ms", ranks.size(), encoding.name().toLowerCase(), file,
+                (System.nanoTime() - start) / 1_000_000);
+        return new BpeTokenizer(encoding, ranks);
+    }
+
+    @Override
+    public int count(String text) {
+        int tokens = 0;
+        Matcher matcher = encoding.pattern.matcher(text);
+        while (matcher.find()) {
+            tokens += countPiece(matcher.group());
+        }
+        return tokens;
+    }
+
+    private int countPiece(String piece) {
+        Integer cached = pieceCounts.get(piece);
+        if (cached != null) {
+            return cached;
+        }
+        String bytes = new String(piece.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        int count = ranks.containsKey(bytes) ? 1 : mergedLength(bytes);
+        if (pieceCounts.size() < MAX_CACHED_PIECES) {
+            pieceCounts.put(piece, count);
+        }
+        return count;
+    }
+
+    /**
+     * Merges the bytes of a piece pair by pair, always the adjacent pair whose merge has the lowest rank,
+     * until no adjacent pair forms a token, and returns the number of tokens left.
+     */
+    int mergedLength(String bytes) {
+        // Token i spans bytes [starts[i], starts[i + 1]); pairRanks[i] is the rank of tokens i and i + 1 merged
+        int size = bytes.length() + 1;
+        int[] starts = new int[size];
+        int[] pairRanks = new int[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            pairRanks[i] = pairRank(bytes, starts, size, i);
+        }
+        while (true) {
+            int best = -1;
+            for (int i = 0; i < size - 2; i++) {
+                if (pairRanks[i] != Integer.MAX_VALUE && (best < 0 || pairRanks[i] < pairRanks[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return size - 1;
+            }
+            System.arraycopy(starts, best + 2, starts, best + 1, size - best - 2);
+            System.arraycopy(pairRanks, best + 2, pairRanks, best + 1, size - best - 2);
+            size--;
+            pairRanks[best] = pairRank(bytes, starts, size, best);
+            if (best > 0) {
+                pairRanks[best - 1] = pairRank(bytes, starts, size, best - 1);
+            }
+        }
+    }
+
+    private int pairRank(String bytes, int[] starts, int size, int i) {
+        if (i + 2 >= size) {
+            return Integer.MAX_VALUE;
+        }
+        Integer rank = ranks.get(bytes.substring(starts[i], starts[i + 2]));
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+}
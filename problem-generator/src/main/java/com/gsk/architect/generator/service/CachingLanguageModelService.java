@@ -0,0 +1,143 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.Counter;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Content-addressed response cache in front of a backend: an in-memory LRU tier backed by
+ * a size-bounded on-disk tier. Entries are keyed on backend, model, temperature and the SHA-256
+ * of the prompt.
+ *
+ * <p>Identical prompts are expected to yield different answers within one run (a batch asks for
+ * many questions with the same prompt), so the key also carries the occurrence number of the prompt
+ * in this run. Re-running the same batch therefore replays the same set of responses.
+ */
+@Slf4j
+public class CachingLanguageModelService extends DelegatingLanguageModelService {
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".architect-lab/cache/responses");
+    public static final long DEFAULT_MAX_DISK_BYTES = 512L * 1024 * 1024;
+    private static final int MEMORY_ENTRIES = 256;
+
+    public enum Mode {
+        /** Serve hits from the cache and store misses. */
+        READ_WRITE,
+        /** Always call the backend but store the fresh responses, replacing older ones. */
+        REFRESH
+    }
+
+    private final Mode mode;
+    private final ResponseDiskCache diskCache;
+    private final Map<String, String> memoryCache = new LinkedHashMap<>(MEMORY_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+    private final Map<String, AtomicInteger> occurrences = new ConcurrentHashMap<>();
+    private final Counter hits = MetricsRegistry.global().counter("response_cache_requests_total", "result", "hit");
+    private final Counter misses = MetricsRegistry.global().counter("response_cache_requests_total", "result", "miss");
+
+    public CachingLanguageModelService(LanguageModelService delegate, Mode mode, Path directory, long maxDiskBytes) {
+        super(delegate);
+        this.mode = mode;
+        this.diskCache = new ResponseDiskCache(directory, maxDiskBytes);
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        String key = cacheKey(prompt);
+        String cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String response = delegate.generateResponse(prompt, cancellation);
+        store(key, response);
+        return response;
+    }
+
+    /**
+     * Replays a cached response as a single chunk, or tees the backend stream into the cache.
+     * A stream that fails part-way is not cached.
+     */
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        String key = cacheKey(prompt);
+        String cached = lookup(key);
+        if (cached != null) {
+            onChunk.accept(cached);
+            return;
+        }
+
+        StringBuilder response = new StringBuilder();
+        delegate.streamResponse(prompt, cancellation, chunk -> {
+            response.append(chunk);
+            onChunk.accept(chunk);
+        });
+        store(key, response.toString());
+    }
+
+    private void store(String key, String response) {
+        synchronized (memoryCache) {
+            memoryCache.put(key, response);
+        }
+        diskCache.put(key, response);
+    }
+
+    private String lookup(String key) {
+        if (mode != Mode.READ_WRITE) {
+            return null;
+        }
+        String cached;
+        synchronized (memoryCache) {
+            cached = memoryCache.get(key);
+        }
+        if (cached == null) {
+            cached = diskCache.get(key);
+            if (cached != null) {
+                synchronized (memoryCache) {
+                    memoryCache.put(key, cached);
+                }
+            }
+        }
+        if (cached != null) {
+            hits.increment();
+            log.info("Response cache hit for key {}", key.substring(0, 12));
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    private String cacheKey(String prompt) {
+        String promptHash = sha256(prompt);
+        int occurrence = occurrences.computeIfAbsent(promptHash, hash -> new AtomicInteger()).getAndIncrement();
+        return sha256(String.join("\n",
+                getBackendName(),
+                getModelName(),
+                Double.toString(getTemperature()),
+                promptHash,
+                Integer.toString(occurrence)));
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.gsk.architect.generator.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets the caller of a model call give up on it: either explicitly with {@link #cancel()} or when its
+ * deadline passes. Backends check the token at every token or chunk boundary and register listeners with
+ * {@link #onCancel} to abort work that is blocked, such as an HTTP exchange, so a cancelled call releases
+ * its connection or Llama sequence right away instead of running to completion.
+ *
+ * <p>Tokens form a tree: a {@link #child} is cancelled with its parent and may have an earlier deadline of
+ * its own, e.g. one per model call under one per batch. Close a child when the call is over so that the
+ * parent does not keep it.
+ */
+@Slf4j
+public final class CancellationToken implements AutoCloseable {
+    private static final CancellationToken NONE = new CancellationToken(null, Long.MAX_VALUE);
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "cancellation-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final CancellationToken parent;
+    // System.nanoTime() of the deadline, or Long.MAX_VALUE for none
+    private final long deadlineNanos;
+    private final List<Runnable> listeners = new ArrayList<>();
+    private volatile CancelledException failure;
+    private Registration parentRegistration;
+    private ScheduledFuture<?> deadlineTimer;
+
+    private CancellationToken(CancellationToken parent, long deadlineNanos) {
+        this.parent = parent;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * A token that is never cancelled, for callers without a deadline.
+     */
+    public static CancellationToken none() {
+        return NONE;
+    }
+
+    /**
+     * A token without a deadline that is cancelled only by {@link #cancel()}.
+     */
+    public static CancellationToken create() {
+        return NONE.child();
+    }
+
+    public static CancellationToken withTimeout(Duration timeout) {
+        return NONE.child(timeout);
+    }
+
+    public CancellationToken child() {
+        return link(new CancellationToken(this, deadlineNanos));
+    }
+
+    /**
+     * A child whose deadline is {@code timeout} from now, or the parent's deadline if that is earlier.
+     */
+    public CancellationToken child(Duration timeout) {
+        long deadline = System.nanoTime() + Math.min(timeout.toNanos(), Long.MAX_VALUE / 4);
+        boolean earlier = deadlineNanos == Long.MAX_VALUE || deadline - deadlineNanos < 0;
+        return link(new CancellationToken(this, earlier ? deadline : deadlineNanos));
+    }
+
+    private CancellationToken link(CancellationToken child) {
+        if (this != NONE) {
+            child.parentRegistration = onCancel(() -> child.cancel(failure));
+        }
+        return child;
+    }
+
+    public void cancel() {
+        cancel(new CancelledException("Model call was cancelled", false));
+    }
+
+    public boolean isCancelled() {
+        if (failure == null && deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0) {
+            expire();
+        }
+        return failure != null;
+    }
+
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Why the token was cancelled, or null if it has not been.
+     */
+    public CancelledException failure() {
+        return isCancelled() ? failure : null;
+    }
+
+    /**
+     * Nanoseconds until the deadline, 0 once it has passed, or {@link Long#MAX_VALUE} without a deadline.
+     */
+    public long remainingNanos() {
+        if (deadlineNanos == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * Runs {@code listener} once when the token is cancelled or its deadline passes, on the cancelling
+     * thread or the deadline timer, or right away if that has already happened. Listeners must be quick.
+     */
+    public Registration onCancel(Runnable listener) {
+        if (this == NONE) {
+            return () -> { };
+        }
+        if (!isCancelled()) {
+            synchronized (this) {
+                if (failure == null) {
+                    listeners.add(listener);
+                    if (deadlineNanos != Long.MAX_VALUE && deadlineTimer == null) {
+                        deadlineTimer = TIMER.schedule(this::expire, remainingNanos(), TimeUnit.NANOSECONDS);
+                    }
+                    return () -> {
+                        synchronized (this) {
+                            listeners.remove(listener);
+                        }
+                    };
+                }
+            }
+        }
+        listener.run();
+        return () -> { };
+    }
+
+    private void expire() {
+        cancel(new CancelledException("Model call exceeded its deadline", true));
+    }
+
+    private void cancel(CancelledException reason) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (failure != null || this == NONE) {
+                return;
+            }
+            failure = reason;
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+            if (deadlineTimer != null) {
+                deadlineTimer.cancel(false);
+            }
+        }
+        for (Runnable listener : toRun) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("Cancellation listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Detaches the token from its parent and stops its deadline timer. Does not cancel it.
+     */
+    @Override
+    public void close() {
+        if (parentRegistration != null) {
+            parentRegistration.close();
+        }
+        synchronized (this) {
+            if (deadlineTimer != null) {
+                deadlineTimer.cancel(false);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Thrown by a model call that was cancelled or ran past its deadline.
+     */
+    public static class CancelledException extends CancellationException {
+        private static final long serialVersionUID = 1L;
+        private final boolean deadlineExceeded;
+
+        CancelledException(String message, boolean deadlineExceeded) {
+            super(message);
+            this.deadlineExceeded = deadlineExceeded;
+        }
+
+        public boolean isDeadlineExceeded() {
+            return deadlineExceeded;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.gsk.architect.generator.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Core and NUMA layout of the host. {@link Runtime#availableProcessors()} counts hardware threads,
+ * but llama.cpp's matrix kernels saturate a core with one thread, so thread counts start from physical cores.
+ */
+final class CpuTopology {
+    private static final Path SYS_CPU = Path.of("/sys/devices/system/cpu");
+    private static final Path SYS_NODE = Path.of("/sys/devices/system/node");
+    // The topology does not change while the process runs; probing it reads sysfs or forks sysctl
+    private static volatile int physicalCores;
+
+    private CpuTopology() {
+    }
+
+    static int logicalProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Physical cores available to the JVM. On Apple Silicon these are the performance cores only,
+     * since threads placed on efficiency cores hold back every synchronized step of a decode.
+     */
+    static int physicalCores() {
+        int cores = physicalCores;
+        if (cores == 0) {
+            cores = probePhysicalCores();
+            physicalCores = cores;
+        }
+        return cores;
+    }
+
+    private static int probePhysicalCores() {
+        int cores = linuxPhysicalCores();
+        if (cores <= 0) {
+            cores = sysctl("hw.perflevel0.physicalcpu");
+        }
+        if (cores <= 0) {
+            cores = sysctl("hw.physicalcpu");
+        }
+        return cores > 0 ? Math.min(cores, logicalProcessors()) : logicalProcessors();
+    }
+
+    /**
+     * Number of NUMA nodes, 1 where the platform does not expose them.
+     */
+    static int numaNodes() {
+        try (Stream<Path> nodes = Files.list(SYS_NODE)) {
+            return (int) Math.max(1, nodes.filter(path -> path.getFileName().toString().matches("node\\d+")).count());
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    private static int linuxPhysicalCores() {
+        // Hardware threads of one core share a thread_siblings_list, so distinct lists are distinct cores
+        Set<String> cores = new HashSet<>();
+        try (Stream<Path> cpus = Files.list(SYS_CPU)) {
+            for (Path cpu : (Iterable<Path>) cpus.filter(path -> path.getFileName().toString().matches("cpu\\d+"))::iterator) {
+                Path siblings = cpu.resolve("topology/thread_siblings_list");
+                if (Files.isReadable(siblings)) {
+                    cores.add(Files.readString(siblings).strip());
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return cores.size();
+    }
+
+    private static int sysctl(String name) {
+        try {
+            Process process = new ProcessBuilder("sysctl", "-n", name).redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes()).strip();
+            if (!process.waitFor(2, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                return -1;
+            }
+            return Integer.parseInt(output);
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+}
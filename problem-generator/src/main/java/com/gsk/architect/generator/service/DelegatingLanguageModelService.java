@@ -0,0 +1,71 @@
+package com.gsk.architect.generator.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Base class for decorators that add behaviour around another {@link LanguageModelService}.
+ * Every method forwards to the wrapped service unless overridden. Calls without a {@link CancellationToken}
+ * go through the variants that take one, so decorators only need to override those.
+ */
+public abstract class DelegatingLanguageModelService implements LanguageModelService {
+    protected final LanguageModelService delegate;
+
+    protected DelegatingLanguageModelService(LanguageModelService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public final String generateResponse(String prompt) {
+        return generateResponse(prompt, CancellationToken.none());
+    }
+
+    @Override
+    public final void streamResponse(String prompt, Consumer<String> onChunk) {
+        streamResponse(prompt, CancellationToken.none(), onChunk);
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        return delegate.generateResponse(prompt, cancellation);
+    }
+
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        delegate.streamResponse(prompt, cancellation, onChunk);
+    }
+
+    @Override
+    public void registerPromptPrefix(String prefix) {
+        delegate.registerPromptPrefix(prefix);
+    }
+
+    @Override
+    public int countTokens(String text) {
+        return delegate.countTokens(text);
+    }
+
+    @Override
+    public int maxPromptTokens() {
+        return delegate.maxPromptTokens();
+    }
+
+    @Override
+    public String getBackendName() {
+        return delegate.getBackendName();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public double getTemperature() {
+        return delegate.getTemperature();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
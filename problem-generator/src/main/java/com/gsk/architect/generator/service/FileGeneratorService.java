@@ -5,23 +5,49 @@ import lombok.extern.slf4j.Slf4j;
 
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.function.Function;
 
 @Slf4j
 public class FileGeneratorService {
     private static final String LAB_SOLUTIONS_PATH = "../lab-solutions/src/main/java/com/gsk/architect/solutions";
+    public static final Path DEFAULT_SOLUTIONS_ROOT = Paths.get(LAB_SOLUTIONS_PATH);
+    private final Path solutionsRoot;
+    private final QuestionCatalogue catalogue;
 
-    public void generateQuestionFiles(Domain domain, String questionPackage, String questionContent, String hintsContent) {
+    public FileGeneratorService() {
+        this(DEFAULT_SOLUTIONS_ROOT);
+    }
+
+    /**
+     * Writes into {@code solutionsRoot} instead of the lab-solutions module, e.g. a scratch directory for benchmarks.
+     */
+    public FileGeneratorService(Path solutionsRoot) {
+        this(solutionsRoot, null);
+    }
+
+    /**
+     * Records every question in {@code catalogue}, which also makes package names collision-safe:
+     * a name that is already taken in the domain gets a numeric suffix instead of overwriting the existing question.
+     */
+    public FileGeneratorService(Path solutionsRoot, QuestionCatalogue catalogue) {
+        this.solutionsRoot = solutionsRoot;
+        this.catalogue = catalogue;
+    }
+
+    public Path getSolutionsRoot() {
+        return solutionsRoot;
+    }
+
+    public Path generateQuestionFiles(Domain domain, String preferredPackage, String questionContent, String hintsContent) {
+        String questionPackage = allocatePackage(domain, preferredPackage);
         try {
             // Create the package directory structure
-            String packagePath = String.format("%s/%s/%s",
-                    LAB_SOLUTIONS_PATH,
-                    domain.name().toLowerCase(),
-                    questionPackage);
-
-            Path dirPath = Paths.get(packagePath);
+            Path dirPath = solutionsRoot.resolve(domain.name().toLowerCase()).resolve(questionPackage);
             Files.createDirectories(dirPath);
 
             // Create README.md with the question
@@ -33,17 +59,69 @@ public class FileGeneratorService {
             Files.writeString(hintsPath, hintsContent);
 
             // Create an empty Solution.java file
-            String solutionTemplate = generateSolutionTemplate(domain, questionPackage);
-            Path solutionPath = dirPath.resolve("Solution.java");
-            Files.writeString(solutionPath, solutionTemplate);
+            writeSolutionTemplate(dirPath, domain, questionPackage);
+            recordQuestion(domain, questionPackage, dirPath);
 
-            log.info("Successfully generated question files in: {}", packagePath);
+            log.info("Successfully generated question files in: {}", dirPath);
+            return dirPath;
         } catch (IOException e) {
             log.error("Error generating question files", e);
+            releasePackage(domain, questionPackage);
             throw new RuntimeException("Failed to generate question files", e);
         }
     }
 
+    /**
+     * Opens a sink that writes the question and hints files while the model is still generating them.
+     * The package name is derived with {@code packageNamer} as soon as the first line of the question is known.
+     */
+    public QuestionFileSink openQuestionFiles(Domain domain, Function<String, String> packageNamer) {
+        Path domainPath = solutionsRoot.resolve(domain.name().toLowerCase());
+        return new QuestionFileSink(domainPath, domain, packageNamer, this);
+    }
+
+    /**
+     * Returns the package name to write a question into: {@code preferred}, or a variant of it if that is taken.
+     */
+    String allocatePackage(Domain domain, String preferred) {
+        return catalogue == null ? preferred : catalogue.allocateSlug(domain, preferred);
+    }
+
+    /**
+     * Returns {@code questionPackage} again for a resumed question whose directory already exists,
+     * unless the package has been catalogued for another question since.
+     */
+    String reclaimPackage(Domain domain, String questionPackage) {
+        return catalogue == null ? questionPackage : catalogue.reclaimSlug(domain, questionPackage);
+    }
+
+    /**
+     * Directory of {@code questionPackage} if it has already been catalogued with {@code readme} as its question,
+     * so a resumed job that got that far is not written a second time; null otherwise.
+     */
+    Path recordedPackage(Domain domain, String questionPackage, String readme) {
+        if (catalogue == null || !catalogue.contains(domain, questionPackage, readme.getBytes(StandardCharsets.UTF_8))) {
+            return null;
+        }
+        return solutionsRoot.resolve(domain.name().toLowerCase()).resolve(questionPackage);
+    }
+
+    void releasePackage(Domain domain, String questionPackage) {
+        if (catalogue != null) {
+            catalogue.release(domain, questionPackage);
+        }
+    }
+
+    void recordQuestion(Domain domain, String questionPackage, Path dirPath) throws IOException {
+        if (catalogue != null) {
+            catalogue.append(domain, questionPackage, Files.readAllBytes(dirPath.resolve("README.md")), Instant.now());
+        }
+    }
+
+    void writeSolutionTemplate(Path dirPath, Domain domain, String questionPackage) throws IOException {
+        Files.writeString(dirPath.resolve("Solution.java"), generateSolutionTemplate(domain, questionPackage));
+    }
+
     private String generateSolutionTemplate(Domain domain, String questionPackage) {
         return String.format("""
                 package com.gsk.architect.solutions.%s.%s;
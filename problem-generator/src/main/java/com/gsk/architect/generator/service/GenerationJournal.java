@@ -0,0 +1,400 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.Counter;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe record of the stages a batch has completed, stored in {@value #FILE_NAME} at the solutions root.
+ * Each job (one question of the batch) appends a record when its question has been generated and accepted,
+ * when its hints have been generated, and when its files have been written. Records are framed by their
+ * length and a CRC32 like those of the {@link QuestionCatalogue}, so a record torn by a crash is cut off on open.
+ *
+ * <p>A stage counts as done only once its record is on disk. Appends are made durable by group commit:
+ * the first thread to need an fsync performs it for every record written so far, and threads that append
+ * meanwhile wait for that fsync or the next, so concurrent jobs share fsyncs instead of queueing for one each.
+ *
+ * <p>Opening the journal for the same batch replays it, so a restarted batch skips finished jobs and
+ * resumes the others after their last completed stage. Once a job's files are written, its question and
+ * hints text is dead weight; the file is rewritten without it when enough has accumulated, and deleted
+ * when the whole batch has completed.
+ */
+@Slf4j
+public class GenerationJournal implements AutoCloseable {
+    public static final String FILE_NAME = ".journal";
+    private static final int MAGIC = 0x474A524E;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final long COMPACTION_THRESHOLD_BYTES = 256 * 1024;
+
+    private static final byte BATCH = 1;
+    private static final byte QUESTION = 2;
+    private static final byte HINTS = 3;
+    private static final byte FILES = 4;
+
+    private final Path file;
+    private final String batch;
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition syncCompleted = lock.newCondition();
+    private FileChannel channel;
+    private long size;
+    private long appendedRecords;
+    private long syncedRecords;
+    private boolean syncing;
+    private long deadBytes;
+
+    private final Counter records = MetricsRegistry.global().counter("journal_records_total");
+    private final Counter syncs = MetricsRegistry.global().counter("journal_syncs_total");
+
+    /**
+     * Stages of one job. A job created without a journal ({@link #untracked()}) records nothing.
+     */
+    public static final class Job {
+        private final GenerationJournal journal;
+        private final String id;
+        private String questionPackage;
+        private String question;
+        private String hints;
+        private Path outputDirectory;
+        private long payloadBytes;
+
+        private Job(GenerationJournal journal, String id) {
+            this.journal = journal;
+            this.id = id;
+        }
+
+        public static Job untracked() {
+            return new Job(null, null);
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Package the question was written into, known once {@link #question()} is.
+         */
+        public String questionPackage() {
+            return questionPackage;
+        }
+
+        /**
+         * Accepted question text from an earlier run, or null if the question still has to be generated.
+         */
+        public String question() {
+            return question;
+        }
+
+        /**
+         * Hints text from an earlier run, or null if the hints still have to be generated.
+         */
+        public String hints() {
+            return hints;
+        }
+
+        public Path outputDirectory() {
+            return outputDirectory;
+        }
+
+        public boolean isComplete() {
+            return outputDirectory != null;
+        }
+
+        public void questionGenerated(String questionPackage, String question) {
+            this.questionPackage = questionPackage;
+            this.question = question;
+            if (journal != null) {
+                payloadBytes += journal.append(encode(QUESTION, id, questionPackage, question));
+            }
+        }
+
+        public void hintsGenerated(String hints) {
+            this.hints = hints;
+            if (journal != null) {
+                payloadBytes += journal.append(encode(HINTS, id, hints));
+            }
+        }
+
+        public void filesWritten(Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            if (journal != null) {
+                journal.append(encode(FILES, id, outputDirectory.toString()));
+                journal.completed(this);
+            }
+        }
+    }
+
+    private GenerationJournal(Path file, String batch) {
+        this.file = file;
+        this.batch = batch;
+    }
+
+    /**
+     * Opens the journal for {@code batch}, a description of the batch's jobs such as its domains and count.
+     * A journal left by a different batch is replaced, since its job IDs mean different questions.
+     */
+    public static GenerationJournal open(Path file, String batch) {
+        GenerationJournal journal = new GenerationJournal(file, batch);
+        journal.lock.lock();
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            if (Files.exists(file) && !journal.replay()) {
+                journal.jobs.clear();
+            }
+            // Rewriting on open also drops whatever a crash left torn at the end
+            journal.rewrite();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open generation journal " + file, e);
+        } finally {
+            journal.lock.unlock();
+        }
+        return journal;
+    }
+
+    /**
+     * The job with this ID, with the stages recorded for it by earlier runs of the batch.
+     */
+    public Job job(String id) {
+        lock.lock();
+        try {
+            return jobs.computeIfAbsent(id, key -> new Job(this, key));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the journal into {@link #jobs}. Returns false if it was written for another batch.
+     */
+    private boolean replay() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            log.warn("Ignoring {}: not a generation journal or unsupported version", file);
+            return false;
+        }
+        String recordedBatch = null;
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 1 || buffer.remaining() < 4L + length + 4) {
+                log.warn("Generation journal {} ends in a torn record at offset {}, dropping it", file, buffer.position());
+                break;
+            }
+            ByteBuffer payload = buffer.slice(buffer.position() + 4, length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(buffer.position() + 4 + length)) {
+                log.warn("Generation journal {} has a damaged record at offset {}, dropping the rest", file, buffer.position());
+                break;
+            }
+            buffer.position(buffer.position() + 4 + length + 4);
+
+            byte type = payload.get();
+            if (type == BATCH) {
+                recordedBatch = readString(payload);
+                if (!recordedBatch.equals(batch)) {
+                    log.warn("Generation journal {} belongs to batch [{}], starting a new one for [{}]", file, recordedBatch, batch);
+                    return false;
+                }
+                continue;
+            }
+            Job job = jobs.computeIfAbsent(readString(payload), id -> new Job(this, id));
+            switch (type) {
+                case QUESTION -> {
+                    job.questionPackage = readString(payload);
+                    job.question = readString(payload);
+                    job.payloadBytes += length;
+                }
+                case HINTS -> {
+                    job.hints = readString(payload);
+                    job.payloadBytes += length;
+                }
+                case FILES -> job.outputDirectory = Path.of(readString(payload));
+                default -> throw new IOException("Unknown record type " + type + " in generation journal " + file);
+            }
+        }
+        if (recordedBatch == null) {
+            return false;
+        }
+        int complete = 0;
+        int resumable = 0;
+        for (Job job : jobs.values()) {
+            if (job.isComplete()) {
+                complete++;
+            } else if (job.question != null) {
+                resumable++;
+            }
+        }
+        log.info("Resuming batch [{}] from {}: {} job(s) complete, {} with a generated question", batch, file, complete, resumable);
+        return true;
+    }
+
+    /**
+     * Appends one record and returns once it is on disk. Returns the record's size in bytes.
+     */
+    private long append(byte[] payload) {
+        ByteBuffer record = frame(payload);
+        lock.lock();
+        try {
+            long offset = size;
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            size += record.limit();
+            records.increment();
+            long sequence = ++appendedRecords;
+            while (syncedRecords < sequence) {
+                if (syncing) {
+                    syncCompleted.awaitUninterruptibly();
+                    continue;
+                }
+                // Become the syncing thread for everything appended so far, letting others append meanwhile
+                syncing = true;
+                long target = appendedRecords;
+                FileChannel syncedChannel = channel;
+                boolean forced = false;
+                lock.unlock();
+                try {
+                    syncedChannel.force(false);
+                    forced = true;
+                } finally {
+                    lock.lock();
+                    syncing = false;
+                    if (forced) {
+                        syncedRecords = Math.max(syncedRecords, target);
+                        syncs.increment();
+                    }
+                    syncCompleted.signalAll();
+                }
+            }
+            return record.limit();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to generation journal " + file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void completed(Job job) {
+        lock.lock();
+        try {
+            deadBytes += job.payloadBytes;
+            job.payloadBytes = 0;
+            if (deadBytes >= COMPACTION_THRESHOLD_BYTES) {
+                rewrite();
+            }
+        } catch (IOException e) {
+            // The current file is still intact, so compaction can simply be retried later
+            log.warn("Failed to compact generation journal {}", file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the file with the batch header, the completed jobs without their text, and the stages of
+     * unfinished jobs. The new file is synced before it atomically replaces the old one.
+     */
+    private void rewrite() throws IOException {
+        while (syncing) {
+            syncCompleted.awaitUninterruptibly();
+        }
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), FILE_NAME, ".tmp");
+        long written;
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip());
+                out.write(frame(encode(BATCH, batch)));
+                for (Job job : jobs.values()) {
+                    if (job.isComplete()) {
+                        out.write(frame(encode(FILES, job.id, job.outputDirectory.toString())));
+                        continue;
+                    }
+                    if (job.question != null) {
+                        out.write(frame(encode(QUESTION, job.id, job.questionPackage, job.question)));
+                    }
+                    if (job.hints != null) {
+                        out.write(frame(encode(HINTS, job.id, job.hints)));
+                    }
+                }
+                out.force(true);
+                written = out.size();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = written;
+        syncedRecords = appendedRecords;
+        deadBytes = 0;
+    }
+
+    /**
+     * Deletes the journal if every job of the batch completed, otherwise compacts it for the next run.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            boolean complete = jobs.values().stream().allMatch(Job::isComplete);
+            if (complete) {
+                channel.close();
+                Files.deleteIfExists(file);
+                log.info("Batch [{}] complete, removed generation journal {}", batch, file);
+            } else {
+                rewrite();
+                channel.close();
+                log.info("Kept generation journal {} so that rerunning the batch resumes its unfinished jobs", file);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close generation journal {}", file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(4 + payload.length + 4).putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+    }
+
+    private static byte[] encode(byte type, String... fields) {
+        byte[][] encoded = new byte[fields.length][];
+        int length = 1;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + encoded[i].length;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length).put(type);
+        for (byte[] field : encoded) {
+            payload.putInt(field.length).put(field);
+        }
+        return payload.array();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,234 @@
+package com.gsk.architect.generator.service;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metadata of a GGUF model file, read through a memory mapping without touching the tensor data.
+ * Scalar and string values are kept as they are; arrays (such as the tokenizer vocabulary) are
+ * skipped and recorded by their length only.
+ *
+ * <p>Only GGUF version 2 and later are supported; version 1 used 32-bit lengths and predates the
+ * llama.cpp build this project binds to.
+ */
+public class GgufHeader {
+    private static final int MAGIC = 0x46554747; // "GGUF" little-endian
+    private static final int DEFAULT_ALIGNMENT = 32;
+    private static final String[] FILE_TYPES = {
+            "F32", "F16", "Q4_0", "Q4_1", "Q4_1_SOME_F16", null, null, "Q8_0", "Q5_0", "Q5_1",
+            "Q2_K", "Q3_K_S", "Q3_K_M", "Q3_K_L", "Q4_K_S", "Q4_K_M", "Q5_K_S", "Q5_K_M", "Q6_K"
+    };
+
+    private final Path file;
+    private final long fileSize;
+    private final int version;
+    private final long tensorCount;
+    private final long dataOffset;
+    private final Map<String, Object> metadata;
+
+    private GgufHeader(Path file, long fileSize, int version, long tensorCount, long dataOffset, Map<String, Object> metadata) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.version = version;
+        this.tensorCount = tensorCount;
+        this.dataOffset = dataOffset;
+        this.metadata = Collections.unmodifiableMap(metadata);
+    }
+
+    /**
+     * Length of an array value, e.g. the number of tokens in {@code tokenizer.ggml.tokens}.
+     */
+    public record ArrayValue(int elementType, long length) {
+    }
+
+    public static GgufHeader read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // The header sits at the start of the file; a single buffer can map at most 2 GB of it
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                return parse(file, size, buffer);
+            } catch (BufferUnderflowException | IllegalArgumentException | ArithmeticException e) {
+                throw new IOException("Malformed or truncated GGUF file " + file, e);
+            }
+        }
+    }
+
+    private static GgufHeader parse(Path file, long size, MappedByteBuffer buffer) throws IOException {
+        if (size < 24 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a GGUF model file: " + file);
+        }
+        int version = buffer.getInt();
+        if (version < 2) {
+            throw new IOException("GGUF version " + version + " is not supported, convert " + file + " with a newer llama.cpp");
+        }
+        long tensorCount = buffer.getLong();
+        long metadataCount = buffer.getLong();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (long i = 0; i < metadataCount; i++) {
+            String key = readString(buffer);
+            metadata.put(key, readValue(buffer, buffer.getInt()));
+        }
+        for (long i = 0; i < tensorCount; i++) {
+            skipString(buffer);
+            int dimensions = buffer.getInt();
+            buffer.position(buffer.position() + dimensions * Long.BYTES + Integer.BYTES + Long.BYTES);
+        }
+        long alignment = metadata.get("general.alignment") instanceof Number n ? n.longValue() : DEFAULT_ALIGNMENT;
+        long dataOffset = (buffer.position() + alignment - 1) / alignment * alignment;
+        return new GgufHeader(file, size, version, tensorCount, dataOffset, metadata);
+    }
+
+    private static Object readValue(MappedByteBuffer buffer, int type) {
+        return switch (type) {
+            case 0 -> Byte.toUnsignedInt(buffer.get());
+            case 1 -> (int) buffer.get();
+            case 2 -> Short.toUnsignedInt(buffer.getShort());
+            case 3 -> (int) buffer.getShort();
+            case 4 -> Integer.toUnsignedLong(buffer.getInt());
+            case 5 -> buffer.getInt();
+            case 6 -> buffer.getFloat();
+            case 7 -> buffer.get() != 0;
+            case 8 -> readString(buffer);
+            case 9 -> {
+                int elementType = buffer.getInt();
+                long length = buffer.getLong();
+                for (long i = 0; i < length; i++) {
+                    skipValue(buffer, elementType);
+                }
+                yield new ArrayValue(elementType, length);
+            }
+            case 10, 11 -> buffer.getLong();
+            case 12 -> buffer.getDouble();
+            default -> throw new IllegalArgumentException("Unknown GGUF value type " + type);
+        };
+    }
+
+    private static void skipValue(MappedByteBuffer buffer, int type) {
+        int width = switch (type) {
+            case 0, 1, 7 -> 1;
+            case 2, 3 -> 2;
+            case 4, 5, 6 -> 4;
+            case 10, 11, 12 -> 8;
+            default -> -1;
+        };
+        if (width > 0) {
+            buffer.position(buffer.position() + width);
+        } else if (type == 8) {
+            skipString(buffer);
+        } else {
+            readValue(buffer, type);
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[Math.toIntExact(buffer.getLong())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(MappedByteBuffer buffer) {
+        int length = Math.toIntExact(buffer.getLong());
+        buffer.position(Math.addExact(buffer.position(), length));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getTensorCount() {
+        return tensorCount;
+    }
+
+    public Map<String, Object> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Model architecture, e.g. {@code llama}, which prefixes the architecture-specific keys.
+     */
+    public String getArchitecture() {
+        return metadata.get("general.architecture") instanceof String s ? s : "llama";
+    }
+
+    /**
+     * Quantization of the bulk of the weights, e.g. {@code Q4_K_M}.
+     */
+    public String getFileType() {
+        if (!(metadata.get("general.file_type") instanceof Number n)) {
+            return "unknown";
+        }
+        int type = n.intValue();
+        return type >= 0 && type < FILE_TYPES.length && FILE_TYPES[type] != null ? FILE_TYPES[type] : "type " + type;
+    }
+
+    public int getLayerCount() {
+        return architectureInt("block_count", 0);
+    }
+
+    public int getEmbeddingLength() {
+        return architectureInt("embedding_length", 0);
+    }
+
+    public int getFeedForwardLength() {
+        return architectureInt("feed_forward_length", 4 * getEmbeddingLength());
+    }
+
+    public int getHeadCount() {
+        return architectureInt("attention.head_count", 1);
+    }
+
+    /**
+     * Key/value heads; fewer than {@link #getHeadCount()} for models with grouped-query attention.
+     */
+    public int getKeyValueHeadCount() {
+        return architectureInt("attention.head_count_kv", getHeadCount());
+    }
+
+    /**
+     * Context length the model was trained with, or 0 if the file does not say.
+     */
+    public int getTrainedContextLength() {
+        return architectureInt("context_length", 0);
+    }
+
+    public int getVocabularySize() {
+        if (metadata.get("tokenizer.ggml.tokens") instanceof ArrayValue tokens) {
+            return (int) tokens.length();
+        }
+        return architectureInt("vocab_size", 32000);
+    }
+
+    /**
+     * Bytes of tensor data, which llama.cpp maps into memory as the model's weights.
+     */
+    public long getWeightBytes() {
+        return fileSize - dataOffset;
+    }
+
+    private int architectureInt(String key, int defaultValue) {
+        Object value = metadata.get(getArchitecture() + "." + key);
+        return value instanceof Number n ? n.intValue() : defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s, %d layers, embedding %d, %d/%d heads, trained context %d, %.2f GB weights",
+                getArchitecture(), getFileType(), getLayerCount(), getEmbeddingLength(), getHeadCount(),
+                getKeyValueHeadCount(), getTrainedContextLength(), getWeightBytes() / 1e9);
+    }
+}
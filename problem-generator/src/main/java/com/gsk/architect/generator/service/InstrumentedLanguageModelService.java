@@ -0,0 +1,84 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.Counter;
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+
+import java.util.function.Consumer;
+
+/**
+ * Records call counts, failures, latency and time to first chunk for the wrapped backend. Calls that
+ * ran past their deadline or were cancelled are counted apart from failures.
+ * Metric handles are resolved once up front so the per-call cost is a few counter updates.
+ */
+public class InstrumentedLanguageModelService extends DelegatingLanguageModelService {
+    private final Counter successes;
+    private final Counter failures;
+    private final Counter timeouts;
+    private final Counter cancellations;
+    private final Counter promptChars;
+    private final Counter responseChars;
+    private final LatencyHistogram callDuration;
+    private final LatencyHistogram timeToFirstChunk;
+
+    public InstrumentedLanguageModelService(LanguageModelService delegate, MetricsRegistry metrics) {
+        super(delegate);
+        String backend = delegate.getBackendName();
+        this.successes = metrics.counter("llm_calls_total", "backend", backend, "outcome", "success");
+        this.failures = metrics.counter("llm_calls_total", "backend", backend, "outcome", "failure");
+        this.timeouts = metrics.counter("llm_calls_total", "backend", backend, "outcome", "timeout");
+        this.cancellations = metrics.counter("llm_calls_total", "backend", backend, "outcome", "cancelled");
+        this.promptChars = metrics.counter("llm_prompt_chars_total", "backend", backend);
+        this.responseChars = metrics.counter("llm_response_chars_total", "backend", backend);
+        this.callDuration = metrics.histogram("llm_call_duration_seconds", "backend", backend);
+        this.timeToFirstChunk = metrics.histogram("llm_time_to_first_chunk_seconds", "backend", backend);
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        long start = System.nanoTime();
+        promptChars.add(prompt.length());
+        try {
+            String response = delegate.generateResponse(prompt, cancellation);
+            responseChars.add(response.length());
+            successes.increment();
+            return response;
+        } catch (RuntimeException e) {
+            countFailure(e);
+            throw e;
+        } finally {
+            callDuration.recordNanosSince(start);
+        }
+    }
+
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        long start = System.nanoTime();
+        promptChars.add(prompt.length());
+        boolean[] firstChunk = {true};
+        try {
+            delegate.streamResponse(prompt, cancellation, chunk -> {
+                if (firstChunk[0]) {
+                    timeToFirstChunk.recordNanosSince(start);
+                    firstChunk[0] = false;
+                }
+                responseChars.add(chunk.length());
+                onChunk.accept(chunk);
+            });
+            successes.increment();
+        } catch (RuntimeException e) {
+            countFailure(e);
+            throw e;
+        } finally {
+            callDuration.recordNanosSince(start);
+        }
+    }
+
+    private void countFailure(RuntimeException e) {
+        if (e instanceof CancellationToken.CancelledException cancelled) {
+            (cancelled.isDeadlineExceeded() ? timeouts : cancellations).increment();
+        } else {
+            failures.increment();
+        }
+    }
+}
@@ -1,5 +1,84 @@
 package com.gsk.architect.generator.service;
 
-public interface LanguageModelService {
+import java.util.function.Consumer;
+
+public interface LanguageModelService extends AutoCloseable {
     String generateResponse(String prompt);
+
+    /**
+     * Generates a response and hands it to {@code onChunk} piece by piece as the backend produces it.
+     * Returns once the response is complete. The default implementation delivers the whole response as one chunk.
+     */
+    default void streamResponse(String prompt, Consumer<String> onChunk) {
+        onChunk.accept(generateResponse(prompt));
+    }
+
+    /**
+     * Like {@link #generateResponse(String)}, giving up with a {@link CancellationToken.CancelledException}
+     * once {@code cancellation} is cancelled or its deadline passes. The default implementation only checks
+     * before and after the call; backends that can abort a call in progress override it.
+     */
+    default String generateResponse(String prompt, CancellationToken cancellation) {
+        cancellation.throwIfCancelled();
+        String response = generateResponse(prompt);
+        cancellation.throwIfCancelled();
+        return response;
+    }
+
+    /**
+     * Like {@link #streamResponse(String, Consumer)}, giving up with a {@link CancellationToken.CancelledException}
+     * once {@code cancellation} is cancelled or its deadline passes. The default implementation checks between
+     * chunks; backends that can abort a call in progress override it.
+     */
+    default void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        cancellation.throwIfCancelled();
+        streamResponse(prompt, chunk -> {
+            cancellation.throwIfCancelled();
+            onChunk.accept(chunk);
+        });
+        cancellation.throwIfCancelled();
+    }
+
+    /**
+     * Tells the backend that many prompts will start with {@code prefix}, so it may precompute and reuse
+     * the work for it. Backends that cannot take advantage of this ignore the hint.
+     */
+    default void registerPromptPrefix(String prefix) {
+    }
+
+    /**
+     * Number of tokens the backend's tokenizer splits {@code text} into. Backends with a local tokenizer
+     * count exactly; the default is {@link TokenCounter#APPROXIMATE}.
+     */
+    default int countTokens(String text) {
+        return TokenCounter.APPROXIMATE.count(text);
+    }
+
+    /**
+     * Largest prompt, in tokens as counted by {@link #countTokens}, that still leaves the backend room
+     * for a full response, after anything the backend adds to every prompt, or {@link Integer#MAX_VALUE}
+     * if the backend has no known limit.
+     */
+    default int maxPromptTokens() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Short name of the backend serving the calls, e.g. {@code openai} or {@code llama}.
+     */
+    String getBackendName();
+
+    /**
+     * Model used by the backend, e.g. the OpenAI model id or the GGUF file name.
+     */
+    String getModelName();
+
+    double getTemperature();
+
+    /**
+     * Releases any resources held by the backend. Backends without native or pooled resources need not override this.
+     */
+    @Override
+    default void close() {
+    }
 }
@@ -0,0 +1,78 @@
+package com.gsk.architect.generator.service;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Reusable native buffers backing a {@code llama_batch}. The arrays live in JNA {@link Memory}
+ * so that the pointers handed to {@code llama_decode} stay valid for the whole call,
+ * which is not the case for Java arrays passed through JNA.
+ */
+class LlamaBatch {
+    private final int capacity;
+    private final Memory tokens;
+    private final Memory positions;
+    private final Memory seqIdCounts;
+    private final Memory seqIds;
+    private final Memory seqIdPointers;
+    private final Memory logits;
+    private int size;
+
+    LlamaBatch(int capacity) {
+        this.capacity = capacity;
+        this.tokens = new Memory(4L * capacity);
+        this.positions = new Memory(4L * capacity);
+        this.seqIdCounts = new Memory(4L * capacity);
+        this.seqIds = new Memory(4L * capacity);
+        this.seqIdPointers = new Memory((long) Native.POINTER_SIZE * capacity);
+        this.logits = new Memory(capacity);
+        for (int i = 0; i < capacity; i++) {
+            seqIdPointers.setPointer((long) i * Native.POINTER_SIZE, seqIds.share(4L * i));
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends a token and returns its index in the batch, which is the index to pass to {@code llama_get_logits_ith}.
+     */
+    int add(int token, int position, int seqId, boolean wantLogits) {
+        if (size == capacity) {
+            throw new IllegalStateException("llama batch is full (capacity " + capacity + ")");
+        }
+        long offset = 4L * size;
+        tokens.setInt(offset, token);
+        positions.setInt(offset, position);
+        seqIdCounts.setInt(offset, 1);
+        seqIds.setInt(offset, seqId);
+        logits.setByte(size, (byte) (wantLogits ? 1 : 0));
+        return size++;
+    }
+
+    LlamaService.llama_batch.ByValue toNative() {
+        LlamaService.llama_batch.ByValue batch = new LlamaService.llama_batch.ByValue();
+        batch.n_tokens = size;
+        batch.token = tokens;
+        batch.embd = Pointer.NULL;
+        batch.pos = positions;
+        batch.n_seq_id = seqIdCounts;
+        batch.seq_id = seqIdPointers;
+        batch.logits = logits;
+        return batch;
+    }
+}
@@ -0,0 +1,214 @@
+package com.gsk.architect.generator.service;
+
+import com.sun.jna.Pointer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Measures prompt and generation throughput of a model over a grid of thread counts and batch sizes
+ * and returns the fastest combination as a {@link LlamaTuningProfile}.
+ *
+ * <p>Prompt decoding is compute bound and is timed for every {@code n_threads_batch} and {@code n_batch}
+ * pair on a synthetic {@value #PROMPT_TOKENS}-token prompt. Generation decodes one token at a time, is
+ * bound by memory bandwidth and usually peaks below the core count; it is timed for every {@code n_threads}
+ * over {@value #GENERATED_TOKENS} tokens. Every measurement uses a fresh context, and a warm-up pass first
+ * pages the weights in so the first candidate is not penalized.
+ *
+ * <p>The NUMA setting takes effect only when the backend is initialized, which happens once per process,
+ * so one calibration covers one setting; the caller compares settings across processes.
+ */
+@Slf4j
+public class LlamaCalibrator {
+    private static final int PROMPT_TOKENS = 512;
+    private static final int GENERATED_TOKENS = 64;
+    private static final int WARMUP_TOKENS = 4;
+    private static final int[] BATCH_SIZES = {128, 256, 512};
+    private static final String SYNTHETIC_TEXT = """
+            Design a rate limiter for a public API gateway that serves millions of clients. Describe the \
+            data structures, how limits are shared between gateway instances, what happens when the shared \
+            store is unavailable, and how the design changes for per-tenant quotas and burst allowances. \
+            """;
+
+    private final Path modelPath;
+    private final boolean numa;
+
+    public LlamaCalibrator(Path modelPath, boolean numa) {
+        this.modelPath = modelPath;
+        this.numa = numa;
+    }
+
+    /**
+     * Whether the host has more than one NUMA node, i.e. whether calibrating with NUMA enabled is worthwhile.
+     */
+    public static boolean hasMultipleNumaNodes() {
+        return CpuTopology.numaNodes() > 1;
+    }
+
+    /**
+     * Thread counts worth trying: fractions of the physical cores, the cores themselves, and all hardware threads.
+     */
+    static int[] threadCandidates() {
+        int cores = CpuTopology.physicalCores();
+        TreeSet<Integer> candidates = new TreeSet<>();
+        candidates.add(Math.max(1, cores / 2));
+        candidates.add(Math.max(1, cores * 3 / 4));
+        candidates.add(Math.max(1, cores - 1));
+        candidates.add(cores);
+        candidates.add(CpuTopology.logicalProcessors());
+        return candidates.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public LlamaTuningProfile calibrate() {
+        LlamaMemoryPlan plan = LlamaMemoryPlan.plan(modelPath, 1);
+        int contextSize = Math.min(plan.sequenceContext(), PROMPT_TOKENS + GENERATED_TOKENS + WARMUP_TOKENS + 64);
+        int promptLength = Math.min(PROMPT_TOKENS, contextSize - GENERATED_TOKENS - WARMUP_TOKENS - 1);
+        int[] batchSizes = Arrays.stream(BATCH_SIZES).filter(size -> size <= plan.batchSize()).toArray();
+        if (batchSizes.length == 0) {
+            batchSizes = new int[]{plan.batchSize()};
+        }
+        int[] threads = threadCandidates();
+
+        LlamaService.initializeLibrary(numa);
+        LlamaService.llama_model_params params = LlamaService.llama_model_params.defaultParams();
+        params.n_ctx = contextSize;
+        Pointer model = LlamaService.LlamaCpp.INSTANCE.llama_load_model_from_file(modelPath.toString(), params);
+        if (model == null) {
+            throw new RuntimeException("Failed to load Llama model from " + modelPath);
+        }
+        try {
+            int[] prompt = syntheticPrompt(model, promptLength);
+            log.info("Calibrating {} (numa={}) with threads {} and batch sizes {}",
+                    modelPath.getFileName(), numa, Arrays.toString(threads), Arrays.toString(batchSizes));
+
+            int cores = CpuTopology.physicalCores();
+            measurePrompt(model, params, prompt, cores, batchSizes[batchSizes.length - 1]);
+
+            int bestBatchThreads = cores;
+            int bestBatch = batchSizes[batchSizes.length - 1];
+            double bestPrompt = 0;
+            for (int candidate : threads) {
+                for (int batchSize : batchSizes) {
+                    double rate = measurePrompt(model, params, prompt, candidate, batchSize);
+                    log.info("  prompt: {} threads, batch {}: {} tok/s", candidate, batchSize, String.format("%.1f", rate));
+                    if (rate > bestPrompt) {
+                        bestPrompt = rate;
+                        bestBatchThreads = candidate;
+                        bestBatch = batchSize;
+                    }
+                }
+            }
+
+            int bestThreads = cores;
+            double bestGeneration = 0;
+            for (int candidate : threads) {
+                double rate = measureGeneration(model, params, prompt, candidate, bestBatchThreads);
+                log.info("  generation: {} threads: {} tok/s", candidate, String.format("%.1f", rate));
+                if (rate > bestGeneration) {
+                    bestGeneration = rate;
+                    bestThreads = candidate;
+                }
+            }
+
+            return new LlamaTuningProfile(bestThreads, bestBatchThreads, bestBatch, numa, bestPrompt, bestGeneration,
+                    CpuTopology.logicalProcessors(), Files.size(modelPath), Instant.now());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read model file " + modelPath, e);
+        } finally {
+            LlamaService.LlamaCpp.INSTANCE.llama_free_model(model);
+        }
+    }
+
+    private int[] syntheticPrompt(Pointer model, int length) {
+        byte[] utf8 = SYNTHETIC_TEXT.repeat(1 + length / 32).getBytes(StandardCharsets.UTF_8);
+        int[] tokens = new int[utf8.length + 2];
+        int count = LlamaService.LlamaCpp.INSTANCE.llama_tokenize(model, utf8, utf8.length, tokens, tokens.length, true, false);
+        if (count < length) {
+            throw new IllegalStateException("Synthetic prompt tokenized to " + count + " tokens, expected " + length);
+        }
+        return Arrays.copyOf(tokens, length);
+    }
+
+    /**
+     * Prompt tokens per second when decoding {@code prompt} in chunks of {@code batchSize}.
+     */
+    private double measurePrompt(Pointer model, LlamaService.llama_model_params params, int[] prompt,
+                                 int batchThreads, int batchSize) {
+        Pointer context = newContext(model, params, batchThreads, batchThreads, batchSize);
+        try {
+            long start = System.nanoTime();
+            decodePrompt(context, prompt, new LlamaBatch(batchSize));
+            return prompt.length / seconds(start);
+        } finally {
+            LlamaService.LlamaCpp.INSTANCE.llama_free(context);
+        }
+    }
+
+    /**
+     * Generated tokens per second for a single sequence, after a short prompt and a few warm-up steps.
+     */
+    private double measureGeneration(Pointer model, LlamaService.llama_model_params params, int[] prompt,
+                                     int threads, int batchThreads) {
+        int[] shortPrompt = Arrays.copyOf(prompt, Math.min(prompt.length, 32));
+        Pointer context = newContext(model, params, threads, batchThreads, shortPrompt.length);
+        try {
+            LlamaBatch batch = new LlamaBatch(shortPrompt.length);
+            decodePrompt(context, shortPrompt, batch);
+            int position = shortPrompt.length;
+            long start = 0;
+            for (int i = 0; i < WARMUP_TOKENS + GENERATED_TOKENS; i++) {
+                if (i == WARMUP_TOKENS) {
+                    start = System.nanoTime();
+                }
+                // The sampled token does not change the cost of a step, so the prompt is replayed instead
+                batch.clear();
+                batch.add(prompt[i % prompt.length], position++, 0, true);
+                decode(context, batch);
+            }
+            return GENERATED_TOKENS / seconds(start);
+        } finally {
+            LlamaService.LlamaCpp.INSTANCE.llama_free(context);
+        }
+    }
+
+    private static Pointer newContext(Pointer model, LlamaService.llama_model_params params,
+                                      int threads, int batchThreads, int batchSize) {
+        LlamaService.llama_context_params.ByValue contextParams = LlamaService.contextParams(params);
+        contextParams.n_batch = batchSize;
+        contextParams.n_threads = threads;
+        contextParams.n_threads_batch = batchThreads;
+        Pointer context = LlamaService.LlamaCpp.INSTANCE.llama_new_context_with_model(model, contextParams);
+        if (context == null) {
+            throw new RuntimeException("Failed to create Llama context with n_ctx=" + contextParams.n_ctx);
+        }
+        return context;
+    }
+
+    private static void decodePrompt(Pointer context, int[] prompt, LlamaBatch batch) {
+        for (int start = 0; start < prompt.length; start += batch.capacity()) {
+            batch.clear();
+            int end = Math.min(prompt.length, start + batch.capacity());
+            for (int i = start; i < end; i++) {
+                batch.add(prompt[i], i, 0, i == prompt.length - 1);
+            }
+            decode(context, batch);
+        }
+    }
+
+    private static void decode(Pointer context, LlamaBatch batch) {
+        int result = LlamaService.LlamaCpp.INSTANCE.llama_decode(context, batch.toNative());
+        if (result != 0) {
+            throw new RuntimeException("llama_decode failed with status " + result);
+        }
+    }
+
+    private static double seconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+}
@@ -0,0 +1,174 @@
+package com.gsk.architect.generator.service;
+
+import com.sun.jna.Pointer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Small draft model for speculative decoding. It keeps its own context with the same sequence IDs as the
+ * scheduler's, so each generating sequence has a mirror in the draft KV cache, and proposes the next few
+ * tokens for all sequences together: one {@code llama_decode} per drafted position.
+ *
+ * <p>The draft KV cache lags behind when prompts are admitted or drafts are rejected, so before drafting
+ * it is caught up with every token the main model has accepted. Used only from the scheduler thread.
+ */
+@Slf4j
+class LlamaDrafter implements AutoCloseable {
+
+    /**
+     * A generating sequence: its prompt and accepted tokens so far, the last of which has not been decoded yet.
+     */
+    record Sequence(int seqId, int[] history, int length, int maxTokens) {
+    }
+
+    /**
+     * Drafted tokens and the draft distribution each was sampled from.
+     */
+    record Proposal(int[] tokens, LlamaSampler.Distribution[] distributions) {
+        int size() {
+            return tokens.length;
+        }
+    }
+
+    private final Pointer context;
+    private final int draftTokens;
+    private final int vocabularySize;
+    private final int eosToken;
+    private final LlamaSampler sampler;
+    private final LlamaBatch batch;
+    // Number of leading history tokens whose KV cells are in the draft context, by sequence ID
+    private final int[] cachedTokens;
+
+    /**
+     * Creates a context on {@code draftModel} with room for {@code maxSequences} sequences of
+     * {@code contextParams.n_ctx} tokens, the main model's sequence context.
+     */
+    LlamaDrafter(Pointer draftModel, LlamaService.llama_context_params.ByValue contextParams, int maxSequences,
+                 int draftTokens, LlamaSampler sampler) {
+        this.draftTokens = draftTokens;
+        this.sampler = sampler;
+        this.vocabularySize = LlamaService.LlamaCpp.INSTANCE.llama_n_vocab(draftModel);
+        this.eosToken = LlamaService.LlamaCpp.INSTANCE.llama_token_eos(draftModel);
+        contextParams.n_ctx = contextParams.n_ctx * maxSequences;
+        this.context = LlamaService.LlamaCpp.INSTANCE.llama_new_context_with_model(draftModel, contextParams);
+        if (context == null) {
+            throw new RuntimeException("Failed to create draft Llama context with n_ctx=" + contextParams.n_ctx);
+        }
+        log.info("Created draft Llama context with n_ctx={}, drafting {} token(s) per step", contextParams.n_ctx, draftTokens);
+        this.batch = new LlamaBatch(contextParams.n_batch);
+        this.cachedTokens = new int[maxSequences];
+    }
+
+    int draftTokens() {
+        return draftTokens;
+    }
+
+    /**
+     * Drafts up to {@code maxTokens} tokens for each sequence, stopping a sequence early at end of stream.
+     */
+    List<Proposal> propose(List<Sequence> sequences, RandomGenerator random) {
+        catchUp(sequences);
+
+        int count = sequences.size();
+        int[][] tokens = new int[count][];
+        LlamaSampler.Distribution[][] distributions = new LlamaSampler.Distribution[count][];
+        int[] drafted = new int[count];
+        int[] next = new int[count];
+        int[] logitsIndex = new int[count];
+        boolean[] stopped = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            Sequence sequence = sequences.get(i);
+            tokens[i] = new int[sequence.maxTokens()];
+            distributions[i] = new LlamaSampler.Distribution[sequence.maxTokens()];
+            next[i] = sequence.history()[sequence.length() - 1];
+        }
+
+        while (true) {
+            batch.clear();
+            for (int i = 0; i < count; i++) {
+                Sequence sequence = sequences.get(i);
+                logitsIndex[i] = -1;
+                if (!stopped[i] && drafted[i] < sequence.maxTokens()) {
+                    logitsIndex[i] = batch.add(next[i], cachedTokens[sequence.seqId()]++, sequence.seqId(), true);
+                }
+            }
+            if (batch.size() == 0) {
+                break;
+            }
+            decode();
+            for (int i = 0; i < count; i++) {
+                if (logitsIndex[i] < 0) {
+                    continue;
+                }
+                float[] logits = LlamaService.LlamaCpp.INSTANCE.llama_get_logits_ith(context, logitsIndex[i])
+                        .getFloatArray(0, vocabularySize);
+                LlamaSampler.Distribution distribution = sampler.distribution(logits);
+                int token = distribution.sample(random);
+                tokens[i][drafted[i]] = token;
+                distributions[i][drafted[i]] = distribution;
+                drafted[i]++;
+                next[i] = token;
+                // Nothing follows end of stream, so drafting past it would be wasted work
+                stopped[i] = token == eosToken;
+            }
+        }
+
+        List<Proposal> proposals = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            proposals.add(new Proposal(Arrays.copyOf(tokens[i], drafted[i]), Arrays.copyOf(distributions[i], drafted[i])));
+        }
+        return proposals;
+    }
+
+    /**
+     * Decodes every history token but the last that the draft context has not seen, without logits.
+     */
+    private void catchUp(List<Sequence> sequences) {
+        batch.clear();
+        for (Sequence sequence : sequences) {
+            int seqId = sequence.seqId();
+            while (cachedTokens[seqId] < sequence.length() - 1) {
+                if (batch.isFull()) {
+                    decode();
+                    batch.clear();
+                }
+                batch.add(sequence.history()[cachedTokens[seqId]], cachedTokens[seqId], seqId, false);
+                cachedTokens[seqId]++;
+            }
+        }
+        if (batch.size() > 0) {
+            decode();
+        }
+    }
+
+    /**
+     * Drops the draft KV cells from position {@code keep} on, after the main model rejected a drafted token there.
+     */
+    void rollback(int seqId, int keep) {
+        if (cachedTokens[seqId] > keep) {
+            LlamaService.LlamaCpp.INSTANCE.llama_kv_cache_seq_rm(context, seqId, keep, -1);
+            cachedTokens[seqId] = keep;
+        }
+    }
+
+    void release(int seqId) {
+        LlamaService.LlamaCpp.INSTANCE.llama_kv_cache_seq_rm(context, seqId, -1, -1);
+        cachedTokens[seqId] = 0;
+    }
+
+    private void decode() {
+        int result = LlamaService.LlamaCpp.INSTANCE.llama_decode(context, batch.toNative());
+        if (result != 0) {
+            throw new RuntimeException("llama_decode failed on the draft model with status " + result);
+        }
+    }
+
+    @Override
+    public void close() {
+        LlamaService.LlamaCpp.INSTANCE.llama_free(context);
+    }
+}
@@ -0,0 +1,205 @@
+package com.gsk.architect.generator.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Native memory a Llama model needs and the context and batch sizes chosen to fit it into physical memory.
+ * llama.cpp maps the weights from the file and allocates the KV cache and compute buffers outside the
+ * Java heap, so the heap size plays no part in this.
+ *
+ * <p>The estimate covers the weights, an F16 KV cache for every sequence slot plus any reserved tokens,
+ * and the CPU compute buffers. The largest of those buffers is the attention score matrix: one float per batch token, per
+ * cached token and per head. The per-sequence context is the largest power of two, up to
+ * {@value #PREFERRED_SEQUENCE_CONTEXT} tokens and the trained context, that fits. For that context the
+ * batch is the largest size that also fits.
+ */
+@Slf4j
+public record LlamaMemoryPlan(int sequenceContext, int batchSize, long weightBytes, long kvCacheBytes,
+                              long computeBytes, long availableBytes) {
+    static final int PREFERRED_SEQUENCE_CONTEXT = 4096;
+    static final int MIN_SEQUENCE_CONTEXT = 512;
+    private static final int[] BATCH_SIZES = {512, 256, 128, 64};
+    private static final int KV_BYTES_PER_ELEMENT = 2;
+    // Kept free for the JVM, the OS and everything else running on the machine
+    private static final long RESERVE_BYTES = 1L << 30;
+    private static final Pattern VM_STAT_PAGE_SIZE = Pattern.compile("page size of (\\d+) bytes");
+    private static final long VM_STAT_TIMEOUT_SECONDS = 5;
+
+    public long requiredBytes() {
+        return weightBytes + kvCacheBytes + computeBytes;
+    }
+
+    /**
+     * Sizes the context for {@code slots} concurrent sequences plus {@code reservedTokens} cells that do
+     * not grow with the context, such as resident prompt prefixes.
+     *
+     * @throws IllegalArgumentException if even the smallest context does not fit
+     */
+    public static LlamaMemoryPlan plan(GgufHeader header, int slots, int reservedTokens, long availableBytes) {
+        int trained = header.getTrainedContextLength() > 0 ? header.getTrainedContextLength() : PREFERRED_SEQUENCE_CONTEXT;
+        int preferred = Math.max(MIN_SEQUENCE_CONTEXT, Math.min(PREFERRED_SEQUENCE_CONTEXT, Integer.highestOneBit(trained)));
+        long budget = availableBytes - RESERVE_BYTES;
+        LlamaMemoryPlan smallest = null;
+        for (int context = preferred; context >= MIN_SEQUENCE_CONTEXT; context /= 2) {
+            for (int batch : BATCH_SIZES) {
+                LlamaMemoryPlan plan = estimate(header, slots, context, reservedTokens, Math.min(batch, context * slots),
+                        availableBytes);
+                if (plan.requiredBytes() <= budget) {
+                    return plan;
+                }
+                smallest = plan;
+            }
+        }
+        throw new IllegalArgumentException(String.format(
+                "Model %s needs at least %.1f GB of memory (%.1f GB weights, %.1f GB KV cache, %.1f GB compute) "
+                        + "but only %.1f GB is available. Use a smaller or more strongly quantized model, or lower --max-in-flight.",
+                header.getFile().getFileName(), gigabytes(smallest.requiredBytes() + RESERVE_BYTES),
+                gigabytes(smallest.weightBytes()), gigabytes(smallest.kvCacheBytes()), gigabytes(smallest.computeBytes()),
+                gigabytes(availableBytes)));
+    }
+
+    /**
+     * Reads the header of {@code modelPath} and plans against the memory available right now.
+     */
+    public static LlamaMemoryPlan plan(Path modelPath, int slots) {
+        return plan(modelPath, slots, 0, null, 0);
+    }
+
+    /**
+     * Plans for the main model and {@code reservedTokens} extra cells while setting memory aside for a
+     * draft model with {@code draftSlots} sequences. The draft shares the main model's context size, so it is reserved at the largest
+     * context the main model may get.
+     */
+    public static LlamaMemoryPlan plan(Path modelPath, int slots, int reservedTokens, Path draftModelPath,
+                                       int draftSlots) {
+        GgufHeader header = readHeader(modelPath);
+        long available = availablePhysicalMemory();
+        if (draftModelPath != null) {
+            GgufHeader draftHeader = readHeader(draftModelPath);
+            LlamaMemoryPlan draft = estimate(draftHeader, draftSlots, PREFERRED_SEQUENCE_CONTEXT, 0, BATCH_SIZES[0], available);
+            log.info("Draft model {}: {}, reserving {} GB", draftModelPath.getFileName(), draftHeader,
+                    String.format("%.1f", gigabytes(draft.requiredBytes())));
+            available -= draft.requiredBytes();
+        }
+        LlamaMemoryPlan plan = plan(header, slots, reservedTokens, available);
+        log.info("Model {}: {}", modelPath.getFileName(), header);
+        log.info("Memory plan: context {} x {} sequences + {} reserved tokens, batch {}, {} GB needed of {} GB available",
+                plan.sequenceContext(), slots, reservedTokens, plan.batchSize(), String.format("%.1f", gigabytes(plan.requiredBytes())),
+                String.format("%.1f", gigabytes(plan.availableBytes())));
+        return plan;
+    }
+
+    private static GgufHeader readHeader(Path modelPath) {
+        try {
+            return GgufHeader.read(modelPath);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    static LlamaMemoryPlan estimate(GgufHeader header, int slots, int sequenceContext, int reservedTokens, int batchSize,
+                                    long availableBytes) {
+        long cachedTokens = (long) sequenceContext * slots + reservedTokens;
+        long kvWidth = (long) header.getEmbeddingLength() * header.getKeyValueHeadCount() / Math.max(1, header.getHeadCount());
+        long kvCache = 2 * cachedTokens * header.getLayerCount() * kvWidth * KV_BYTES_PER_ELEMENT;
+        long attentionScores = (long) batchSize * cachedTokens * header.getHeadCount() * Float.BYTES;
+        long activations = (long) batchSize * (4L * header.getEmbeddingLength() + 2L * header.getFeedForwardLength()) * Float.BYTES;
+        long logits = (long) batchSize * header.getVocabularySize() * Float.BYTES;
+        return new LlamaMemoryPlan(sequenceContext, batchSize, header.getWeightBytes(), kvCache,
+                attentionScores + activations + logits, availableBytes);
+    }
+
+    /**
+     * Memory that can be used without swapping. On Linux this is {@code MemAvailable}, which counts
+     * reclaimable page cache (including already cached model pages). On macOS it is the free, inactive and
+     * purgeable pages reported by {@code vm_stat}. Elsewhere, or if neither can be read, it is the free
+     * physical memory, which ignores the file cache and so errs on the small side.
+     */
+    public static long availablePhysicalMemory() {
+        Path meminfo = Path.of("/proc/meminfo");
+        if (Files.isReadable(meminfo)) {
+            try {
+                for (String line : Files.readAllLines(meminfo)) {
+                    if (line.startsWith("MemAvailable:")) {
+                        return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                log.debug("Could not read {}: {}", meminfo, e.getMessage());
+            }
+        }
+        if (System.getProperty("os.name", "").startsWith("Mac")) {
+            long available = macAvailableMemory();
+            if (available > 0) {
+                return available;
+            }
+        }
+        var os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        return os.getFreeMemorySize();
+    }
+
+    private static long macAvailableMemory() {
+        try {
+            Process process = new ProcessBuilder("vm_stat").redirectErrorStream(true).start();
+            List<String> lines;
+            try (BufferedReader reader = process.inputReader()) {
+                lines = reader.lines().toList();
+            }
+            if (!process.waitFor(VM_STAT_TIMEOUT_SECONDS, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                return -1;
+            }
+            return parseVmStat(lines);
+        } catch (IOException e) {
+            log.debug("Could not run vm_stat: {}", e.getMessage());
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * Free, inactive and purgeable memory from the output of {@code vm_stat}, or -1 if it cannot be parsed.
+     * The first line gives the page size, e.g. {@code Mach Virtual Memory Statistics: (page size of 16384 bytes)},
+     * and each following line a page count, e.g. {@code Pages free:    12345.}
+     */
+    static long parseVmStat(List<String> lines) {
+        Matcher pageSize = VM_STAT_PAGE_SIZE.matcher(lines.isEmpty() ? "" : lines.getFirst());
+        if (!pageSize.find()) {
+            return -1;
+        }
+        long pages = 0;
+        int found = 0;
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            if (name.equals("Pages free") || name.equals("Pages inactive") || name.equals("Pages purgeable")) {
+                try {
+                    pages += Long.parseLong(line.substring(colon + 1).replaceAll("\\D", ""));
+                    found++;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return found == 0 ? -1 : pages * Long.parseLong(pageSize.group(1));
+    }
+
+    private static double gigabytes(long bytes) {
+        return bytes / (1024.0 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,84 @@
+package com.gsk.architect.generator.service;
+
+import com.sun.jna.Pointer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared prompt prefixes kept resident in the KV cache of the scheduler's context, each under a sequence ID
+ * of its own. A new prompt starting with a resident prefix gets those KV cells added to its sequence with
+ * {@code llama_kv_cache_seq_cp}, which shares the cells rather than copying them, so the prefix tokens are
+ * neither re-evaluated nor stored twice. The least recently used prefix is dropped when all IDs are taken.
+ *
+ * <p>Used only from the scheduler thread, so it is not synchronized.
+ */
+@Slf4j
+class LlamaPrefixStore {
+
+    private record Key(int[] tokens) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && Arrays.equals(tokens, key.tokens);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(tokens);
+        }
+    }
+
+    private final Pointer context;
+    private final Deque<Integer> freeSequenceIds = new ArrayDeque<>();
+    private final Map<Key, Integer> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    LlamaPrefixStore(Pointer context, int firstSequenceId, int capacity) {
+        this.context = context;
+        for (int i = 0; i < capacity; i++) {
+            freeSequenceIds.add(firstSequenceId + i);
+        }
+    }
+
+    /**
+     * Adds the KV cells of {@code prefixTokens} to sequence {@code seqId}. Returns false if the prefix is not resident.
+     */
+    boolean shareInto(int[] prefixTokens, int seqId) {
+        Integer prefixSeqId = resident.get(new Key(prefixTokens));
+        if (prefixSeqId == null) {
+            return false;
+        }
+        LlamaService.LlamaCpp.INSTANCE.llama_kv_cache_seq_cp(context, prefixSeqId, seqId, 0, prefixTokens.length);
+        return true;
+    }
+
+    /**
+     * Keeps the first {@code prefixTokens.length} cells of sequence {@code seqId}, which must already
+     * have been decoded, resident for later prompts.
+     */
+    void adopt(int[] prefixTokens, int seqId) {
+        Key key = new Key(prefixTokens);
+        if (resident.containsKey(key)) {
+            return;
+        }
+        if (freeSequenceIds.isEmpty()) {
+            if (resident.isEmpty()) {
+                return;
+            }
+            Iterator<Map.Entry<Key, Integer>> leastRecentlyUsed = resident.entrySet().iterator();
+            Map.Entry<Key, Integer> evicted = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            LlamaService.LlamaCpp.INSTANCE.llama_kv_cache_seq_rm(context, evicted.getValue(), -1, -1);
+            freeSequenceIds.add(evicted.getValue());
+            log.info("Dropped resident {}-token prompt prefix", evicted.getKey().tokens().length);
+        }
+        int prefixSeqId = freeSequenceIds.poll();
+        LlamaService.LlamaCpp.INSTANCE.llama_kv_cache_seq_cp(context, seqId, prefixSeqId, 0, prefixTokens.length);
+        resident.put(key, prefixSeqId);
+        log.info("Keeping {}-token prompt prefix resident as sequence {}", prefixTokens.length, prefixSeqId);
+    }
+}
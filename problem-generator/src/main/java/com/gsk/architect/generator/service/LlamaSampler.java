@@ -0,0 +1,147 @@
+package com.gsk.architect.generator.service;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.random.RandomGenerator;
+
+/**
+ * Temperature, top-k and top-p sampling over the raw logits returned by {@code llama_get_logits_ith}.
+ * Sampling is done in Java so it does not depend on the sampling API of a particular llama.cpp release.
+ * {@link #distribution} exposes the truncated distribution itself, which speculative decoding needs to
+ * accept or reject draft tokens.
+ */
+class LlamaSampler {
+    private final float temperature;
+    private final int topK;
+    private final float topP;
+
+    LlamaSampler(float temperature, int topK, float topP) {
+        this.temperature = temperature;
+        this.topK = topK;
+        this.topP = topP;
+    }
+
+    /**
+     * The probabilities {@link #sample} draws from: non-zero only for the tokens that survive top-k and top-p.
+     */
+    record Distribution(int[] tokens, double[] probabilities) {
+        double probability(int token) {
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] == token) {
+                    return probabilities[i];
+                }
+            }
+            return 0;
+        }
+
+        int sample(RandomGenerator random) {
+            double target = random.nextDouble();
+            for (int i = 0; i < tokens.length; i++) {
+                target -= probabilities[i];
+                if (target <= 0) {
+                    return tokens[i];
+                }
+            }
+            return tokens[tokens.length - 1];
+        }
+
+        /**
+         * Whether {@code token}, drafted from {@code proposal}, is kept where this is the main model's distribution:
+         * always if the main model gives it at least the draft's probability, else with probability {@code p / q}.
+         * A rejected token is replaced by a sample from the {@linkplain #residual residual}.
+         */
+        boolean accepts(int token, Distribution proposal, RandomGenerator random) {
+            return random.nextDouble() * proposal.probability(token) < probability(token);
+        }
+
+        /**
+         * {@code max(0, p - q)} renormalized, where this is {@code p}: the distribution to sample from after
+         * rejecting a token drafted from {@code q}, so that the accepted output still follows {@code p} exactly.
+         */
+        Distribution residual(Distribution q) {
+            double[] remaining = new double[tokens.length];
+            double sum = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                remaining[i] = Math.max(0, probabilities[i] - q.probability(tokens[i]));
+                sum += remaining[i];
+            }
+            if (sum <= 0) {
+                return this;
+            }
+            for (int i = 0; i < remaining.length; i++) {
+                remaining[i] /= sum;
+            }
+            return new Distribution(tokens, remaining);
+        }
+    }
+
+    int sample(float[] logits, RandomGenerator random) {
+        if (temperature <= 0f) {
+            return argMax(logits);
+        }
+        return distribution(logits).sample(random);
+    }
+
+    Distribution distribution(float[] logits) {
+        if (temperature <= 0f) {
+            return new Distribution(new int[]{argMax(logits)}, new double[]{1});
+        }
+
+        // Keep the top-k candidates using a min-heap ordered by logit
+        PriorityQueue<Integer> heap = new PriorityQueue<>(topK, (a, b) -> Float.compare(logits[a], logits[b]));
+        for (int token = 0; token < logits.length; token++) {
+            if (heap.size() < topK) {
+                heap.add(token);
+            } else if (logits[token] > logits[heap.peek()]) {
+                heap.poll();
+                heap.add(token);
+            }
+        }
+
+        int count = heap.size();
+        int[] candidates = new int[count];
+        for (int i = count - 1; i >= 0; i--) {
+            candidates[i] = heap.poll();
+        }
+
+        // Softmax with temperature; candidates are sorted by descending logit so candidates[0] holds the maximum
+        double[] probabilities = new double[count];
+        double max = logits[candidates[0]] / temperature;
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            probabilities[i] = Math.exp(logits[candidates[i]] / temperature - max);
+            sum += probabilities[i];
+        }
+
+        // Nucleus cut-off: keep the smallest prefix whose mass reaches topP
+        double cumulative = 0;
+        int kept = count;
+        for (int i = 0; i < count; i++) {
+            cumulative += probabilities[i] / sum;
+            if (cumulative >= topP) {
+                kept = i + 1;
+                break;
+            }
+        }
+
+        double keptMass = 0;
+        for (int i = 0; i < kept; i++) {
+            keptMass += probabilities[i];
+        }
+        double[] normalized = new double[kept];
+        for (int i = 0; i < kept; i++) {
+            normalized[i] = probabilities[i] / keptMass;
+        }
+        return new Distribution(Arrays.copyOf(candidates, kept), normalized);
+    }
+
+    private static int argMax(float[] logits) {
+        int best = 0;
+        for (int i = 1; i < logits.length; i++) {
+            if (logits[i] > logits[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
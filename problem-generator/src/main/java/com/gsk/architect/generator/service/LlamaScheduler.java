@@ -0,0 +1,523 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.Counter;
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.sun.jna.Pointer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+
+/**
+ * Continuous batching over one shared llama.cpp context. Every prompt in flight is a separate sequence ID
+ * in the context's KV cache, and a single scheduler thread decodes all of them together: each step puts
+ * the next token of every generating sequence plus as many pending prompt tokens as fit into one batch,
+ * calls {@code llama_decode} once, and samples one token per sequence. New prompts are admitted between
+ * steps and finished ones are retired, freeing their KV cells for the next prompt.
+ *
+ * <p>Callers block in {@link #submit} while the scheduler hands them text chunks through a queue,
+ * so their callbacks (file writes, caching) never stall the decode loop. A caller whose token is cancelled
+ * returns at once; the scheduler retires its sequence before the next decode, so a cancelled prompt costs
+ * at most the step already running.
+ *
+ * <p>With a {@link LlamaDrafter}, each generating sequence also puts the tokens the draft model proposed
+ * into the batch, so the main model scores all of them in the same decode. Each draft token is accepted
+ * with probability {@code min(1, p/q)} of the main and draft distributions; the first rejected one is
+ * replaced by a sample from the residual {@code max(0, p - q)}, and if all are accepted the main model's
+ * next position contributes one more token. The output follows exactly the distribution of sampling the
+ * main model alone, but one main-model pass can produce several tokens, and on CPU such a pass costs
+ * about the same as decoding a single token because it is bound by reading the weights.
+ */
+@Slf4j
+class LlamaScheduler implements AutoCloseable {
+    private static final String END_OF_STREAM = new String("<end of stream>");
+
+    private final Pointer model;
+    private final Pointer context;
+    private final int sequenceContextSize;
+    private final int maxNewTokens;
+    private final int vocabularySize;
+    private final int eosToken;
+    private final LlamaSampler sampler;
+    private final LlamaBatch batch;
+    private final LlamaPrefixStore prefixStore;
+    private final LlamaDrafter drafter;
+    private final RandomGenerator random = RandomGenerator.getDefault();
+    private final BlockingQueue<Request> pending = new LinkedBlockingQueue<>();
+    private final Deque<Integer> freeSequenceIds = new ArrayDeque<>();
+    private final List<Request> active = new ArrayList<>();
+    private final Thread thread;
+    private volatile boolean stopping;
+
+    private final Counter promptTokenCounter = MetricsRegistry.global().counter("llm_prompt_tokens_total", "backend", "llama");
+    private final Counter completionTokenCounter = MetricsRegistry.global().counter("llm_completion_tokens_total", "backend", "llama");
+    private final Counter prefixHits = MetricsRegistry.global().counter("llama_prefix_cache_requests_total", "result", "hit");
+    private final Counter prefixMisses = MetricsRegistry.global().counter("llama_prefix_cache_requests_total", "result", "miss");
+    private final Counter prefixTokensReused = MetricsRegistry.global().counter("llama_prefix_tokens_reused_total");
+    private final LatencyHistogram tokensPerSecond = MetricsRegistry.global().histogram("llm_tokens_per_second", "backend", "llama");
+    private final LatencyHistogram callCompletionTokens = MetricsRegistry.global().histogram("llm_call_completion_tokens", "backend", "llama");
+    private final LatencyHistogram batchSequences = MetricsRegistry.global().histogram("llama_batch_sequences");
+    private final LatencyHistogram batchTokens = MetricsRegistry.global().histogram("llama_batch_tokens");
+    private final Counter draftAccepted = MetricsRegistry.global().counter("llama_draft_tokens_total", "result", "accepted");
+    private final Counter draftRejected = MetricsRegistry.global().counter("llama_draft_tokens_total", "result", "rejected");
+    private final Counter speculativeSteps = MetricsRegistry.global().counter("llama_speculative_steps_total");
+    private final Counter speculativeTokens = MetricsRegistry.global().counter("llama_speculative_tokens_total");
+    private final Counter draftNanos = MetricsRegistry.global().counter("llama_speculative_nanos_total", "phase", "draft");
+    private final Counter verifyNanos = MetricsRegistry.global().counter("llama_speculative_nanos_total", "phase", "verify");
+    private final Counter cancelledRequests = MetricsRegistry.global().counter("llama_cancelled_requests_total");
+
+    /**
+     * Creates the shared context with room for {@code maxSequences} sequences of {@code sequenceContextSize}
+     * tokens each, plus {@code maxPrefixTokens} for every resident prompt prefix, and starts the scheduler
+     * thread. A sequence that adopts a prefix shares its cells, so prefixes only need room for themselves.
+     * {@code drafter}, if not null, must have been created for the same number of sequences.
+     */
+    LlamaScheduler(Pointer model, LlamaService.llama_context_params.ByValue contextParams, int maxSequences,
+                   int maxResidentPrefixes, int maxPrefixTokens, int maxNewTokens, LlamaSampler sampler, LlamaDrafter drafter) {
+        this.model = model;
+        this.drafter = drafter;
+        this.sequenceContextSize = contextParams.n_ctx;
+        this.maxNewTokens = maxNewTokens;
+        this.sampler = sampler;
+        this.vocabularySize = LlamaService.LlamaCpp.INSTANCE.llama_n_vocab(model);
+        this.eosToken = LlamaService.LlamaCpp.INSTANCE.llama_token_eos(model);
+
+        contextParams.n_ctx = sequenceContextSize * maxSequences + maxPrefixTokens * maxResidentPrefixes;
+        this.context = LlamaService.LlamaCpp.INSTANCE.llama_new_context_with_model(model, contextParams);
+        if (context == null) {
+            throw new RuntimeException("Failed to create Llama context with n_ctx=" + contextParams.n_ctx);
+        }
+        log.info("Created shared Llama context with n_ctx={} for {} concurrent sequence(s)", contextParams.n_ctx, maxSequences);
+
+        this.batch = new LlamaBatch(contextParams.n_batch);
+        for (int seqId = 0; seqId < maxSequences; seqId++) {
+            freeSequenceIds.add(seqId);
+        }
+        // Resident prefixes use the sequence IDs after the ones handed to prompts
+        this.prefixStore = new LlamaPrefixStore(context, maxSequences, maxResidentPrefixes);
+
+        this.thread = new Thread(this::run, "llama-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a tokenized prompt and streams the generated text to {@code onChunk} on the calling thread.
+     * Returns when generation has finished, or throws the token's exception once {@code cancellation}
+     * is cancelled. {@code sharedPrefix}, if not null, is a registered prefix of the prompt whose KV cells
+     * can be shared with other prompts.
+     */
+    void submit(int[] promptTokens, int[] sharedPrefix, CancellationToken cancellation, Consumer<String> onChunk) {
+        if (promptTokens.length >= sequenceContextSize) {
+            throw new IllegalArgumentException(String.format(
+                    "Prompt of %d tokens does not fit in the context of %d tokens", promptTokens.length, sequenceContextSize));
+        }
+        if (stopping) {
+            throw new IllegalStateException("Llama scheduler has been stopped");
+        }
+        cancellation.throwIfCancelled();
+        Request request = new Request(promptTokens, sharedPrefix);
+        pending.add(request);
+        if (stopping && pending.remove(request)) {
+            throw new IllegalStateException("Llama scheduler has been stopped");
+        }
+        CancellationToken.Registration registration = cancellation.onCancel(() -> {
+            request.cancelled = true;
+            request.abandoned = true;
+            request.output.add(END_OF_STREAM);
+        });
+        try {
+            String chunk;
+            while ((chunk = request.output.take()) != END_OF_STREAM && !request.cancelled) {
+                onChunk.accept(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for Llama output", e);
+        } finally {
+            registration.close();
+            // Lets the scheduler retire the sequence if the callback failed part-way
+            request.abandoned = true;
+        }
+        if (request.cancelled) {
+            throw cancellation.failure();
+        }
+        if (request.failure != null) {
+            throw new RuntimeException("Llama generation failed: " + request.failure.getMessage(), request.failure);
+        }
+    }
+
+    private void run() {
+        try {
+            while (!stopping) {
+                admit();
+                // Sequences abandoned since the last step are freed before they are decoded again
+                retire();
+                if (!active.isEmpty()) {
+                    step();
+                    retire();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Llama scheduler failed", e);
+            stopping = true;
+            failActive(e);
+        }
+        RuntimeException stopped = new IllegalStateException("Llama scheduler has been stopped");
+        failActive(stopped);
+        for (Request request; (request = pending.poll()) != null; ) {
+            request.finish(stopped);
+        }
+    }
+
+    /**
+     * Moves queued prompts into free sequence slots. Blocks while there is nothing to decode.
+     */
+    private void admit() throws InterruptedException {
+        while (!freeSequenceIds.isEmpty()) {
+            Request request = active.isEmpty() ? pending.take() : pending.poll();
+            if (request == null) {
+                return;
+            }
+            if (request.abandoned) {
+                continue;
+            }
+            request.seqId = freeSequenceIds.poll();
+            request.maxNewTokens = Math.min(maxNewTokens, sequenceContextSize - request.promptTokens.length);
+            request.history = Arrays.copyOf(request.promptTokens, request.promptTokens.length + request.maxNewTokens);
+            request.historyLength = request.promptTokens.length;
+            if (request.sharedPrefix != null) {
+                if (prefixStore.shareInto(request.sharedPrefix, request.seqId)) {
+                    prefixHits.increment();
+                    prefixTokensReused.add(request.sharedPrefix.length);
+                    request.promptCursor = request.sharedPrefix.length;
+                    request.sharedPrefix = null;
+                } else {
+                    prefixMisses.increment();
+                }
+            }
+            active.add(request);
+        }
+    }
+
+    private void step() {
+        boolean speculative = drafter != null && propose();
+        batch.clear();
+        int sequences = 0;
+        // Generating sequences go first so that a long prompt never delays their next token
+        for (Request request : active) {
+            if (request.nextToken >= 0) {
+                request.logitsIndex = batch.add(request.nextToken, request.position++, request.seqId, true);
+                request.nextToken = -1;
+                if (request.draft != null) {
+                    for (int token : request.draft.tokens()) {
+                        batch.add(token, request.position++, request.seqId, true);
+                    }
+                }
+                sequences++;
+            }
+        }
+        for (Request request : active) {
+            int[] prompt = request.promptTokens;
+            if (request.promptCursor == prompt.length || batch.isFull()) {
+                continue;
+            }
+            while (!batch.isFull() && request.promptCursor < prompt.length) {
+                boolean last = request.promptCursor == prompt.length - 1;
+                int index = batch.add(prompt[request.promptCursor], request.promptCursor, request.seqId, last);
+                if (last) {
+                    request.logitsIndex = index;
+                }
+                request.promptCursor++;
+            }
+            request.position = request.promptCursor;
+            sequences++;
+        }
+        if (batch.size() == 0) {
+            return;
+        }
+
+        long decodeStart = System.nanoTime();
+        int result = LlamaService.LlamaCpp.INSTANCE.llama_decode(context, batch.toNative());
+        if (result != 0) {
+            throw new RuntimeException("llama_decode failed with status " + result);
+        }
+        if (speculative) {
+            verifyNanos.add(System.nanoTime() - decodeStart);
+        }
+        batchSequences.record(sequences);
+        batchTokens.record(batch.size());
+
+        for (Request request : active) {
+            if (request.sharedPrefix != null && request.promptCursor >= request.sharedPrefix.length) {
+                prefixStore.adopt(request.sharedPrefix, request.seqId);
+                request.sharedPrefix = null;
+            }
+            if (request.logitsIndex >= 0) {
+                if (request.draft != null) {
+                    verify(request);
+                } else {
+                    emit(request, sampler.sample(logits(request.logitsIndex), random));
+                }
+                request.logitsIndex = -1;
+            }
+        }
+    }
+
+    /**
+     * Has the draft model propose tokens for every generating sequence. Returns false if none were drafted.
+     */
+    private boolean propose() {
+        List<Request> generating = new ArrayList<>();
+        for (Request request : active) {
+            if (request.nextToken >= 0) {
+                generating.add(request);
+            }
+        }
+        if (generating.isEmpty()) {
+            return false;
+        }
+        // Every generating sequence needs room in the main batch for its next token and its drafts
+        int batchRoom = batch.capacity() / generating.size() - 1;
+        List<Request> drafting = new ArrayList<>();
+        List<LlamaDrafter.Sequence> sequences = new ArrayList<>();
+        for (Request request : generating) {
+            int room = Math.min(Math.min(drafter.draftTokens(), batchRoom), request.maxNewTokens - request.generated - 1);
+            if (room > 0) {
+                drafting.add(request);
+                sequences.add(new LlamaDrafter.Sequence(request.seqId, request.history, request.historyLength, room));
+            }
+        }
+        if (drafting.isEmpty()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        List<LlamaDrafter.Proposal> proposals = drafter.propose(sequences, random);
+        draftNanos.add(System.nanoTime() - start);
+        boolean drafted = false;
+        for (int i = 0; i < drafting.size(); i++) {
+            if (proposals.get(i).size() > 0) {
+                drafting.get(i).draft = proposals.get(i);
+                drafted = true;
+            }
+        }
+        return drafted;
+    }
+
+    /**
+     * Accepts or rejects the request's draft tokens against the main model's logits for the same positions,
+     * emits the accepted ones plus one token sampled by the main model, and drops the KV cells of the rest.
+     */
+    private void verify(Request request) {
+        LlamaDrafter.Proposal draft = request.draft;
+        request.draft = null;
+        // Position of the token decoded ahead of the drafts, the last one already accepted
+        int base = request.position - draft.size() - 1;
+        int generatedBefore = request.generated;
+        int accepted = 0;
+        boolean continuing = true;
+        boolean rejected = false;
+        while (continuing && !rejected && accepted < draft.size()) {
+            LlamaSampler.Distribution target = sampler.distribution(logits(request.logitsIndex + accepted));
+            LlamaSampler.Distribution proposal = draft.distributions()[accepted];
+            int token = draft.tokens()[accepted];
+            if (target.accepts(token, proposal, random)) {
+                accepted++;
+                continuing = emit(request, token);
+            } else {
+                rejected = true;
+                continuing = emit(request, target.residual(proposal).sample(random));
+            }
+        }
+        if (continuing && !rejected) {
+            continuing = emit(request, sampler.sample(logits(request.logitsIndex + accepted), random));
+        }
+
+        request.draftProposed += draft.size();
+        request.draftAccepted += accepted;
+        draftAccepted.add(accepted);
+        draftRejected.add(draft.size() - accepted);
+        speculativeSteps.increment();
+        speculativeTokens.add(request.generated - generatedBefore);
+        if (continuing) {
+            int kept = base + accepted + 1;
+            LlamaService.LlamaCpp.INSTANCE.llama_kv_cache_seq_rm(context, request.seqId, kept, -1);
+            drafter.rollback(request.seqId, kept);
+            request.position = kept;
+        }
+    }
+
+    private float[] logits(int batchIndex) {
+        return LlamaService.LlamaCpp.INSTANCE.llama_get_logits_ith(context, batchIndex).getFloatArray(0, vocabularySize);
+    }
+
+    /**
+     * Appends a sampled token to the request's output. Returns false once the sequence has finished.
+     */
+    private boolean emit(Request request, int token) {
+        if (request.firstTokenNanos == 0) {
+            request.firstTokenNanos = System.nanoTime();
+        }
+        if (token == eosToken) {
+            request.done = true;
+            return false;
+        }
+        request.history[request.historyLength++] = token;
+        String text = request.decoder.decode(tokenToPiece(token));
+        if (!text.isEmpty()) {
+            request.output.add(text);
+        }
+        request.generated++;
+        if (request.generated >= request.maxNewTokens) {
+            request.done = true;
+            return false;
+        }
+        request.nextToken = token;
+        return true;
+    }
+
+    /**
+     * Frees the KV cells of finished and abandoned sequences and completes their requests.
+     */
+    private void retire() {
+        Iterator<Request> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next();
+            if (!request.done && !request.abandoned) {
+                continue;
+            }
+            iterator.remove();
+            release(request);
+            if (request.cancelled) {
+                cancelledRequests.increment();
+                log.info("Cancelled generation on sequence {} after {} tokens", request.seqId, request.generated);
+            } else {
+                String rest = request.decoder.flush();
+                if (!rest.isEmpty()) {
+                    request.output.add(rest);
+                }
+                recordCompletion(request);
+            }
+            promptTokenCounter.add(request.promptTokens.length);
+            completionTokenCounter.add(request.generated);
+            request.finish(null);
+        }
+    }
+
+    private void recordCompletion(Request request) {
+        callCompletionTokens.record(request.generated);
+        double seconds = request.firstTokenNanos == 0 ? 0 : (System.nanoTime() - request.firstTokenNanos) / 1_000_000_000.0;
+        if (seconds > 0) {
+            tokensPerSecond.record(Math.round(request.generated / seconds));
+        }
+        log.info("Generated {} tokens from a {}-token prompt on sequence {} ({} tokens/s{})",
+                request.generated, request.promptTokens.length, request.seqId,
+                seconds > 0 ? String.format("%.1f", request.generated / seconds) : "n/a",
+                request.draftProposed == 0 ? "" : String.format(", %d/%d draft tokens accepted",
+                        request.draftAccepted, request.draftProposed));
+    }
+
+    private void failActive(RuntimeException failure) {
+        for (Request request : active) {
+            release(request);
+            request.finish(failure);
+        }
+        active.clear();
+    }
+
+    private void release(Request request) {
+        LlamaService.LlamaCpp.INSTANCE.llama_kv_cache_seq_rm(context, request.seqId, -1, -1);
+        if (drafter != null) {
+            drafter.release(request.seqId);
+        }
+        freeSequenceIds.add(request.seqId);
+    }
+
+    private byte[] tokenToPiece(int token) {
+        byte[] buffer = new byte[32];
+        int length = LlamaService.LlamaCpp.INSTANCE.llama_token_to_piece(model, token, buffer, buffer.length);
+        if (length < 0) {
+            buffer = new byte[-length];
+            length = LlamaService.LlamaCpp.INSTANCE.llama_token_to_piece(model, token, buffer, buffer.length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Stops the scheduler thread, failing anything still queued or in flight, so that callers blocked in
+     * {@link #submit} return after the current decode step instead of when their generation is complete.
+     * The context stays allocated until {@link #close()}. Returns false if interrupted before the thread ended.
+     */
+    boolean stop() {
+        stopping = true;
+        thread.interrupt();
+        try {
+            thread.join();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while stopping the Llama scheduler");
+            return false;
+        }
+    }
+
+    /**
+     * Stops the scheduler thread, failing anything still queued or in flight, and frees the context.
+     */
+    @Override
+    public void close() {
+        if (stop()) {
+            LlamaService.LlamaCpp.INSTANCE.llama_free(context);
+        }
+    }
+
+    /**
+     * A prompt and its decoding state. Everything but {@link #output}, {@link #abandoned} and
+     * {@link #cancelled} is touched only by the scheduler thread.
+     */
+    private static final class Request {
+        final int[] promptTokens;
+        final BlockingQueue<String> output = new LinkedBlockingQueue<>();
+        final Utf8ChunkDecoder decoder = new Utf8ChunkDecoder();
+        int[] sharedPrefix;
+        // Prompt followed by the generated tokens; the draft model is caught up from it
+        int[] history;
+        int historyLength;
+        LlamaDrafter.Proposal draft;
+        int draftProposed;
+        int draftAccepted;
+        volatile boolean abandoned;
+        volatile boolean cancelled;
+        volatile RuntimeException failure;
+        int seqId = -1;
+        int promptCursor;
+        int position;
+        int nextToken = -1;
+        int logitsIndex = -1;
+        int generated;
+        int maxNewTokens;
+        long firstTokenNanos;
+        boolean done;
+
+        Request(int[] promptTokens, int[] sharedPrefix) {
+            this.promptTokens = promptTokens;
+            this.sharedPrefix = sharedPrefix;
+        }
+
+        void finish(RuntimeException failure) {
+            this.failure = failure;
+            output.add(END_OF_STREAM);
+        }
+    }
+}
@@ -1,18 +1,56 @@
 package com.gsk.architect.generator.service;
 
+import com.gsk.architect.generator.metrics.Counter;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
 import com.sun.jna.*;
 import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 @Slf4j
 public class LlamaService implements LanguageModelService {
+    public static final int DEFAULT_MAX_SEQUENCES = 4;
+    public static final int DEFAULT_DRAFT_TOKENS = 5;
     private static final float TEMPERATURE = 0.7f;
     private static final int MAX_LENGTH = 2048;
-    private final Path libraryPath;
+    private static final int TOP_K = 40;
+    private static final float TOP_P = 0.95f;
+    private static final int MIN_PREFIX_TOKENS = 16;
+    private static final int MAX_RESIDENT_PREFIXES = 3;
+    // KV cells set aside for each resident prefix; longer prefixes are registered cut to this length
+    private static final int MAX_PREFIX_TOKENS = 512;
+    private static final Path LIBRARY_PATH = Path.of(System.getProperty("user.home"), "llama-models/.llama/lib");
     private final Path modelPath;
     private static volatile boolean libraryLoaded = false;
+    private static boolean backendNuma;
     private static final Object lock = new Object();
+    private static final Set<LlamaService> openServices = ConcurrentHashMap.newKeySet();
+    // Set by an owner that closes its services itself on shutdown; the hook waits for it first
+    private static volatile CountDownLatch shutdownGate;
+    private static volatile Duration shutdownGateTimeout;
+
+    private final llama_model_params params;
+    private final Pointer model;
+    private final Pointer draftModel;
+    private final LlamaDrafter drafter;
+    private final LlamaScheduler scheduler;
+    private final List<int[]> knownPrefixes = new CopyOnWriteArrayList<>();
+    private final ReadWriteLock lifecycle = new ReentrantReadWriteLock();
+    private boolean closed;
 
     @Structure.FieldOrder({
         "n_gpu_layers",
@@ -50,14 +88,95 @@ public class LlamaService implements LanguageModelService {
             params.use_mmap = true;
             params.use_mlock = false;
             params.seed = -1;
-            params.n_ctx = 512;            // Reduced context size
-            params.n_batch = 512;          // Default batch size
-            params.n_threads = Runtime.getRuntime().availableProcessors();
-            params.n_threads_batch = Runtime.getRuntime().availableProcessors();
+            params.n_ctx = LlamaMemoryPlan.MIN_SEQUENCE_CONTEXT;  // Replaced by the memory plan
+            params.n_batch = 512;
+            // Hyperthreads share a core's execution units, so more threads than physical cores only add contention
+            params.n_threads = CpuTopology.physicalCores();
+            params.n_threads_batch = CpuTopology.physicalCores();
             return params;
         }
     }
 
+    /**
+     * Mirrors {@code struct llama_context_params}. C {@code bool} is one byte, hence the {@code byte} fields.
+     */
+    @Structure.FieldOrder({
+        "seed",
+        "n_ctx",
+        "n_batch",
+        "n_threads",
+        "n_threads_batch",
+        "rope_scaling_type",
+        "rope_freq_base",
+        "rope_freq_scale",
+        "yarn_ext_factor",
+        "yarn_attn_factor",
+        "yarn_beta_fast",
+        "yarn_beta_slow",
+        "yarn_orig_ctx",
+        "type_k",
+        "type_v",
+        "mul_mat_q",
+        "logits_all",
+        "embedding",
+        "offload_kqv"
+    })
+    public static class llama_context_params extends Structure {
+        public int seed;
+        public int n_ctx;
+        public int n_batch;
+        public int n_threads;
+        public int n_threads_batch;
+        public byte rope_scaling_type;
+        public float rope_freq_base;
+        public float rope_freq_scale;
+        public float yarn_ext_factor;
+        public float yarn_attn_factor;
+        public float yarn_beta_fast;
+        public float yarn_beta_slow;
+        public int yarn_orig_ctx;
+        public int type_k;
+        public int type_v;
+        public byte mul_mat_q;
+        public byte logits_all;
+        public byte embedding;
+        public byte offload_kqv;
+
+        public static class ByValue extends llama_context_params implements Structure.ByValue {
+        }
+    }
+
+    /**
+     * Mirrors {@code struct llama_batch}. Buffers are owned by {@link LlamaBatch}.
+     */
+    @Structure.FieldOrder({
+        "n_tokens",
+        "token",
+        "embd",
+        "pos",
+        "n_seq_id",
+        "seq_id",
+        "logits",
+        "all_pos_0",
+        "all_pos_1",
+        "all_seq_id"
+    })
+    public static class llama_batch extends Structure {
+        public int n_tokens;
+        public Pointer token;
+        public Pointer embd;
+        public Pointer pos;
+        public Pointer n_seq_id;
+        public Pointer seq_id;
+        public Pointer logits;
+        public int all_pos_0;
+        public int all_pos_1;
+        public int all_seq_id;
+
+        public static class ByValue extends llama_batch implements Structure.ByValue {
+        }
+    }
+
     public interface LlamaCpp extends Library {
         LlamaCpp INSTANCE = Native.load("llama", LlamaCpp.class);
 
@@ -65,28 +184,164 @@ public class LlamaService implements LanguageModelService {
         void llama_backend_free();
         Pointer llama_load_model_from_file(String path, llama_model_params params);
         void llama_free_model(Pointer ctx);
+
+        llama_context_params.ByValue llama_context_default_params();
+        Pointer llama_new_context_with_model(Pointer model, llama_context_params.ByValue params);
+        void llama_free(Pointer ctx);
+
+        int llama_n_vocab(Pointer model);
+        int llama_token_bos(Pointer model);
+        int llama_token_eos(Pointer model);
+        int llama_tokenize(Pointer model, byte[] text, int text_len, int[] tokens, int n_max_tokens,
+                           boolean add_bos, boolean special);
+        int llama_token_to_piece(Pointer model, int token, byte[] buf, int length);
+
+        int llama_decode(Pointer ctx, llama_batch.ByValue batch);
+        Pointer llama_get_logits_ith(Pointer ctx, int i);
+        void llama_kv_cache_clear(Pointer ctx);
+        void llama_kv_cache_seq_rm(Pointer ctx, int seq_id, int p0, int p1);
+        void llama_kv_cache_seq_cp(Pointer ctx, int seq_id_src, int seq_id_dst, int p0, int p1);
+    }
+
+    /**
+     * A smaller model with the same tokenizer that proposes {@code tokens} tokens at a time for the main
+     * model to verify (speculative decoding).
+     */
+    public record DraftModel(Path path, int tokens) {
+        public DraftModel {
+            if (tokens < 1) {
+                throw new IllegalArgumentException("The draft model must propose at least one token, got " + tokens);
+            }
+        }
     }
 
     public LlamaService(Path modelPath) {
+        this(modelPath, DEFAULT_MAX_SEQUENCES);
+    }
+
+    /**
+     * Loads the model once and keeps it resident, together with one shared inference context that
+     * decodes up to {@code maxSequences} prompts at a time, until {@link #close()} is called.
+     * The backend itself is freed by a JVM shutdown hook. Context and batch sizes come from a
+     * {@link LlamaMemoryPlan} for the model, which fails before anything is loaded if it cannot fit.
+     * Thread counts, the batch limit and NUMA come from the host's {@link LlamaTuningProfile} for the
+     * model if {@code CALIBRATE} has been run, otherwise one thread per physical core is used.
+     */
+    public LlamaService(Path modelPath, int maxSequences) {
+        this(modelPath, maxSequences, null);
+    }
+
+    /**
+     * Like {@link #LlamaService(Path, int)}, and if {@code draft} is not null also loads the draft model
+     * and decodes speculatively. The draft must share the main model's vocabulary.
+     */
+    public LlamaService(Path modelPath, int maxSequences, DraftModel draft) {
+        this(modelPath, maxSequences, draft, LlamaMemoryPlan.plan(modelPath, maxSequences,
+                MAX_RESIDENT_PREFIXES * MAX_PREFIX_TOKENS, draft == null ? null : draft.path(), maxSequences));
+    }
+
+    private LlamaService(Path modelPath, int maxSequences, DraftModel draft, LlamaMemoryPlan memoryPlan) {
         log.info("Initializing LlamaService with model path: {}", modelPath);
         this.modelPath = modelPath;
-        this.libraryPath = Path.of(System.getProperty("user.home"), "llama-models/.llama/lib");
+        LlamaTuningProfile profile = LlamaTuningProfile.load(modelPath).orElse(null);
+        if (profile != null) {
+            log.info("Using tuning profile {}: {}", LlamaTuningProfile.profileFile(modelPath), profile);
+        } else {
+            profile = LlamaTuningProfile.untuned();
+            log.info("No tuning profile for {} on this host, using {}. Run CALIBRATE to measure better settings.",
+                    modelPath.getFileName(), profile);
+        }
 
-        // Disable Metal/GPU support
-        System.setProperty("jna.platform.library.path", libraryPath.toString());
-        System.setProperty("LLAMA_METAL", "0");
+        initializeLibrary(profile.numa());
+
+        this.params = llama_model_params.defaultParams();
+        params.n_ctx = memoryPlan.sequenceContext();
+        params.n_batch = Math.min(memoryPlan.batchSize(), profile.batchSize());
+        params.n_threads = profile.threads();
+        params.n_threads_batch = profile.batchThreads();
+        log.info("Loading model from: {}", modelPath);
+        log.info("Model parameters: n_gpu_layers={}, use_mmap={}, use_mlock={}",
+                params.n_gpu_layers, params.use_mmap, params.use_mlock);
+        this.model = LlamaCpp.INSTANCE.llama_load_model_from_file(modelPath.toString(), params);
+        if (model == null) {
+            throw new RuntimeException("Failed to load Llama model from " + modelPath);
+        }
+        log.info("Model loaded successfully");
 
-        initializeLibrary();
+        LlamaSampler sampler = new LlamaSampler(TEMPERATURE, TOP_K, TOP_P);
+        Pointer loadedDraftModel = null;
+        LlamaDrafter createdDrafter = null;
+        try {
+            if (draft != null) {
+                loadedDraftModel = loadDraftModel(draft.path());
+                createdDrafter = new LlamaDrafter(loadedDraftModel, contextParams(params), maxSequences, draft.tokens(), sampler);
+            }
+            this.scheduler = new LlamaScheduler(model, contextParams(params), maxSequences, MAX_RESIDENT_PREFIXES,
+                    MAX_PREFIX_TOKENS, MAX_LENGTH, sampler, createdDrafter);
+        } catch (RuntimeException e) {
+            if (createdDrafter != null) {
+                createdDrafter.close();
+            }
+            if (loadedDraftModel != null) {
+                LlamaCpp.INSTANCE.llama_free_model(loadedDraftModel);
+            }
+            LlamaCpp.INSTANCE.llama_free_model(model);
+            throw e;
+        }
+        this.draftModel = loadedDraftModel;
+        this.drafter = createdDrafter;
+        openServices.add(this);
+    }
+
+    private Pointer loadDraftModel(Path draftPath) {
+        log.info("Loading draft model from: {}", draftPath);
+        Pointer loaded = LlamaCpp.INSTANCE.llama_load_model_from_file(draftPath.toString(), params);
+        if (loaded == null) {
+            throw new RuntimeException("Failed to load draft Llama model from " + draftPath);
+        }
+        int vocabulary = LlamaCpp.INSTANCE.llama_n_vocab(model);
+        int draftVocabulary = LlamaCpp.INSTANCE.llama_n_vocab(loaded);
+        if (vocabulary != draftVocabulary
+                || LlamaCpp.INSTANCE.llama_token_eos(model) != LlamaCpp.INSTANCE.llama_token_eos(loaded)) {
+            LlamaCpp.INSTANCE.llama_free_model(loaded);
+            throw new IllegalArgumentException(String.format(
+                    "Draft model %s has a vocabulary of %d tokens but %s has %d; the draft must use the same tokenizer",
+                    draftPath.getFileName(), draftVocabulary, modelPath.getFileName(), vocabulary));
+        }
+        return loaded;
+    }
+
+    static llama_context_params.ByValue contextParams(llama_model_params params) {
+        llama_context_params.ByValue contextParams = LlamaCpp.INSTANCE.llama_context_default_params();
+        contextParams.seed = params.seed;
+        contextParams.n_ctx = params.n_ctx;
+        contextParams.n_batch = params.n_batch;
+        contextParams.n_threads = params.n_threads;
+        contextParams.n_threads_batch = params.n_threads_batch;
+        return contextParams;
     }
 
-    private void initializeLibrary() {
+    /**
+     * Initializes the backend once per process. llama.cpp applies the NUMA setting only on the first call,
+     * so a later service asking for a different setting keeps the one already in effect.
+     */
+    static void initializeLibrary(boolean numa) {
+        // Disable Metal/GPU support
+        System.setProperty("jna.platform.library.path", LIBRARY_PATH.toString());
+        System.setProperty("LLAMA_METAL", "0");
         synchronized (lock) {
-            if (!libraryLoaded) {
+            if (libraryLoaded) {
+                if (numa != backendNuma) {
+                    log.warn("Llama backend already initialized with numa={}, ignoring numa={}", backendNuma, numa);
+                }
+            } else {
                 try {
                     validateLibrary();
-                    log.info("Initializing Llama backend...");
-                    LlamaCpp.INSTANCE.llama_backend_init(false);
+                    log.info("Initializing Llama backend (numa={})...", numa);
+                    LlamaCpp.INSTANCE.llama_backend_init(numa);
                     libraryLoaded = true;
+                    backendNuma = numa;
+                    Runtime.getRuntime().addShutdownHook(new Thread(LlamaService::shutdownBackend, "llama-shutdown"));
                     log.info("Llama backend initialized successfully");
                 } catch (Exception e) {
                     log.error("Failed to initialize Llama backend", e);
@@ -96,14 +351,14 @@ public class LlamaService implements LanguageModelService {
         }
     }
 
-    private void validateLibrary() {
+    private static void validateLibrary() {
         try {
-            log.info("Validating library at path: {}", libraryPath);
-            if (!Files.exists(libraryPath)) {
-                throw new RuntimeException("Llama.cpp library directory not found at " + libraryPath);
+            log.info("Validating library at path: {}", LIBRARY_PATH);
+            if (!Files.exists(LIBRARY_PATH)) {
+                throw new RuntimeException("Llama.cpp library directory not found at " + LIBRARY_PATH);
             }
 
-            Path dylibPath = libraryPath.resolve("libllama.dylib");
+            Path dylibPath = LIBRARY_PATH.resolve("libllama.dylib");
             log.info("Checking for library file at: {}", dylibPath);
             if (!Files.exists(dylibPath)) {
                 throw new RuntimeException("libllama.dylib not found at " + dylibPath);
@@ -113,8 +368,8 @@ public class LlamaService implements LanguageModelService {
                 throw new RuntimeException("libllama.dylib is not readable at " + dylibPath);
             }
 
-            log.info("Setting jna.library.path to: {}", libraryPath);
-            System.setProperty("jna.library.path", libraryPath.toString());
+            log.info("Setting jna.library.path to: {}", LIBRARY_PATH);
+            System.setProperty("jna.library.path", LIBRARY_PATH.toString());
         } catch (Exception e) {
             log.error("Error validating Llama library", e);
             throw new RuntimeException("Failed to validate Llama library: " + e.getMessage(), e);
@@ -123,51 +378,218 @@ public class LlamaService implements LanguageModelService {
 
     @Override
     public String generateResponse(String prompt) {
-        Pointer model = null;
-        try {
-            log.info("Creating model parameters");
-            llama_model_params params = llama_model_params.defaultParams();
+        return generateResponse(prompt, CancellationToken.none());
+    }
 
-            log.info("Loading model from: {}", modelPath);
-            log.info("Model parameters: n_gpu_layers={}, use_mmap={}, use_mlock={}",
-                    params.n_gpu_layers, params.use_mmap, params.use_mlock);
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        StringBuilder response = new StringBuilder();
+        streamResponse(prompt, cancellation, response::append);
+        return response.toString();
+    }
 
-            model = LlamaCpp.INSTANCE.llama_load_model_from_file(modelPath.toString(), params);
+    @Override
+    public void streamResponse(String prompt, Consumer<String> onChunk) {
+        streamResponse(prompt, CancellationToken.none(), onChunk);
+    }
 
-            if (model == null) {
-                throw new RuntimeException("Failed to load Llama model from " + modelPath);
+    /**
+     * Generates on the shared context. A cancelled call stops at the next token boundary, and its sequence
+     * slot and KV cells are freed for the next prompt before the scheduler decodes again.
+     */
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        lifecycle.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("LlamaService has been closed");
             }
-            log.info("Model loaded successfully");
-
-            // For now, just return a simple response to test if model loading works
-            return "Test response - model loaded successfully";
+            int[] promptTokens = tokenize(prompt, true);
+            scheduler.submit(promptTokens, longestKnownPrefix(promptTokens), cancellation, onChunk);
+        } catch (CancellationToken.CancelledException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error generating response from Llama", e);
             throw new RuntimeException("Failed to generate response: " + e.getMessage(), e);
         } finally {
-            if (model != null) {
-                try {
-                    log.info("Freeing model resources");
-                    LlamaCpp.INSTANCE.llama_free_model(model);
-                } catch (Exception e) {
-                    log.error("Error freeing model resources", e);
-                }
+            lifecycle.readLock().unlock();
+        }
+    }
+
+    private int[] longestKnownPrefix(int[] promptTokens) {
+        int[] best = null;
+        for (int[] prefix : knownPrefixes) {
+            // At least one prompt token must remain to be decoded so that logits are produced
+            if (prefix.length < promptTokens.length
+                    && (best == null || prefix.length > best.length)
+                    && Arrays.equals(prefix, 0, prefix.length, promptTokens, 0, prefix.length)) {
+                best = prefix;
             }
         }
+        return best;
     }
 
+    /**
+     * Tokenizes the prefix and remembers it. The last token is dropped because the tokenizer may merge it
+     * with whatever follows the prefix in a real prompt. Only the first {@value #MAX_PREFIX_TOKENS} tokens
+     * are kept, as that is all the room a resident prefix has in the context.
+     */
     @Override
-    protected void finalize() throws Throwable {
+    public void registerPromptPrefix(String prefix) {
+        int[] tokens = tokenize(prefix, true);
+        if (tokens.length - 1 < MIN_PREFIX_TOKENS) {
+            return;
+        }
+        int[] stable = Arrays.copyOf(tokens, Math.min(tokens.length - 1, MAX_PREFIX_TOKENS));
+        if (knownPrefixes.stream().noneMatch(known -> Arrays.equals(known, stable))) {
+            knownPrefixes.add(stable);
+            log.info("Registered a {}-token prompt prefix for state reuse", stable.length);
+        }
+    }
+
+    /**
+     * Counts with the model's own vocabulary from the GGUF file.
+     */
+    @Override
+    public int countTokens(String text) {
+        lifecycle.readLock().lock();
         try {
-            synchronized (lock) {
-                if (libraryLoaded) {
-                    log.info("Freeing Llama backend in finalizer");
-                    LlamaCpp.INSTANCE.llama_backend_free();
-                    libraryLoaded = false;
-                }
+            if (closed) {
+                throw new IllegalStateException("LlamaService has been closed");
+            }
+            return tokenize(text, false).length;
+        } finally {
+            lifecycle.readLock().unlock();
+        }
+    }
+
+    /**
+     * The sequence context less the begin-of-sequence token and room for a response of {@value #MAX_LENGTH}
+     * tokens, or half the context if that is smaller.
+     */
+    @Override
+    public int maxPromptTokens() {
+        return params.n_ctx - 1 - Math.min(MAX_LENGTH, params.n_ctx / 2);
+    }
+
+    int[] tokenize(String text, boolean addBos) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        int[] tokens = new int[utf8.length + 2];
+        int count = LlamaCpp.INSTANCE.llama_tokenize(model, utf8, utf8.length, tokens, tokens.length, addBos, false);
+        if (count < 0) {
+            tokens = new int[-count];
+            count = LlamaCpp.INSTANCE.llama_tokenize(model, utf8, utf8.length, tokens, tokens.length, addBos, false);
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    @Override
+    public String getBackendName() {
+        return "llama";
+    }
+
+    @Override
+    public String getModelName() {
+        return modelPath.getFileName().toString();
+    }
+
+    @Override
+    public double getTemperature() {
+        return TEMPERATURE;
+    }
+
+    /**
+     * Accept rate and estimated speedup of speculative decoding so far, or null if no draft tokens were verified.
+     * The estimate assumes a main-model pass costs about the same with or without draft tokens in it, so that
+     * without a draft every pass would have produced one token per sequence, in the time of the verify passes alone.
+     */
+    public static String speculativeDecodingSummary(MetricsRegistry registry) {
+        Map<MetricsRegistry.MetricId, Counter> counters = registry.counters();
+        long steps = counterValue(counters, "llama_speculative_steps_total");
+        if (steps == 0) {
+            return null;
+        }
+        long accepted = counterValue(counters, "llama_draft_tokens_total", "result", "accepted");
+        long proposed = accepted + counterValue(counters, "llama_draft_tokens_total", "result", "rejected");
+        double tokensPerPass = (double) counterValue(counters, "llama_speculative_tokens_total") / steps;
+        long draftNanos = counterValue(counters, "llama_speculative_nanos_total", "phase", "draft");
+        long verifyNanos = counterValue(counters, "llama_speculative_nanos_total", "phase", "verify");
+        double speedup = tokensPerPass * verifyNanos / Math.max(1, draftNanos + verifyNanos);
+        return String.format("Speculative decoding: %d of %d draft tokens accepted (%.1f%%), %.2f tokens per main-model pass, estimated speedup %.2fx",
+                accepted, proposed, 100.0 * accepted / Math.max(1, proposed), tokensPerPass, speedup);
+    }
+
+    private static long counterValue(Map<MetricsRegistry.MetricId, Counter> counters, String name, String... label) {
+        Counter counter = counters.get(new MetricsRegistry.MetricId(name,
+                label.length == 0 ? Map.of() : Map.of(label[0], label[1])));
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Frees the inference contexts and the model. Waits for in-flight generations to finish first.
+     */
+    @Override
+    public void close() {
+        lifecycle.writeLock().lock();
+        try {
+            if (closed) {
+                return;
             }
+            closed = true;
+            log.info("Freeing Llama context and model");
+            scheduler.close();
+            if (drafter != null) {
+                drafter.close();
+                LlamaCpp.INSTANCE.llama_free_model(draftModel);
+            }
+            LlamaCpp.INSTANCE.llama_free_model(model);
+        } catch (Exception e) {
+            log.error("Error freeing model resources", e);
         } finally {
-            super.finalize();
+            openServices.remove(this);
+            lifecycle.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes the JVM shutdown hook wait up to {@code timeout} for {@code released} before it stops any
+     * service, for an owner that drains its own callers on shutdown and then closes the services itself,
+     * such as the daemon. Without this the hook runs alongside the owner's and can close the model while
+     * calls the owner has admitted are still running.
+     */
+    public static void deferShutdownUntil(CountDownLatch released, Duration timeout) {
+        shutdownGateTimeout = timeout;
+        shutdownGate = released;
+    }
+
+    /**
+     * Runs on JVM exit. Generations still in flight are failed first, so that {@link #close()} does not
+     * wait for them to run to completion and hold up the exit.
+     */
+    private static void shutdownBackend() {
+        CountDownLatch gate = shutdownGate;
+        if (gate != null) {
+            try {
+                if (!gate.await(shutdownGateTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    log.warn("Services still open after {} s, stopping them", shutdownGateTimeout.toSeconds());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (LlamaService service : openServices) {
+            if (service.scheduler.stop()) {
+                service.close();
+            } else {
+                log.warn("Not freeing {} on shutdown: interrupted while stopping its scheduler", service.modelPath.getFileName());
+            }
+        }
+        synchronized (lock) {
+            if (libraryLoaded) {
+                log.info("Freeing Llama backend on shutdown");
+                LlamaCpp.INSTANCE.llama_backend_free();
+                libraryLoaded = false;
+            }
         }
     }
 }
@@ -0,0 +1,147 @@
+package com.gsk.architect.generator.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Thread, batch and NUMA settings measured by {@link LlamaCalibrator} for one model on one host.
+ * Profiles are stored under {@code ~/.architect-lab/tuning/<host>/<model file>.properties} and picked up
+ * by {@link LlamaService}; a profile is ignored once the CPU count or the model file size no longer match.
+ *
+ * @param threads                   {@code n_threads}, used when generating one token per sequence
+ * @param batchThreads              {@code n_threads_batch}, used when decoding prompts
+ * @param batchSize                 upper bound for {@code n_batch}; the memory plan may lower it further
+ * @param numa                      whether {@code llama_backend_init} spreads memory over NUMA nodes
+ * @param promptTokensPerSecond     measured prompt throughput, 0 if untuned
+ * @param generationTokensPerSecond measured generation throughput, 0 if untuned
+ */
+@Slf4j
+public record LlamaTuningProfile(int threads, int batchThreads, int batchSize, boolean numa,
+                                 double promptTokensPerSecond, double generationTokensPerSecond,
+                                 int logicalProcessors, long modelBytes, Instant measuredAt) {
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".architect-lab", "tuning");
+    // Shape of a typical generation request, used to weigh prompt against generation speed
+    private static final int TYPICAL_PROMPT_TOKENS = 400;
+    private static final int TYPICAL_COMPLETION_TOKENS = 1200;
+
+    /**
+     * Settings used until the host has been calibrated: one thread per physical core and no NUMA balancing.
+     */
+    public static LlamaTuningProfile untuned() {
+        int cores = CpuTopology.physicalCores();
+        return new LlamaTuningProfile(cores, cores, Integer.MAX_VALUE, false, 0, 0,
+                CpuTopology.logicalProcessors(), 0, null);
+    }
+
+    public boolean isMeasured() {
+        return measuredAt != null;
+    }
+
+    /**
+     * Estimated seconds for a typical request; lower is better.
+     */
+    public double typicalRequestSeconds() {
+        return TYPICAL_PROMPT_TOKENS / promptTokensPerSecond + TYPICAL_COMPLETION_TOKENS / generationTokensPerSecond;
+    }
+
+    public static Path profileFile(Path modelPath) {
+        return DEFAULT_DIRECTORY.resolve(hostName()).resolve(modelPath.getFileName() + ".properties");
+    }
+
+    /**
+     * The saved profile for {@code modelPath} on this host, if one exists and still matches the host and file.
+     */
+    public static Optional<LlamaTuningProfile> load(Path modelPath) {
+        Path file = profileFile(modelPath);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            LlamaTuningProfile profile = read(file);
+            if (profile.logicalProcessors() != CpuTopology.logicalProcessors()) {
+                log.warn("Ignoring tuning profile {}: measured with {} CPUs, {} available now",
+                        file, profile.logicalProcessors(), CpuTopology.logicalProcessors());
+                return Optional.empty();
+            }
+            if (profile.modelBytes() != Files.size(modelPath)) {
+                log.warn("Ignoring tuning profile {}: the model file has changed since it was measured", file);
+                return Optional.empty();
+            }
+            return Optional.of(profile);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable tuning profile {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public static LlamaTuningProfile read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (var in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        try {
+            return new LlamaTuningProfile(
+                    Integer.parseInt(properties.getProperty("threads")),
+                    Integer.parseInt(properties.getProperty("batchThreads")),
+                    Integer.parseInt(properties.getProperty("batchSize")),
+                    Boolean.parseBoolean(properties.getProperty("numa")),
+                    Double.parseDouble(properties.getProperty("promptTokensPerSecond")),
+                    Double.parseDouble(properties.getProperty("generationTokensPerSecond")),
+                    Integer.parseInt(properties.getProperty("logicalProcessors")),
+                    Long.parseLong(properties.getProperty("modelBytes")),
+                    Instant.parse(properties.getProperty("measuredAt")));
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed tuning profile " + file, e);
+        }
+    }
+
+    public void write(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("threads", Integer.toString(threads));
+        properties.setProperty("batchThreads", Integer.toString(batchThreads));
+        properties.setProperty("batchSize", Integer.toString(batchSize));
+        properties.setProperty("numa", Boolean.toString(numa));
+        properties.setProperty("promptTokensPerSecond", Double.toString(promptTokensPerSecond));
+        properties.setProperty("generationTokensPerSecond", Double.toString(generationTokensPerSecond));
+        properties.setProperty("logicalProcessors", Integer.toString(logicalProcessors));
+        properties.setProperty("modelBytes", Long.toString(modelBytes));
+        properties.setProperty("measuredAt", measuredAt.toString());
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(temp)) {
+                properties.store(out, "architect-lab llama.cpp tuning profile");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String hostName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = System.getenv().getOrDefault("HOSTNAME", "localhost");
+        }
+        return host.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("threads=%d, batch threads=%d, batch=%s, numa=%s, prompt %.1f tok/s, generation %.1f tok/s",
+                threads, batchThreads, batchSize == Integer.MAX_VALUE ? "auto" : Integer.toString(batchSize), numa,
+                promptTokensPerSecond, generationTokensPerSecond);
+    }
+}
@@ -0,0 +1,87 @@
+package com.gsk.architect.generator.service;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * MinHash signatures over word shingles. The fraction of positions at which two signatures agree
+ * estimates the Jaccard similarity of the two texts' shingle sets, so near-duplicates can be found
+ * without keeping or comparing the texts themselves.
+ *
+ * <p>The hash functions are derived from a fixed seed: signatures are persisted by {@link QuestionIndex},
+ * and changing the seed, {@link #NUM_HASHES} or {@link #SHINGLE_WORDS} requires bumping its file version.
+ */
+class MinHasher {
+    static final int NUM_HASHES = 128;
+    static final int SHINGLE_WORDS = 3;
+    private static final long SEED = 0x5EED_1DE4L;
+
+    private final long[] multipliers = new long[NUM_HASHES];
+    private final long[] increments = new long[NUM_HASHES];
+
+    MinHasher() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            multipliers[i] = random.nextLong() | 1;
+            increments[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Returns the signature of {@code text}, or null if it has no words to hash.
+     */
+    int[] signature(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+");
+        int start = words.length > 0 && words[0].isEmpty() ? 1 : 0;
+        int wordCount = words.length - start;
+        if (wordCount == 0) {
+            return null;
+        }
+
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        // Texts shorter than one shingle are hashed as a single shingle of all their words
+        int shingleWords = Math.min(SHINGLE_WORDS, wordCount);
+        for (int i = start; i + shingleWords <= words.length; i++) {
+            long shingle = shingleHash(words, i, shingleWords);
+            for (int h = 0; h < NUM_HASHES; h++) {
+                // Top 31 bits of a random affine map, so that plain signed comparison works
+                int value = (int) ((shingle * multipliers[h] + increments[h]) >>> 33);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimated Jaccard similarity of the texts behind two signatures.
+     */
+    static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / NUM_HASHES;
+    }
+
+    private static long shingleHash(String[] words, int from, int count) {
+        // 64-bit FNV-1a over the words, with a separator so that "ab c" and "a bc" differ
+        long hash = 0xcbf29ce484222325L;
+        for (int w = from; w < from + count; w++) {
+            String word = words[w];
+            for (int c = 0; c < word.length(); c++) {
+                hash = (hash ^ word.charAt(c)) * 0x100000001b3L;
+            }
+            hash = (hash ^ ' ') * 0x100000001b3L;
+        }
+        // Murmur3 finalizer: FNV leaves the high bits poorly mixed
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -1,10 +1,37 @@
 package com.gsk.architect.generator.service;
 
+import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Files;
 
 public class ModelFactory {
     public static LanguageModelService createModel(ModelType type, String config) {
+        return createModel(type, config, null);
+    }
+
+    /**
+     * @param openAIBaseUrl endpoint for the OpenAI backend, or null for the public API
+     */
+    public static LanguageModelService createModel(ModelType type, String config, URI openAIBaseUrl) {
+        return createModel(type, config, openAIBaseUrl, null);
+    }
+
+    /**
+     * @param openAIBaseUrl endpoint for the OpenAI backend, or null for the public API
+     * @param draftModel    draft model for speculative decoding on the Llama backend, or null; OpenAI ignores it
+     */
+    public static LanguageModelService createModel(ModelType type, String config, URI openAIBaseUrl,
+                                                   LlamaService.DraftModel draftModel) {
+        return createModel(type, config, openAIBaseUrl, draftModel, type.getDefaultMaxInFlight());
+    }
+
+    /**
+     * @param openAIBaseUrl endpoint for the OpenAI backend, or null for the public API
+     * @param draftModel    draft model for speculative decoding on the Llama backend, or null; OpenAI ignores it
+     * @param maxInFlight   concurrent calls the backend must serve; Llama sizes its sequences and KV cache for it
+     */
+    public static LanguageModelService createModel(ModelType type, String config, URI openAIBaseUrl,
+                                                   LlamaService.DraftModel draftModel, int maxInFlight) {
         if (config == null || config.trim().isEmpty()) {
             throw new IllegalArgumentException("Configuration cannot be empty");
         }
@@ -14,7 +41,7 @@ public class ModelFactory {
                 if (!config.startsWith("sk-")) {
                     throw new IllegalArgumentException("Invalid OpenAI API key format");
                 }
-                yield new OpenAIService(config);
+                yield openAIBaseUrl == null ? new OpenAIService(config) : new OpenAIService(config, openAIBaseUrl);
             }
             case LLAMA -> {
                 Path modelPath = Path.of(config);
@@ -32,13 +59,30 @@ public class ModelFactory {
                         "\nPlease follow the README instructions to build and install the library.");
                 }
 
-                yield new LlamaService(modelPath);
+                if (draftModel != null && !Files.isReadable(draftModel.path())) {
+                    throw new IllegalArgumentException("Draft model file not found or not readable: " + draftModel.path());
+                }
+
+                yield new LlamaService(modelPath, maxInFlight, draftModel);
             }
         };
     }
 
     public enum ModelType {
-        OPENAI,
-        LLAMA
+        OPENAI(8),
+        LLAMA(LlamaService.DEFAULT_MAX_SEQUENCES);
+
+        private final int defaultMaxInFlight;
+
+        ModelType(int defaultMaxInFlight) {
+            this.defaultMaxInFlight = defaultMaxInFlight;
+        }
+
+        /**
+         * Number of concurrent calls a batch run allows against this backend unless overridden on the command line.
+         */
+        public int getDefaultMaxInFlight() {
+            return defaultMaxInFlight;
+        }
     }
 }
@@ -0,0 +1,310 @@
+package com.gsk.architect.generator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.service.OpenAiService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Non-blocking client for the chat completions endpoint on top of {@link HttpClient}, which pools
+ * connections and multiplexes requests over HTTP/2. Every request first reserves capacity in two
+ * token buckets (requests and tokens) that track the provider's rate limit headers, and 429 and 5xx
+ * responses or I/O failures are retried with jittered exponential backoff, honouring {@code retry-after}.
+ * A streamed request is only retried before any of its events have been delivered.
+ *
+ * <p>Every call takes a {@link CancellationToken}. Cancelling it, or reaching its deadline, aborts the HTTP
+ * exchange in flight and closes a streamed body, which gives the connection back to the pool, and the call
+ * fails with the token's {@link CancellationToken.CancelledException}. No attempt outlives the deadline:
+ * each request's timeout is capped at the time left, and a retry that would start after it is not made.
+ */
+@Slf4j
+class OpenAIHttpClient implements AutoCloseable {
+    static final URI DEFAULT_BASE_URL = URI.create("https://api.openai.com/v1/");
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    // Completion length is unknown up front; reserve a typical answer and let the headers correct it
+    private static final int ASSUMED_COMPLETION_TOKENS = 1000;
+
+    private final URI completionsUri;
+    private final String apiKey;
+    private final Duration timeout;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient http;
+    private final ObjectMapper mapper = OpenAiService.defaultObjectMapper();
+    private final RateLimitBucket requestBucket = new RateLimitBucket();
+    private final RateLimitBucket tokenBucket = new RateLimitBucket();
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private final LatencyHistogram rateLimitWait = metrics.histogram("openai_rate_limit_wait_seconds");
+
+    OpenAIHttpClient(String apiKey, URI baseUrl, Duration timeout) {
+        this.apiKey = apiKey;
+        this.completionsUri = baseUrl.resolve("chat/completions");
+        this.timeout = timeout;
+        this.http = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    CompletableFuture<ChatCompletionResult> complete(ChatCompletionRequest request, CancellationToken cancellation) {
+        Exchange exchange = new Exchange(cancellation);
+        return exchange.abortOnCancel(send(request, HttpResponse.BodyHandlers.ofString(), 1, exchange)
+                .thenApply(response -> parse(response.body(), ChatCompletionResult.class)));
+    }
+
+    /**
+     * Streams the response events to {@code onChunk} on a background thread. The future completes
+     * after the last event.
+     */
+    CompletableFuture<Void> stream(ChatCompletionRequest request, CancellationToken cancellation,
+                                   Consumer<ChatCompletionChunk> onChunk) {
+        Exchange exchange = new Exchange(cancellation);
+        return exchange.abortOnCancel(send(request, HttpResponse.BodyHandlers.ofLines(), 1, exchange)
+                .thenAcceptAsync(response -> {
+                    try (Stream<String> lines = response.body()) {
+                        exchange.body = lines;
+                        Iterator<String> iterator = lines.iterator();
+                        while (iterator.hasNext()) {
+                            cancellation.throwIfCancelled();
+                            String line = iterator.next();
+                            if (!line.startsWith("data:")) {
+                                continue;
+                            }
+                            String data = line.substring("data:".length()).strip();
+                            if (data.equals("[DONE]")) {
+                                return;
+                            }
+                            onChunk.accept(parse(data, ChatCompletionChunk.class));
+                        }
+                    }
+                    cancellation.throwIfCancelled();
+                }, executor));
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(ChatCompletionRequest request, HttpResponse.BodyHandler<T> handler,
+                                                        int attempt, Exchange exchange) {
+        byte[] body = serialize(request);
+        long waitNanos = Math.max(requestBucket.reserve(1), tokenBucket.reserve(estimateTokens(request)));
+        rateLimitWait.record(waitNanos);
+        if (waitNanos >= exchange.cancellation.remainingNanos()) {
+            return CompletableFuture.failedFuture(new CancellationToken.CancelledException(
+                    "Model call would exceed its deadline waiting for the rate limit", true));
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, executor))
+                .thenCompose(ignored -> exchange.start(http.sendAsync(HttpRequest.newBuilder(completionsUri)
+                        .timeout(exchange.timeout(timeout))
+                        .header("Authorization", "Bearer " + apiKey)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build(), handler)))
+                .handle((response, error) -> {
+                    if (exchange.cancellation.isCancelled()) {
+                        if (response != null && response.body() instanceof Stream<?> lines) {
+                            lines.close();
+                        }
+                        return CompletableFuture.<HttpResponse<T>>failedFuture(exchange.cancellation.failure());
+                    }
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        return retryOrFail(request, handler, attempt, "io", 0, cause, exchange);
+                    }
+                    updateLimits(response.headers());
+                    int status = response.statusCode();
+                    metrics.counter("openai_http_responses_total", "status", Integer.toString(status)).increment();
+                    if (status < 300) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    String errorBody = drain(response);
+                    OpenAIHttpException failure = new OpenAIHttpException(status, errorBody);
+                    if (status == 429 || status >= 500) {
+                        long retryAfter = retryAfterMillis(response.headers());
+                        if (status == 429 && retryAfter > 0) {
+                            requestBucket.pause(Duration.ofMillis(retryAfter));
+                        }
+                        return retryOrFail(request, handler, attempt, status == 429 ? "rate_limited" : "server_error",
+                                retryAfter, failure, exchange);
+                    }
+                    return CompletableFuture.<HttpResponse<T>>failedFuture(failure);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> retryOrFail(ChatCompletionRequest request, HttpResponse.BodyHandler<T> handler,
+                                                               int attempt, String reason, long retryAfterMillis, Throwable failure,
+                                                               Exchange exchange) {
+        if (attempt >= MAX_ATTEMPTS) {
+            return CompletableFuture.failedFuture(failure);
+        }
+        // Full jitter: spreads retries of concurrent callers instead of having them return in lockstep
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        long delay = Math.max(retryAfterMillis, ThreadLocalRandom.current().nextLong(ceiling + 1));
+        if (TimeUnit.MILLISECONDS.toNanos(delay) >= exchange.cancellation.remainingNanos()) {
+            log.warn("OpenAI request attempt {} failed ({}), no time left to retry before the deadline", attempt, failure.getMessage());
+            return CompletableFuture.failedFuture(failure);
+        }
+        metrics.counter("openai_retries_total", "reason", reason).increment();
+        log.warn("OpenAI request attempt {} failed ({}), retrying in {} ms", attempt, failure.getMessage(), delay);
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor))
+                .thenCompose(ignored -> send(request, handler, attempt + 1, exchange));
+    }
+
+    private void updateLimits(HttpHeaders headers) {
+        updateBucket(requestBucket, headers, "requests");
+        updateBucket(tokenBucket, headers, "tokens");
+    }
+
+    private static void updateBucket(RateLimitBucket bucket, HttpHeaders headers, String kind) {
+        try {
+            long limit = Long.parseLong(headers.firstValue("x-ratelimit-limit-" + kind).orElse(""));
+            long remaining = Long.parseLong(headers.firstValue("x-ratelimit-remaining-" + kind).orElse(""));
+            bucket.update(limit, remaining, RateLimitBucket.parseDuration(headers.firstValue("x-ratelimit-reset-" + kind).orElse(null)));
+        } catch (NumberFormatException e) {
+            // Header missing or malformed: keep the previous estimate
+        }
+    }
+
+    private static long retryAfterMillis(HttpHeaders headers) {
+        try {
+            var millis = headers.firstValue("retry-after-ms");
+            if (millis.isPresent()) {
+                return (long) Double.parseDouble(millis.get());
+            }
+            return headers.firstValue("retry-after").map(seconds -> (long) (Double.parseDouble(seconds) * 1000)).orElse(0L);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int estimateTokens(ChatCompletionRequest request) {
+        // About four characters per token for English text
+        int promptChars = request.getMessages().stream().mapToInt(message -> message.getContent().length()).sum();
+        return promptChars / 4 + ASSUMED_COMPLETION_TOKENS;
+    }
+
+    private static String drain(HttpResponse<?> response) {
+        Object body = response.body();
+        if (body instanceof Stream<?> lines) {
+            try (lines) {
+                return lines.map(Object::toString).collect(Collectors.joining("\n"));
+            }
+        }
+        return String.valueOf(body);
+    }
+
+    private byte[] serialize(ChatCompletionRequest request) {
+        try {
+            return mapper.writeValueAsBytes(request);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize OpenAI request", e);
+        }
+    }
+
+    private <T> T parse(String json, Class<T> type) {
+        try {
+            return mapper.readValue(json, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to parse OpenAI response", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        http.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * One call with its retries: the HTTP exchange in flight, if any, and the streamed body being read,
+     * so that cancellation can abort whichever of them the call is waiting on.
+     */
+    private static final class Exchange {
+        final CancellationToken cancellation;
+        volatile CompletableFuture<?> inFlight;
+        volatile Stream<String> body;
+
+        Exchange(CancellationToken cancellation) {
+            this.cancellation = cancellation;
+        }
+
+        <T> CompletableFuture<T> start(CompletableFuture<T> exchange) {
+            inFlight = exchange;
+            if (cancellation.isCancelled()) {
+                exchange.cancel(true);
+            }
+            return exchange;
+        }
+
+        /**
+         * The request timeout, shortened to the time left before the deadline.
+         */
+        Duration timeout(Duration timeout) {
+            return Duration.ofNanos(Math.max(1, Math.min(timeout.toNanos(), cancellation.remainingNanos())));
+        }
+
+        /**
+         * Fails {@code call} with the token's exception as soon as it is cancelled, after aborting the
+         * exchange and closing the body; {@code HttpClient} releases the connection when either happens.
+         */
+        <T> CompletableFuture<T> abortOnCancel(CompletableFuture<T> call) {
+            CancellationToken.Registration registration = cancellation.onCancel(() -> {
+                CompletableFuture<?> exchange = inFlight;
+                if (exchange != null) {
+                    exchange.cancel(true);
+                }
+                Stream<String> lines = body;
+                if (lines != null) {
+                    lines.close();
+                }
+                call.completeExceptionally(cancellation.failure());
+            });
+            call.whenComplete((result, error) -> registration.close());
+            return call;
+        }
+    }
+
+    /**
+     * Non-success HTTP status from the API, after retries if the status was retryable.
+     */
+    static class OpenAIHttpException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        OpenAIHttpException(int status, String body) {
+            super("OpenAI returned HTTP " + status + ": " + abbreviate(body));
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        private static String abbreviate(String body) {
+            return body.length() > 300 ? body.substring(0, 300) + "..." : body;
+        }
+    }
+}
@@ -1,40 +1,191 @@
 package com.gsk.architect.generator.service;
 
-import com.theokanning.openai.service.OpenAiService;
+import com.gsk.architect.generator.metrics.Counter;
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
 import com.theokanning.openai.completion.chat.ChatMessage;
 import lombok.extern.slf4j.Slf4j;
 
+import java.net.URI;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Slf4j
 public class OpenAIService implements LanguageModelService {
-    private final OpenAiService service;
-    private static final String MODEL = "gpt-4";
+    public static final String MODEL = "gpt-4";
+    private static final String SYSTEM_PROMPT = "You are a senior system design interviewer at FAANG companies.";
+    // Context window of MODEL and the part of it kept free for the response
+    private static final int CONTEXT_TOKENS = 8192;
+    private static final int RESPONSE_TOKENS = 2048;
+    // Chat formatting around the two messages: 3 tokens per message, 1 per role, 3 to prime the reply
+    private static final int MESSAGE_OVERHEAD_TOKENS = 2 * (3 + 1) + 3;
+    private static final double TEMPERATURE = 0.7;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+    private final OpenAIHttpClient client;
+    private final TokenCounter tokenCounter;
+    private final int systemPromptTokens;
+    private final Counter promptTokens = MetricsRegistry.global().counter("llm_prompt_tokens_total", "backend", "openai");
+    private final Counter completionTokens = MetricsRegistry.global().counter("llm_completion_tokens_total", "backend", "openai");
+    private final LatencyHistogram callCompletionTokens = MetricsRegistry.global().histogram("llm_call_completion_tokens", "backend", "openai");
 
     public OpenAIService(String apiKey) {
-        this.service = new OpenAiService(apiKey, Duration.ofSeconds(60));
+        this(apiKey, OpenAIHttpClient.DEFAULT_BASE_URL);
     }
 
+    /**
+     * Talks to {@code baseUrl} instead of the public API, e.g. a local stub server.
+     */
+    public OpenAIService(String apiKey, URI baseUrl) {
+        this(apiKey, baseUrl, BpeTokenizer.forModel(MODEL, BpeTokenizer.DEFAULT_DIRECTORY));
+    }
+
+    /**
+     * Counts prompt tokens with {@code tokenCounter}, which should use the encoding of {@link #MODEL}.
+     */
+    public OpenAIService(String apiKey, URI baseUrl, TokenCounter tokenCounter) {
+        this.client = new OpenAIHttpClient(apiKey, baseUrl, TIMEOUT);
+        this.tokenCounter = tokenCounter;
+        this.systemPromptTokens = tokenCounter.count(SYSTEM_PROMPT);
+    }
+
+    @Override
     public String generateResponse(String prompt) {
+        return generateResponse(prompt, CancellationToken.none());
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        try {
+            return await(generateResponseAsync(prompt, cancellation));
+        } catch (ExecutionException e) {
+            log.error("Error generating response from OpenAI", e.getCause());
+            throw new RuntimeException("Failed to generate response", e.getCause());
+        }
+    }
+
+    /**
+     * Sends the prompt without blocking the caller. Many of these can be in flight at once; they share
+     * pooled connections and are paced by the provider's rate limits.
+     */
+    public CompletableFuture<String> generateResponseAsync(String prompt) {
+        return generateResponseAsync(prompt, CancellationToken.none());
+    }
+
+    /**
+     * Like {@link #generateResponseAsync(String)}; cancelling the token aborts the request and fails the future.
+     */
+    public CompletableFuture<String> generateResponseAsync(String prompt, CancellationToken cancellation) {
+        return client.complete(buildRequest(prompt, false), cancellation).thenApply(result -> {
+            if (result.getUsage() != null) {
+                promptTokens.add(result.getUsage().getPromptTokens());
+                completionTokens.add(result.getUsage().getCompletionTokens());
+                callCompletionTokens.record(result.getUsage().getCompletionTokens());
+            }
+            return result.getChoices().getFirst().getMessage().getContent();
+        });
+    }
+
+    @Override
+    public void streamResponse(String prompt, Consumer<String> onChunk) {
+        streamResponse(prompt, CancellationToken.none(), onChunk);
+    }
+
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        AtomicInteger deltas = new AtomicInteger();
+        try {
+            await(client.stream(buildRequest(prompt, true), cancellation, chunk -> {
+                for (ChatCompletionChoice choice : chunk.getChoices()) {
+                    ChatMessage delta = choice.getMessage();
+                    if (delta != null && delta.getContent() != null && !delta.getContent().isEmpty()) {
+                        // Streamed responses carry no usage block. A content delta is usually one token, so
+                        // counting deltas estimates the completion tokens
+                        completionTokens.increment();
+                        deltas.incrementAndGet();
+                        onChunk.accept(delta.getContent());
+                    }
+                }
+            }));
+            // Estimated with the same tokenizer that sizes prompts, as there is no usage block to read it from
+            promptTokens.add(tokenCounter.count(prompt) + systemPromptTokens + MESSAGE_OVERHEAD_TOKENS);
+            callCompletionTokens.record(deltas.get());
+        } catch (ExecutionException e) {
+            log.error("Error streaming response from OpenAI", e.getCause());
+            throw new RuntimeException("Failed to stream response", e.getCause());
+        }
+    }
+
+    /**
+     * Waits for {@code future} like {@link CompletableFuture#get()}, but gives up on it if the calling
+     * thread is interrupted, e.g. when a hedged call has been won by another backend. A cancelled call
+     * throws the token's exception as is, so callers can tell it from a failure.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws ExecutionException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationToken.CancelledException cancelled) {
+                throw cancelled;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for OpenAI", e);
+        }
+    }
+
+    private ChatCompletionRequest buildRequest(String prompt, boolean stream) {
         List<ChatMessage> messages = new ArrayList<>();
-        messages.add(new ChatMessage("system", "You are a senior system design interviewer at FAANG companies."));
+        messages.add(new ChatMessage("system", SYSTEM_PROMPT));
         messages.add(new ChatMessage("user", prompt));
 
-        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+        return ChatCompletionRequest.builder()
                 .model(MODEL)
                 .messages(messages)
-                .temperature(0.7)
+                .temperature(TEMPERATURE)
+                .stream(stream)
                 .build();
+    }
 
-        try {
-            return service.createChatCompletion(chatCompletionRequest)
-                    .getChoices().getFirst().getMessage().getContent();
-        } catch (Exception e) {
-            log.error("Error generating response from OpenAI", e);
-            throw new RuntimeException("Failed to generate response", e);
-        }
+    @Override
+    public int countTokens(String text) {
+        return tokenCounter.count(text);
+    }
+
+    /**
+     * The context window less room for the response and what the system message and chat formatting take.
+     */
+    @Override
+    public int maxPromptTokens() {
+        return CONTEXT_TOKENS - RESPONSE_TOKENS - systemPromptTokens - MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    @Override
+    public String getBackendName() {
+        return "openai";
+    }
+
+    @Override
+    public String getModelName() {
+        return MODEL;
+    }
+
+    @Override
+    public double getTemperature() {
+        return TEMPERATURE;
+    }
+
+    @Override
+    public void close() {
+        client.close();
     }
 }
@@ -0,0 +1,89 @@
+package com.gsk.architect.generator.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Cuts the variable part of a prompt, such as the question embedded in the hints prompt, so that the
+ * whole prompt fits the backend's {@link LanguageModelService#maxPromptTokens()} before it is sent.
+ * The input is cut at the end of the last paragraph that still fits, so headings and requirements near
+ * the top survive whole, or at a word if not even the first paragraph fits. A note tells the model that
+ * the input was shortened. Finding the cut takes a binary search, a few token counts of the prompt.
+ */
+final class PromptFitter {
+    static final String CUT_NOTE = "\n\n[The rest was cut to fit the model's context.]\n";
+
+    /**
+     * Token counts are -1 if the backend has no limit, in which case the prompt is not counted at all.
+     *
+     * @param originalTokens tokens of the prompt with the whole input
+     */
+    record Fitted(String prompt, int tokens, int originalTokens) {
+        boolean trimmed() {
+            return tokens < originalTokens;
+        }
+    }
+
+    private PromptFitter() {
+    }
+
+    static Fitted fit(LanguageModelService model, Function<CharSequence, String> template, CharSequence input) {
+        String prompt = template.apply(input);
+        int limit = model.maxPromptTokens();
+        if (limit == Integer.MAX_VALUE) {
+            return new Fitted(prompt, -1, -1);
+        }
+        int tokens = model.countTokens(prompt);
+        if (tokens <= limit) {
+            return new Fitted(prompt, tokens, tokens);
+        }
+
+        String text = input.toString();
+        Fitted fitted = longestFitting(model, template, text, cuts(text, "\n\n"), limit);
+        if (fitted == null) {
+            fitted = longestFitting(model, template, text, cuts(text, " "), limit);
+        }
+        if (fitted == null) {
+            int bare = model.countTokens(template.apply(CUT_NOTE));
+            throw new IllegalArgumentException(String.format(
+                    "Prompt needs %d tokens without its input but the budget of %s is %d", bare, model.getModelName(), limit));
+        }
+        return new Fitted(fitted.prompt(), fitted.tokens(), tokens);
+    }
+
+    /**
+     * Ends of the non-empty pieces of {@code text} before each {@code separator}, in ascending order.
+     */
+    private static List<Integer> cuts(String text, String separator) {
+        List<Integer> cuts = new ArrayList<>();
+        for (int at = text.indexOf(separator); at >= 0; at = text.indexOf(separator, at + separator.length())) {
+            if (at > 0 && (cuts.isEmpty() || cuts.getLast() < at)) {
+                cuts.add(at);
+            }
+        }
+        return cuts;
+    }
+
+    /**
+     * The prompt with the longest prefix of {@code text} ending at one of {@code cuts} that fits, or null.
+     */
+    private static Fitted longestFitting(LanguageModelService model, Function<CharSequence, String> template,
+                                         String text, List<Integer> cuts, int limit) {
+        Fitted best = null;
+        int low = 0;
+        int high = cuts.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            String prompt = template.apply(text.substring(0, cuts.get(middle)).stripTrailing() + CUT_NOTE);
+            int tokens = model.countTokens(prompt);
+            if (tokens <= limit) {
+                best = new Fitted(prompt, tokens, tokens);
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,360 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.model.Domain;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record of every question generated into a solutions root, stored in {@value #FILE_NAME}
+ * at the root. Each record holds the domain, slug, title, SHA-256 of the README and creation time,
+ * framed by its length and a CRC32 so that a record torn by a crash is detected and cut off on open.
+ *
+ * <p>The file is read through a memory-mapped buffer. Opening it scans the records once to build a
+ * map from domain and slug to record offset, so lookups are O(1) and listing never touches the
+ * question directories. A missing catalogue is bootstrapped from the directories already on disk.
+ *
+ * <p>An open catalogue holds an exclusive lock on the file, since appends work from the offsets read on
+ * open: a second process, e.g. a CLI run next to a running daemon, fails to open it instead of
+ * appending over records it has not seen.
+ */
+@Slf4j
+public class QuestionCatalogue implements AutoCloseable {
+    public static final String FILE_NAME = ".catalogue";
+    private static final int MAGIC = 0x51434154;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int HASH_BYTES = 32;
+    private static final int MAX_TITLE_CHARS = 200;
+    private static final int MAX_SLUG_CHARS = 50;
+
+    /**
+     * One generated question. {@code offset} is the position of its record in the catalogue file.
+     */
+    public record Entry(Domain domain, String slug, String title, String contentHash, Instant createdAt, long offset) {
+    }
+
+    private final Path solutionsRoot;
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, Long> offsets = new HashMap<>();
+    private final Set<String> reserved = new HashSet<>();
+    private MappedByteBuffer mapped;
+
+    private QuestionCatalogue(Path solutionsRoot, Path file, FileChannel channel) {
+        this.solutionsRoot = solutionsRoot;
+        this.file = file;
+        this.channel = channel;
+    }
+
+    public static QuestionCatalogue open(Path solutionsRoot) {
+        Path file = solutionsRoot.resolve(FILE_NAME);
+        try {
+            Files.createDirectories(solutionsRoot);
+            boolean existed = Files.exists(file);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!tryLock(channel)) {
+                channel.close();
+                throw new IllegalStateException("Question catalogue " + file
+                        + " is in use by another generator; send requests to a running daemon with REMOTE or stop it first");
+            }
+            QuestionCatalogue catalogue = new QuestionCatalogue(solutionsRoot, file, channel);
+            try {
+                if (existed && channel.size() >= HEADER_BYTES) {
+                    catalogue.load();
+                } else {
+                    catalogue.bootstrap();
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return catalogue;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open question catalogue at " + file, e);
+        }
+    }
+
+    /**
+     * Takes the exclusive lock that is released when the channel is closed. Returns false if another
+     * process, or another catalogue in this process, holds it.
+     */
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    public synchronized Entry find(Domain domain, String slug) {
+        Long offset = offsets.get(key(domain, slug));
+        return offset == null ? null : read(offset);
+    }
+
+    /**
+     * Whether {@code slug} is catalogued with exactly {@code readme} as its content, i.e. the question was
+     * recorded by a run that stopped before it could note that itself.
+     */
+    public synchronized boolean contains(Domain domain, String slug, byte[] readme) {
+        Entry entry = find(domain, slug);
+        return entry != null && entry.contentHash().equals(HexFormat.of().formatHex(sha256(readme)));
+    }
+
+    /**
+     * All questions in creation order, optionally restricted to one domain.
+     */
+    public synchronized List<Entry> list(Domain domain) {
+        List<Entry> entries = new ArrayList<>();
+        long end = mapped.capacity();
+        for (long offset = HEADER_BYTES; offset < end; offset += recordBytes(offset)) {
+            Entry entry = read(offset);
+            if (entry != null && (domain == null || entry.domain() == domain)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    public synchronized int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Reserves a slug in {@code domain} based on {@code preferred}, adding {@code _2}, {@code _3}, ...
+     * when it is already catalogued, reserved by a question in progress or present as a directory.
+     * The reservation lasts until the question is {@linkplain #append appended} or {@linkplain #release released}.
+     */
+    public synchronized String allocateSlug(Domain domain, String preferred) {
+        String base = preferred.isEmpty() ? "question" : preferred;
+        String slug = base;
+        for (int n = 2; isTaken(domain, slug); n++) {
+            String suffix = "_" + n;
+            slug = (base.length() + suffix.length() > MAX_SLUG_CHARS
+                    ? base.substring(0, MAX_SLUG_CHARS - suffix.length())
+                    : base) + suffix;
+        }
+        reserved.add(key(domain, slug));
+        return slug;
+    }
+
+    /**
+     * Reserves exactly {@code slug} for a question that is being resumed into its existing directory,
+     * or, if another question has taken the slug meanwhile, a variant as in {@link #allocateSlug}.
+     */
+    public synchronized String reclaimSlug(Domain domain, String slug) {
+        String key = key(domain, slug);
+        if (offsets.containsKey(key) || reserved.contains(key)) {
+            return allocateSlug(domain, slug);
+        }
+        reserved.add(key);
+        return slug;
+    }
+
+    public synchronized void release(Domain domain, String slug) {
+        reserved.remove(key(domain, slug));
+    }
+
+    /**
+     * Records a question whose files have been written, taking its title and content hash from the README.
+     */
+    public synchronized Entry append(Domain domain, String slug, byte[] readme, Instant createdAt) {
+        String key = key(domain, slug);
+        if (offsets.containsKey(key)) {
+            throw new IllegalStateException("Question " + key + " is already catalogued");
+        }
+        String title = titleOf(new String(readme, StandardCharsets.UTF_8));
+        byte[] payload = encode(domain, slug, title, sha256(readme), createdAt);
+        ByteBuffer record = ByteBuffer.allocate(4 + payload.length + 4);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+        try {
+            long offset = channel.size();
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            channel.force(false);
+            remap();
+            offsets.put(key, offset);
+            reserved.remove(key);
+            return read(offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to question catalogue " + file, e);
+        }
+    }
+
+    private boolean isTaken(Domain domain, String slug) {
+        String key = key(domain, slug);
+        return offsets.containsKey(key) || reserved.contains(key)
+                || Files.exists(solutionsRoot.resolve(domain.name().toLowerCase()).resolve(slug));
+    }
+
+    private void load() throws IOException {
+        long start = System.nanoTime();
+        remap();
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            throw new IOException("Not a question catalogue or unsupported version: " + file);
+        }
+        long size = mapped.capacity();
+        long offset = HEADER_BYTES;
+        while (offset < size) {
+            if (!isIntact(offset, size)) {
+                log.warn("Question catalogue {} has a damaged record at offset {}, truncating it", file, offset);
+                channel.truncate(offset);
+                remap();
+                break;
+            }
+            Entry entry = read(offset);
+            if (entry != null) {
+                offsets.put(key(entry.domain(), entry.slug()), offset);
+            }
+            offset += recordBytes(offset);
+        }
+        log.info("Question catalogue {} holds {} question(s) ({} ms)", file, offsets.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Creates the catalogue file and records the questions already present under the solutions root.
+     */
+    private void bootstrap() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+        remap();
+        int imported = 0;
+        for (Domain domain : Domain.values()) {
+            Path domainPath = solutionsRoot.resolve(domain.name().toLowerCase());
+            try (Stream<Path> packages = Files.list(domainPath)) {
+                for (Path dir : (Iterable<Path>) packages.sorted()::iterator) {
+                    Path readme = dir.resolve("README.md");
+                    if (Files.isRegularFile(readme)) {
+                        append(domain, dir.getFileName().toString(), Files.readAllBytes(readme),
+                                Files.getLastModifiedTime(readme).toInstant());
+                        imported++;
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // No questions in this domain yet
+            }
+        }
+        channel.force(true);
+        log.info("Created question catalogue {} with {} existing question(s)", file, imported);
+    }
+
+    private Entry read(long offset) {
+        ByteBuffer record = mapped.duplicate().position((int) offset + 4);
+        String domainName = readString(record);
+        String slug = readString(record);
+        String title = readString(record);
+        byte[] hash = new byte[HASH_BYTES];
+        record.get(hash);
+        Instant createdAt = Instant.ofEpochMilli(record.getLong());
+        Domain domain;
+        try {
+            domain = Domain.valueOf(domainName);
+        } catch (IllegalArgumentException e) {
+            // A domain that has since been removed from the enum
+            return null;
+        }
+        return new Entry(domain, slug, title, HexFormat.of().formatHex(hash), createdAt, offset);
+    }
+
+    private long recordBytes(long offset) {
+        return 4 + Integer.toUnsignedLong(mapped.getInt((int) offset)) + 4;
+    }
+
+    private boolean isIntact(long offset, long size) {
+        if (offset + 4 > size || offset + recordBytes(offset) > size) {
+            return false;
+        }
+        int length = mapped.getInt((int) offset);
+        CRC32 crc = new CRC32();
+        crc.update(mapped.duplicate().position((int) offset + 4).limit((int) offset + 4 + length));
+        return (int) crc.getValue() == mapped.getInt((int) offset + 4 + length);
+    }
+
+    /**
+     * Maps the whole file again, so that records appended since the last mapping become visible.
+     */
+    private void remap() {
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map question catalogue " + file, e);
+        }
+    }
+
+    private static byte[] encode(Domain domain, String slug, String title, byte[] hash, Instant createdAt) {
+        byte[] domainBytes = domain.name().getBytes(StandardCharsets.UTF_8);
+        byte[] slugBytes = slug.getBytes(StandardCharsets.UTF_8);
+        byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(6 + domainBytes.length + slugBytes.length + titleBytes.length + HASH_BYTES + 8);
+        payload.putShort((short) domainBytes.length).put(domainBytes);
+        payload.putShort((short) slugBytes.length).put(slugBytes);
+        payload.putShort((short) titleBytes.length).put(titleBytes);
+        payload.put(hash).putLong(createdAt.toEpochMilli());
+        return payload.array();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * First non-blank line of the README without Markdown heading marks.
+     */
+    private static String titleOf(String readme) {
+        String title = readme.lines()
+                .map(line -> line.replaceFirst("^#+", "").strip())
+                .filter(line -> !line.isEmpty())
+                .findFirst()
+                .orElse("");
+        return title.length() > MAX_TITLE_CHARS ? title.substring(0, MAX_TITLE_CHARS) : title;
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String key(Domain domain, String slug) {
+        return domain.name() + "/" + slug;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close question catalogue {}", file, e);
+        }
+    }
+}
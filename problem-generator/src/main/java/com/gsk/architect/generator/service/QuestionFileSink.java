@@ -0,0 +1,222 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.gsk.architect.generator.model.Domain;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * Writes README.md and HINTS.md of one question incrementally while the model is still streaming.
+ * The package directory is named after the first line of the question, so question text is buffered
+ * only until that line is complete; every chunk after that goes straight to disk and is flushed,
+ * leaving a readable partial file if the run is interrupted.
+ */
+@Slf4j
+public class QuestionFileSink implements AutoCloseable {
+    private final Path domainPath;
+    private final Domain domain;
+    private final Function<String, String> packageNamer;
+    private final FileGeneratorService fileGenerator;
+    private final StringBuilder firstLineBuffer = new StringBuilder();
+    private Path dirPath;
+    private String questionPackage;
+    private boolean packageReserved;
+    private Writer readmeWriter;
+    private Writer hintsWriter;
+    private boolean completed;
+    private long writeNanos;
+    private long charsWritten;
+
+    QuestionFileSink(Path domainPath, Domain domain, Function<String, String> packageNamer, FileGeneratorService fileGenerator) {
+        this.domainPath = domainPath;
+        this.domain = domain;
+        this.packageNamer = packageNamer;
+        this.fileGenerator = fileGenerator;
+    }
+
+    /**
+     * Fixes the package name up front, so question text is written without waiting for its first line.
+     */
+    public void useQuestionPackage(String questionPackage) {
+        if (readmeWriter != null) {
+            throw new IllegalStateException("Question package is already set to " + this.questionPackage);
+        }
+        this.questionPackage = questionPackage;
+    }
+
+    /**
+     * Writes into the package of a question resumed from the {@link GenerationJournal}, overwriting the
+     * partial files an interrupted run left there.
+     */
+    public void resumeQuestionPackage(String questionPackage) {
+        useQuestionPackage(fileGenerator.reclaimPackage(domain, questionPackage));
+        packageReserved = true;
+    }
+
+    /**
+     * Package the question is written into, known once the first line of the question has been written.
+     */
+    public String questionPackage() {
+        if (dirPath == null) {
+            throw new IllegalStateException("Question has not been written yet");
+        }
+        return questionPackage;
+    }
+
+    public void appendQuestion(String chunk) {
+        long start = System.nanoTime();
+        try {
+            if (readmeWriter == null && questionPackage != null) {
+                openReadme();
+                readmeWriter.write(chunk);
+            } else if (readmeWriter == null) {
+                firstLineBuffer.append(chunk);
+                if (firstLineBuffer.indexOf("\n") < 0) {
+                    return;
+                }
+                openReadme();
+            } else {
+                readmeWriter.write(chunk);
+            }
+            readmeWriter.flush();
+            charsWritten += chunk.length();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write README.md", e);
+        } finally {
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Marks the end of the question stream. Needed when the whole question fits on one line.
+     */
+    public void finishQuestion() {
+        try {
+            if (readmeWriter == null) {
+                openReadme();
+            }
+            readmeWriter.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write README.md", e);
+        }
+    }
+
+    public void appendHints(String chunk) {
+        if (dirPath == null) {
+            throw new IllegalStateException("Question must be written before hints");
+        }
+        long start = System.nanoTime();
+        try {
+            if (hintsWriter == null) {
+                hintsWriter = Files.newBufferedWriter(dirPath.resolve("HINTS.md"), StandardCharsets.UTF_8);
+            }
+            hintsWriter.write(chunk);
+            hintsWriter.flush();
+            charsWritten += chunk.length();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write HINTS.md", e);
+        } finally {
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Closes HINTS.md and writes the Solution.java skeleton. Returns the package directory.
+     */
+    public Path complete() {
+        try {
+            if (hintsWriter == null) {
+                appendHints("");
+            }
+            long start = System.nanoTime();
+            hintsWriter.close();
+            fileGenerator.writeSolutionTemplate(dirPath, domain, questionPackage);
+            fileGenerator.recordQuestion(domain, questionPackage, dirPath);
+            writeNanos += System.nanoTime() - start;
+            completed = true;
+
+            // Total time spent in file I/O for this question, interleaved with the model stream
+            MetricsRegistry metrics = MetricsRegistry.global();
+            metrics.histogram("generation_stage_duration_seconds", "stage", "file_writes").record(writeNanos);
+            metrics.counter("question_file_chars_written_total").add(charsWritten);
+            log.info("Successfully generated question files in: {}", dirPath);
+            return dirPath;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write question files", e);
+        }
+    }
+
+    /**
+     * Path of README.md, known once the first line of the question has been written.
+     */
+    public Path readme() {
+        if (dirPath == null) {
+            throw new IllegalStateException("Question has not been written yet");
+        }
+        return dirPath.resolve("README.md");
+    }
+
+    /**
+     * Deletes the files written so far, for a question that is rejected after it has been streamed.
+     * The package directory is removed only if nothing else is left in it.
+     */
+    public void discard() {
+        closeQuietly(readmeWriter);
+        closeQuietly(hintsWriter);
+        completed = true;
+        if (dirPath == null) {
+            return;
+        }
+        fileGenerator.releasePackage(domain, questionPackage);
+        try {
+            Files.deleteIfExists(dirPath.resolve("README.md"));
+            Files.deleteIfExists(dirPath.resolve("HINTS.md"));
+            Files.deleteIfExists(dirPath);
+        } catch (DirectoryNotEmptyException e) {
+            log.info("Kept {} as it holds other files", dirPath);
+        } catch (IOException e) {
+            log.warn("Failed to delete rejected question files in: {}", dirPath, e);
+        }
+    }
+
+    private void openReadme() throws IOException {
+        if (!packageReserved) {
+            String preferred = questionPackage != null ? questionPackage : packageNamer.apply(firstLineBuffer.toString());
+            questionPackage = fileGenerator.allocatePackage(domain, preferred);
+        }
+        dirPath = domainPath.resolve(questionPackage);
+        Files.createDirectories(dirPath);
+        readmeWriter = Files.newBufferedWriter(dirPath.resolve("README.md"), StandardCharsets.UTF_8);
+        readmeWriter.write(firstLineBuffer.toString());
+        firstLineBuffer.setLength(0);
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(readmeWriter);
+        closeQuietly(hintsWriter);
+        if (!completed && dirPath != null) {
+            fileGenerator.releasePackage(domain, questionPackage);
+            log.warn("Generation did not complete, partial question files left in: {}", dirPath);
+        }
+    }
+
+    private static void closeQuietly(Writer writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Failed to close question file", e);
+        }
+    }
+}
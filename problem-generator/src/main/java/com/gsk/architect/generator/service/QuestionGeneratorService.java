@@ -1,20 +1,65 @@
 package com.gsk.architect.generator.service;
 
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.gsk.architect.generator.metrics.Span;
+import com.gsk.architect.generator.metrics.Tracer;
 import com.gsk.architect.generator.model.Domain;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.file.Path;
+
 @Slf4j
 public class QuestionGeneratorService {
     private final LanguageModelService languageModel;
     private final FileGeneratorService fileGeneratorService;
 
+    private final GenerationMode mode;
+    private final QuestionIndex questionIndex;
+    private static final int MAX_DUPLICATE_RETRIES = 2;
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private final Tracer tracer = Tracer.global();
+
+    /**
+     * How a question and its hints are requested from the model.
+     */
+    public enum GenerationMode {
+        /** One call for the question, a second call for the hints. */
+        TWO_CALLS,
+        /** One call returning slug, question and hints as delimited sections, falling back to two calls if unparseable. */
+        SINGLE_CALL
+    }
+
     public QuestionGeneratorService(LanguageModelService languageModel, FileGeneratorService fileGeneratorService) {
+        this(languageModel, fileGeneratorService, GenerationMode.TWO_CALLS);
+    }
+
+    public QuestionGeneratorService(LanguageModelService languageModel, FileGeneratorService fileGeneratorService,
+                                    GenerationMode mode) {
+        this(languageModel, fileGeneratorService, mode, null);
+    }
+
+    /**
+     * With a {@code questionIndex}, a question that nearly duplicates one already in the catalogue is deleted
+     * and generated again before its hints are requested, up to {@value #MAX_DUPLICATE_RETRIES} times.
+     */
+    public QuestionGeneratorService(LanguageModelService languageModel, FileGeneratorService fileGeneratorService,
+                                    GenerationMode mode, QuestionIndex questionIndex) {
         this.languageModel = languageModel;
         this.fileGeneratorService = fileGeneratorService;
+        this.mode = mode;
+        this.questionIndex = questionIndex;
+
+        if (mode == GenerationMode.SINGLE_CALL) {
+            languageModel.registerPromptPrefix(combinedPrompt("").stripTrailing());
+        }
+        languageModel.registerPromptPrefix(questionPrompt("").stripTrailing());
+        languageModel.registerPromptPrefix(hintsPrompt("").stripTrailing());
     }
 
+    // The variable part of each prompt comes last, so everything before it is a prefix shared by
+    // every call that a backend can evaluate once and reuse (see LanguageModelService#registerPromptPrefix)
     private static final String QUESTION_PROMPT_TEMPLATE = """
-            Generate a detailed system design interview question for %s domain.
+            Generate a detailed system design interview question for the domain given below.
             The question should:
             1. Be challenging and similar to real FAANG interview questions
             2. Require usage of various Data Structures and Algorithms in the solution
@@ -23,36 +68,307 @@ public class QuestionGeneratorService {
             5. Include expected throughput, latency requirements, and data volume estimates
             
             Format the response in Markdown format.
+            
+            Domain: %s
             """;
 
     private static final String HINTS_PROMPT_TEMPLATE = """
             For the following system design question, generate step-by-step hints that will guide the candidate
-            without giving away the complete solution:
+            without giving away the complete solution.
+            Format the response in Markdown format with clear sections and bullet points.
             
             %s
-            
-            Format the response in Markdown format with clear sections and bullet points.
             """;
 
-    public void generateQuestion(Domain domain) {
+    private static final String COMBINED_PROMPT_TEMPLATE = """
+            Generate a detailed system design interview question for the domain given below, together with hints for it.
+            The question should:
+            1. Be challenging and similar to real FAANG interview questions
+            2. Require usage of various Data Structures and Algorithms in the solution
+            3. Include specific requirements and constraints
+            4. Be focused on scalability and distributed systems
+            5. Include expected throughput, latency requirements, and data volume estimates
+
+            The hints should guide the candidate step by step without giving away the complete solution.
+
+            Respond with exactly three sections in this order, each introduced by its marker on a line of its own:
+            %s
+            A short name for the question in lowercase words separated by underscores, on a single line.
+            %s
+            The question, formatted in Markdown.
+            %s
+            The hints, formatted in Markdown with clear sections and bullet points.
+
+            Domain: %s
+            """;
+
+    private static String questionPrompt(String domain) {
+        return String.format(QUESTION_PROMPT_TEMPLATE, domain);
+    }
+
+    private static String hintsPrompt(CharSequence question) {
+        return String.format(HINTS_PROMPT_TEMPLATE, question);
+    }
+
+    private static String combinedPrompt(String domain) {
+        return String.format(COMBINED_PROMPT_TEMPLATE, StructuredResponseParser.SLUG_MARKER,
+                StructuredResponseParser.QUESTION_MARKER, StructuredResponseParser.HINTS_MARKER, domain);
+    }
+
+    /**
+     * Generates a question and its hints, streaming both into the lab-solutions files as they are produced.
+     * Returns the package directory of the new question.
+     */
+    public Path generateQuestion(Domain domain) {
+        return generateQuestion(domain, GenerationJournal.Job.untracked());
+    }
+
+    /**
+     * Like {@link #generateQuestion(Domain)}, recording each completed stage in {@code job}. If the job
+     * already holds a question or hints from an interrupted run, those are written out again instead of
+     * calling the model for them.
+     */
+    public Path generateQuestion(Domain domain, GenerationJournal.Job job) {
+        return generateQuestion(domain, job, CancellationToken.none());
+    }
+
+    /**
+     * Like {@link #generateQuestion(Domain, GenerationJournal.Job)}, passing {@code cancellation} to every
+     * model call. Once it is cancelled the question fails with its exception, like any failed call.
+     */
+    public Path generateQuestion(Domain domain, GenerationJournal.Job job, CancellationToken cancellation) {
         log.info("Generating question for domain: {}", domain);
 
-        // Generate the main question
-        String questionPrompt = String.format(QUESTION_PROMPT_TEMPLATE, domain.getDescription());
-        String questionContent = languageModel.generateResponse(questionPrompt);
+        long start = System.nanoTime();
+        try (Span span = tracer.start("question").attribute("domain", domain.name()).attribute("mode", mode.name())) {
+            try {
+                Path generated = null;
+                for (int attempt = 0; generated == null; attempt++) {
+                    try {
+                        generated = generateOnce(domain, span, job, cancellation);
+                    } catch (DuplicateQuestionException e) {
+                        metrics.counter("duplicate_questions_total", "domain", domain.name()).increment();
+                        span.attribute("duplicate_retries", Integer.toString(attempt + 1));
+                        if (attempt == MAX_DUPLICATE_RETRIES) {
+                            throw new IllegalStateException(String.format(
+                                    "Question still duplicates %s after %d attempts", e.match.readme(), attempt + 1));
+                        }
+                        log.warn("Generated question for domain {} duplicates {} (similarity {}), generating another",
+                                domain, e.match.readme(), String.format("%.2f", e.match.similarity()));
+                    }
+                }
+                span.attribute("package", generated.getFileName().toString());
+                metrics.counter("questions_total", "domain", domain.name(), "outcome", "success").increment();
+                return generated;
+            } catch (RuntimeException e) {
+                span.fail(e);
+                metrics.counter("questions_total", "domain", domain.name(), "outcome", "failure").increment();
+                throw e;
+            }
+        } finally {
+            metrics.histogram("question_duration_seconds", "mode", mode.name()).recordNanosSince(start);
+        }
+    }
 
-        // Generate hints
-        String hintsPrompt = String.format(HINTS_PROMPT_TEMPLATE, questionContent);
-        String hintsContent = languageModel.generateResponse(hintsPrompt);
+    private Path generateOnce(Domain domain, Span span, GenerationJournal.Job job, CancellationToken cancellation) {
+        if (job.question() != null) {
+            return resume(domain, span, job, cancellation);
+        }
+        if (mode == GenerationMode.SINGLE_CALL) {
+            Path generated = generateInSingleCall(domain, span, job, cancellation);
+            if (generated != null) {
+                return generated;
+            }
+            log.warn("Could not parse single-call response for domain {}, falling back to separate calls", domain);
+            span.attribute("fallback", "true");
+        }
+        return generateInTwoCalls(domain, span, job, cancellation);
+    }
+
+    /**
+     * Rewrites the question, and the hints if they were generated too, from an interrupted run of the job
+     * into the package it was using. The question already passed the duplicate check before it was recorded.
+     * If the interrupted run got as far as cataloguing the question, its files are complete and are kept.
+     */
+    private Path resume(Domain domain, Span span, GenerationJournal.Job job, CancellationToken cancellation) {
+        Path recorded = fileGeneratorService.recordedPackage(domain, job.questionPackage(), job.question());
+        if (recorded != null) {
+            log.info("Job {} for domain {} was already catalogued as {}", job.id(), domain, recorded);
+            span.attribute("resumed_from", "catalogue");
+            metrics.counter("journal_resumed_jobs_total", "stage", "catalogue").increment();
+            job.filesWritten(recorded);
+            return recorded;
+        }
+        log.info("Resuming job {} for domain {} from its recorded {}", job.id(), domain, job.hints() != null ? "hints" : "question");
+        span.attribute("resumed_from", job.hints() != null ? "hints" : "question");
+        metrics.counter("journal_resumed_jobs_total", "stage", job.hints() != null ? "hints" : "question").increment();
+        try (QuestionFileSink files = fileGeneratorService.openQuestionFiles(domain, QuestionGeneratorService::generatePackageName)) {
+            files.resumeQuestionPackage(job.questionPackage());
+            files.appendQuestion(job.question());
+            files.finishQuestion();
+            if (job.hints() != null) {
+                files.appendHints(job.hints());
+            } else {
+                runStage(span, "hints_call", () -> generateHints(job.question(), files, job, cancellation));
+            }
+            return completeFiles(files, job);
+        }
+    }
+
+    private Path generateInTwoCalls(Domain domain, Span span, GenerationJournal.Job job, CancellationToken cancellation) {
+        try (QuestionFileSink files = fileGeneratorService.openQuestionFiles(domain, QuestionGeneratorService::generatePackageName)) {
+            // Generate the main question; the package name comes from its first line
+            String questionPrompt = questionPrompt(domain.getDescription());
+            StringBuilder questionContent = new StringBuilder();
+            runStage(span, "question_call", () -> languageModel.streamResponse(questionPrompt, cancellation, chunk -> {
+                questionContent.append(chunk);
+                files.appendQuestion(chunk);
+            }));
+            files.finishQuestion();
+            rejectDuplicate(files, questionContent, span);
+            job.questionGenerated(files.questionPackage(), questionContent.toString());
+
+            // Generate hints
+            runStage(span, "hints_call", () -> generateHints(questionContent, files, job, cancellation));
+
+            // Create the Solution.java skeleton in lab-solutions project
+            return completeFiles(files, job);
+        }
+    }
 
-        // Generate sanitized package name from the first line of the question
-        String packageName = generatePackageName(questionContent);
+    /**
+     * Requests slug, question and hints in one response. Returns null when the response has no usable question
+     * section, after deleting whatever was streamed into the package before the response turned out malformed,
+     * e.g. at a repeated marker. A missing hints section is filled in with a second call.
+     */
+    private Path generateInSingleCall(Domain domain, Span span, GenerationJournal.Job job, CancellationToken cancellation) {
+        try (QuestionFileSink files = fileGeneratorService.openQuestionFiles(domain, QuestionGeneratorService::generatePackageName)) {
+            String prompt = combinedPrompt(domain.getDescription());
+            StringBuilder questionContent = new StringBuilder();
+            StringBuilder hintsContent = new StringBuilder();
+            StructuredResponseParser parser = new StructuredResponseParser(new StructuredResponseParser.Listener() {
+                @Override
+                public void onSlug(String slug) {
+                    String packageName = generatePackageName(slug.replace('_', ' '));
+                    if (!packageName.isEmpty()) {
+                        files.useQuestionPackage(packageName);
+                    }
+                }
+
+                @Override
+                public void onQuestion(String chunk) {
+                    // Leading blank lines would otherwise become an empty first line and an empty package name
+                    if (questionContent.isEmpty() && chunk.isBlank()) {
+                        return;
+                    }
+                    questionContent.append(chunk);
+                    files.appendQuestion(chunk);
+                }
+
+                @Override
+                public void onHints(String chunk) {
+                    if (questionContent.isEmpty()) {
+                        return;
+                    }
+                    hintsContent.append(chunk);
+                    files.appendHints(chunk);
+                }
+            });
+            runStage(span, "single_call", () -> languageModel.streamResponse(prompt, cancellation, parser::feed));
+            parser.finish();
+
+            if (!parser.sawQuestion() || questionContent.isEmpty()) {
+                // Frees the package name too, so the fallback can use it
+                files.discard();
+                return null;
+            }
+            files.finishQuestion();
+            rejectDuplicate(files, questionContent, span);
+            job.questionGenerated(files.questionPackage(), questionContent.toString());
+
+            if (!parser.sawHints() || hintsContent.toString().isBlank()) {
+                log.warn("Single-call response for domain {} had no hints, requesting them separately", domain);
+                runStage(span, "hints_call", () -> generateHints(questionContent, files, job, cancellation));
+            } else {
+                job.hintsGenerated(hintsContent.toString());
+            }
+            return completeFiles(files, job);
+        }
+    }
+
+    private static Path completeFiles(QuestionFileSink files, GenerationJournal.Job job) {
+        Path directory = files.complete();
+        job.filesWritten(directory);
+        return directory;
+    }
+
+    /**
+     * Runs one stage of a question as a child span and records its duration per stage.
+     */
+    private void runStage(Span parent, String stage, Runnable work) {
+        long start = System.nanoTime();
+        try (Span span = parent.child(stage)) {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                span.fail(e);
+                throw e;
+            }
+        } finally {
+            metrics.histogram("generation_stage_duration_seconds", "stage", stage).recordNanosSince(start);
+        }
+    }
+
+    /**
+     * Adds the question to the index, or deletes its files and throws if it nearly duplicates an indexed one.
+     */
+    private void rejectDuplicate(QuestionFileSink files, CharSequence questionContent, Span span) {
+        if (questionIndex == null) {
+            return;
+        }
+        runStage(span, "duplicate_check", () -> {
+            QuestionIndex.Match match = questionIndex.addIfUnique(files.readme(), questionContent.toString());
+            if (match != null) {
+                files.discard();
+                throw new DuplicateQuestionException(match);
+            }
+        });
+    }
+
+    private static class DuplicateQuestionException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        // Only read by the generator that threw it; not needed if the exception is ever serialized
+        private final transient QuestionIndex.Match match;
+
+        DuplicateQuestionException(QuestionIndex.Match match) {
+            super("Question duplicates " + match.readme());
+            this.match = match;
+        }
+    }
 
-        // Create the files in lab-solutions project
-        fileGeneratorService.generateQuestionFiles(domain, packageName, questionContent, hintsContent);
+    private void generateHints(CharSequence questionContent, QuestionFileSink files, GenerationJournal.Job job,
+                               CancellationToken cancellation) {
+        // The whole question is embedded, which can outgrow a small Llama context
+        PromptFitter.Fitted fitted = PromptFitter.fit(languageModel, QuestionGeneratorService::hintsPrompt, questionContent);
+        if (fitted.trimmed()) {
+            log.warn("Cut the hints prompt from {} to {} tokens to fit the prompt budget of {} tokens of {}",
+                    fitted.originalTokens(), fitted.tokens(), languageModel.maxPromptTokens(), languageModel.getModelName());
+            metrics.counter("prompts_trimmed_total", "stage", "hints").increment();
+        }
+        String hintsPrompt = fitted.prompt();
+        StringBuilder hintsContent = new StringBuilder();
+        languageModel.streamResponse(hintsPrompt, cancellation, chunk -> {
+            hintsContent.append(chunk);
+            files.appendHints(chunk);
+        });
+        job.hintsGenerated(hintsContent.toString());
     }
 
-    private String generatePackageName(String questionContent) {
+    /**
+     * Derives a package name from the first line of the question: alphanumerics only, lowercase, words joined by
+     * underscores and at most 50 characters.
+     */
+    public static String generatePackageName(String questionContent) {
         String firstLine = questionContent.split("\\r?\\n")[0]
                 .replaceAll("[^a-zA-Z0-9\\s]", "")
                 .trim()
@@ -0,0 +1,384 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Near-duplicate index over the README.md files of a question catalogue ({@code <root>/<domain>/<slug>/README.md}).
+ * Each question is reduced to a {@link MinHasher} signature, and signatures are split into bands for
+ * locality-sensitive hashing: two questions become candidates when any band matches exactly, and only
+ * candidates are compared in full. A lookup therefore touches a handful of entries regardless of catalogue size.
+ *
+ * <p>Signatures are persisted in an append-only file under {@link #DEFAULT_DIRECTORY}, one per catalogue,
+ * together with the size and modification time of each README. Opening the index re-hashes only READMEs
+ * that are new or changed since the last run, and rewrites the file when entries have gone stale.
+ */
+@Slf4j
+public class QuestionIndex implements AutoCloseable {
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".architect-lab/index");
+    public static final double DEFAULT_THRESHOLD = 0.5;
+    private static final int MAGIC = 0x51494458;
+    private static final int VERSION = 1;
+    private static final int BANDS = 32;
+    private static final int ROWS = MinHasher.NUM_HASHES / BANDS;
+    private static final String README = "README.md";
+
+    /**
+     * An existing question that a new one was found to duplicate.
+     */
+    public record Match(Path readme, double similarity) {
+    }
+
+    private record Entry(String path, long modified, long size, int[] signature) {
+    }
+
+    private final Path catalogueRoot;
+    private final Path indexFile;
+    private final double threshold;
+    private final MinHasher hasher = new MinHasher();
+    private final List<Entry> entries = new ArrayList<>();
+    private final BandBuckets buckets = new BandBuckets();
+    private final LatencyHistogram lookupLatency = MetricsRegistry.global().histogram("question_index_lookup_seconds");
+    private DataOutputStream journal;
+
+    private QuestionIndex(Path catalogueRoot, Path indexFile, double threshold) {
+        this.catalogueRoot = catalogueRoot;
+        this.indexFile = indexFile;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Opens the index of {@code catalogueRoot}, bringing it up to date with the READMEs currently on disk.
+     */
+    public static QuestionIndex open(Path catalogueRoot, Path directory, double threshold) {
+        Path root = catalogueRoot.toAbsolutePath().normalize();
+        Path indexFile = directory.resolve(indexFileName(root));
+        QuestionIndex index = new QuestionIndex(root, indexFile, threshold);
+        try {
+            Files.createDirectories(directory);
+            index.load();
+        } catch (IOException e) {
+            index.close();
+            throw new UncheckedIOException("Failed to open question index at " + indexFile, e);
+        }
+        return index;
+    }
+
+    public static QuestionIndex open(Path catalogueRoot) {
+        return open(catalogueRoot, DEFAULT_DIRECTORY, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Returns the most similar indexed question at or above the threshold, or null if there is none.
+     */
+    public synchronized Match findDuplicate(String text) {
+        int[] signature = hasher.signature(text);
+        return signature == null ? null : bestMatch(signature);
+    }
+
+    /**
+     * Checks {@code text}, the content of {@code readme}, against the index and adds it if it is not
+     * a near-duplicate. Checking and adding happen atomically, so two concurrent near-identical
+     * questions cannot both get in. Returns the duplicated question, or null if {@code text} was added.
+     */
+    public synchronized Match addIfUnique(Path readme, String text) {
+        int[] signature = hasher.signature(text);
+        if (signature == null) {
+            return null;
+        }
+        Match match = bestMatch(signature);
+        if (match != null) {
+            return match;
+        }
+
+        String path = catalogueRoot.relativize(readme.toAbsolutePath().normalize()).toString();
+        Entry entry;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(readme, BasicFileAttributes.class);
+            entry = new Entry(path, attributes.lastModifiedTime().toMillis(), attributes.size(), signature);
+        } catch (IOException e) {
+            // Still index it for this run; the next open re-hashes it from disk
+            entry = new Entry(path, -1, -1, signature);
+        }
+        insert(entry);
+        try {
+            writeEntry(journal, entry);
+            journal.flush();
+        } catch (IOException e) {
+            log.warn("Failed to persist question index entry for {}", readme, e);
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Match bestMatch(int[] signature) {
+        long start = System.nanoTime();
+        BitSet compared = new BitSet(entries.size());
+        int[] best = {-1};
+        double[] bestSimilarity = {0};
+        for (int band = 0; band < BANDS; band++) {
+            buckets.forEach(bandKey(signature, band), entry -> {
+                if (compared.get(entry)) {
+                    return;
+                }
+                compared.set(entry);
+                double similarity = MinHasher.similarity(signature, entries.get(entry).signature());
+                if (similarity >= threshold && similarity > bestSimilarity[0]) {
+                    best[0] = entry;
+                    bestSimilarity[0] = similarity;
+                }
+            });
+        }
+        lookupLatency.recordNanosSince(start);
+        return best[0] < 0 ? null : new Match(catalogueRoot.resolve(entries.get(best[0]).path()), bestSimilarity[0]);
+    }
+
+    private void insert(Entry entry) {
+        int id = entries.size();
+        entries.add(entry);
+        for (int band = 0; band < BANDS; band++) {
+            buckets.add(bandKey(entry.signature(), band), id);
+        }
+    }
+
+    private void load() throws IOException {
+        long start = System.nanoTime();
+        ReadResult stored = readIndexFile();
+
+        List<Entry> fresh = new ArrayList<>();
+        int reused = 0;
+        try (Stream<Path> readmes = Files.find(catalogueRoot, 3,
+                (path, attributes) -> attributes.isRegularFile() && path.getFileName().toString().equals(README))) {
+            for (Path readme : (Iterable<Path>) readmes.sorted()::iterator) {
+                BasicFileAttributes attributes = Files.readAttributes(readme, BasicFileAttributes.class);
+                String path = catalogueRoot.relativize(readme).toString();
+                long modified = attributes.lastModifiedTime().toMillis();
+                Entry known = stored.entries().get(path);
+                if (known != null && known.modified() == modified && known.size() == attributes.size()) {
+                    insert(known);
+                    reused++;
+                    continue;
+                }
+                int[] signature = hasher.signature(Files.readString(readme, StandardCharsets.UTF_8));
+                if (signature != null) {
+                    Entry entry = new Entry(path, modified, attributes.size(), signature);
+                    insert(entry);
+                    fresh.add(entry);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // The catalogue does not exist yet; every question will be new
+        }
+
+        if (!stored.intact() || stored.records() > reused) {
+            rewrite();
+        } else {
+            journal = openJournal(StandardOpenOption.APPEND);
+            for (Entry entry : fresh) {
+                writeEntry(journal, entry);
+            }
+            journal.flush();
+        }
+        log.info("Question index of {} holds {} question(s), {} re-hashed ({} ms)",
+                catalogueRoot, entries.size(), fresh.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private record ReadResult(Map<String, Entry> entries, int records, boolean intact) {
+    }
+
+    private ReadResult readIndexFile() throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!Files.exists(indexFile)) {
+            return new ReadResult(entries, 0, false);
+        }
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != MinHasher.NUM_HASHES) {
+                log.info("Question index {} has an old format, rebuilding it", indexFile);
+                return new ReadResult(entries, 0, false);
+            }
+            while (true) {
+                String path;
+                try {
+                    path = in.readUTF();
+                } catch (EOFException e) {
+                    return new ReadResult(entries, records, true);
+                }
+                long modified = in.readLong();
+                long size = in.readLong();
+                int[] signature = new int[MinHasher.NUM_HASHES];
+                for (int i = 0; i < signature.length; i++) {
+                    signature[i] = in.readInt();
+                }
+                // A later record for the same README supersedes an earlier one
+                entries.put(path, new Entry(path, modified, size, signature));
+                records++;
+            }
+        } catch (EOFException e) {
+            log.warn("Question index {} ends in a truncated record, rewriting it", indexFile);
+            return new ReadResult(entries, records, false);
+        }
+    }
+
+    /**
+     * Replaces the index file with exactly the entries in memory and reopens it for appending.
+     */
+    private void rewrite() throws IOException {
+        Path temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            writeHeader(out);
+            for (Entry entry : entries) {
+                writeEntry(out, entry);
+            }
+        }
+        try {
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        journal = openJournal(StandardOpenOption.APPEND);
+    }
+
+    private DataOutputStream openJournal(StandardOpenOption mode) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)));
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(MinHasher.NUM_HASHES);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.path());
+        out.writeLong(entry.modified());
+        out.writeLong(entry.size());
+        for (int value : entry.signature()) {
+            out.writeInt(value);
+        }
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = band * 0x9E3779B97F4A7C15L;
+        for (int row = 0; row < ROWS; row++) {
+            key = (key ^ signature[band * ROWS + row]) * 0x100000001b3L;
+        }
+        return key;
+    }
+
+    private static String indexFileName(Path catalogueRoot) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(catalogueRoot.toString().getBytes(StandardCharsets.UTF_8));
+            return "questions-" + HexFormat.of().formatHex(digest, 0, 8) + ".idx";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Failed to close question index {}", indexFile, e);
+        }
+        journal = null;
+    }
+
+    /**
+     * Multimap from band key to entry IDs without boxing: an open-addressing table of keys pointing
+     * at the head of a singly linked list of nodes stored in parallel arrays. At tens of thousands of
+     * questions this holds about a million (band, entry) pairs in a few tens of megabytes.
+     */
+    private static final class BandBuckets {
+        private long[] keys = new long[1 << 10];
+        private int[] heads = new int[1 << 10];
+        private int usedSlots;
+        private int[] nodeEntries = new int[1 << 10];
+        private int[] nodeNext = new int[1 << 10];
+        private int nodeCount;
+
+        void add(long key, int entry) {
+            if ((usedSlots + 1) * 2 > keys.length) {
+                resize();
+            }
+            int slot = slotOf(key);
+            if (heads[slot] == 0) {
+                keys[slot] = key;
+                usedSlots++;
+            }
+            if (nodeCount == nodeEntries.length) {
+                nodeEntries = Arrays.copyOf(nodeEntries, nodeCount * 2);
+                nodeNext = Arrays.copyOf(nodeNext, nodeCount * 2);
+            }
+            // Node references are stored plus one so that zero marks an empty slot or the end of a list
+            nodeEntries[nodeCount] = entry;
+            nodeNext[nodeCount] = heads[slot];
+            heads[slot] = ++nodeCount;
+        }
+
+        void forEach(long key, IntConsumer action) {
+            for (int node = heads[slotOf(key)]; node != 0; node = nodeNext[node - 1]) {
+                action.accept(nodeEntries[node - 1]);
+            }
+        }
+
+        private int slotOf(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key ^ (key >>> 32)) & mask;
+            while (heads[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldHeads = heads;
+            keys = new long[oldKeys.length * 2];
+            heads = new int[oldHeads.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldHeads[i] != 0) {
+                    int slot = slotOf(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    heads[slot] = oldHeads[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.gsk.architect.generator.service;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client-side token bucket mirroring one provider rate limit (requests or tokens per minute).
+ * It starts unlimited and learns its capacity and refill rate from the {@code x-ratelimit-*}
+ * headers of each response. Callers reserve capacity up front and are told how long to wait;
+ * the bucket may go into debt so that waiting callers are served in order of arrival.
+ */
+class RateLimitBucket {
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    private static final double NANOS_PER_MINUTE = 60e9;
+
+    private double capacity = Double.POSITIVE_INFINITY;
+    private double available = Double.POSITIVE_INFINITY;
+    private double refillPerNano;
+    private long lastRefill = System.nanoTime();
+    private long pausedUntil = lastRefill;
+
+    /**
+     * Takes {@code cost} units and returns how many nanoseconds the caller must wait before sending.
+     */
+    synchronized long reserve(double cost) {
+        long now = System.nanoTime();
+        refill(now);
+        long pause = Math.max(0, pausedUntil - now);
+        if (Double.isInfinite(capacity)) {
+            return pause;
+        }
+        available -= Math.min(cost, capacity);
+        long debt = available >= 0 || refillPerNano <= 0 ? 0 : (long) Math.ceil(-available / refillPerNano);
+        return Math.max(pause, debt);
+    }
+
+    /**
+     * Applies the limit reported by the provider. {@code reset} is the time until the bucket would be full again.
+     */
+    synchronized void update(long limit, long remaining, Duration reset) {
+        long now = System.nanoTime();
+        refill(now);
+        capacity = limit;
+        if (remaining < limit && reset != null && !reset.isZero()) {
+            refillPerNano = (limit - remaining) / (double) reset.toNanos();
+        } else {
+            // Provider limits are per minute
+            refillPerNano = limit / NANOS_PER_MINUTE;
+        }
+        // In-flight reservations are already subtracted locally, so only ever lower the estimate
+        available = Math.min(Double.isInfinite(available) ? remaining : available, remaining);
+    }
+
+    /**
+     * Holds back every caller for {@code duration}, e.g. after a 429 with a {@code retry-after} header.
+     */
+    synchronized void pause(Duration duration) {
+        pausedUntil = Math.max(pausedUntil, System.nanoTime() + duration.toNanos());
+    }
+
+    private void refill(long now) {
+        if (!Double.isInfinite(capacity)) {
+            available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+        }
+        lastRefill = now;
+    }
+
+    /**
+     * Parses reset durations in the provider's format, such as {@code 20ms}, {@code 1s} or {@code 6m0s}.
+     * Returns null if the value cannot be parsed.
+     */
+    static Duration parseDuration(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        Matcher matcher = DURATION_PART.matcher(value.strip());
+        double millis = 0;
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1_000;
+                default -> amount;
+            };
+            end = matcher.end();
+        }
+        return end == value.strip().length() ? Duration.ofNanos((long) (millis * 1_000_000)) : null;
+    }
+}
@@ -0,0 +1,130 @@
+package com.gsk.architect.generator.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded on-disk tier of the response cache. Each entry is a UTF-8 file named after its key,
+ * sharded by the first two hex characters. The last-modified time doubles as the last-access time,
+ * and the least recently used entries are evicted once the directory grows past its limit.
+ */
+@Slf4j
+class ResponseDiskCache {
+    private static final String ENTRY_SUFFIX = ".txt";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong currentBytes;
+    private final Object evictionLock = new Object();
+
+    ResponseDiskCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            this.currentBytes = new AtomicLong(entries().stream().mapToLong(ResponseDiskCache::sizeOf).sum());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open response cache at " + directory, e);
+        }
+        log.info("Response cache at {} holds {} KB (limit {} KB)", directory, currentBytes.get() / 1024, maxBytes / 1024);
+    }
+
+    String get(String key) {
+        Path entry = entryPath(key);
+        try {
+            String value = Files.readString(entry, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return value;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Failed to read cache entry {}", entry, e);
+            return null;
+        }
+    }
+
+    void put(String key, String value) {
+        Path entry = entryPath(key);
+        try {
+            Files.createDirectories(entry.getParent());
+            Path temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+            Files.writeString(temp, value, StandardCharsets.UTF_8);
+            long previousSize = Files.exists(entry) ? sizeOf(entry) : 0;
+            try {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (currentBytes.addAndGet(sizeOf(entry) - previousSize) > maxBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            // A cache write failure must never fail the generation itself
+            log.warn("Failed to write cache entry {}", entry, e);
+        }
+    }
+
+    private void evict() throws IOException {
+        synchronized (evictionLock) {
+            if (currentBytes.get() <= maxBytes) {
+                return;
+            }
+            // Evict down to 90% of the limit so that every subsequent write does not trigger another scan
+            long target = maxBytes * 9 / 10;
+            List<Path> oldestFirst = entries().stream()
+                    .sorted(Comparator.comparing(ResponseDiskCache::lastModified))
+                    .toList();
+            int evicted = 0;
+            for (Path entry : oldestFirst) {
+                if (currentBytes.get() <= target) {
+                    break;
+                }
+                long size = sizeOf(entry);
+                if (Files.deleteIfExists(entry)) {
+                    currentBytes.addAndGet(-size);
+                    evicted++;
+                }
+            }
+            log.info("Evicted {} response cache entries, {} KB remaining", evicted, currentBytes.get() / 1024);
+        }
+    }
+
+    private List<Path> entries() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX)).toList();
+        }
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.Counter;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads calls over several backends. Each call goes to the backend with the lowest expected wait,
+ * its latency EWMA times the number of calls it already has in flight. A backend that has never
+ * answered is tried first.
+ *
+ * <p>When hedging is on and the chosen backend has not answered by its own latency percentile (time to
+ * the first chunk for streamed calls), the same prompt is also sent to the next best backend. The
+ * first to answer wins and the other is cancelled. A streamed call commits to whichever backend
+ * produces the first chunk. A failed call moves on to a backend not yet tried, unless chunks have
+ * already been delivered. A backend that fails several calls in a row is left out of routing for a
+ * while, doubling the time on each repeat up to a cap.
+ */
+@Slf4j
+public class RoutingLanguageModelService implements LanguageModelService {
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int MIN_SAMPLES_TO_HEDGE = 16;
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final int EJECTION_THRESHOLD = 3;
+    private static final Duration BASE_EJECTION = Duration.ofSeconds(30);
+    private static final Duration MAX_EJECTION = Duration.ofMinutes(5);
+
+    // Queued in place of a finished attempt when the caller's token is cancelled
+    private static final Attempt CANCELLED = new Attempt(null, CancellationToken.none());
+
+    private final List<Route> routes;
+    private final double hedgePercentile;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Counter hedgesWon;
+    private final Counter hedgesLost;
+    private final Counter failovers;
+
+    /**
+     * @param hedgePercentile latency percentile of a backend after which a call to it is hedged, or 0 to disable hedging
+     */
+    public RoutingLanguageModelService(List<LanguageModelService> backends, double hedgePercentile) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend is required");
+        }
+        if (hedgePercentile < 0 || hedgePercentile >= 100) {
+            throw new IllegalArgumentException("Hedge percentile must be between 0 and 100");
+        }
+        MetricsRegistry metrics = MetricsRegistry.global();
+        Map<String, Integer> seen = new HashMap<>();
+        this.routes = new ArrayList<>();
+        for (LanguageModelService backend : backends) {
+            // Two backends of the same kind get distinct names, e.g. openai and openai#2
+            int n = seen.merge(backend.getBackendName(), 1, Integer::sum);
+            String name = n == 1 ? backend.getBackendName() : backend.getBackendName() + "#" + n;
+            routes.add(new Route(name, backend, metrics));
+        }
+        this.hedgePercentile = hedgePercentile;
+        this.hedgesWon = metrics.counter("router_hedges_total", "result", "won");
+        this.hedgesLost = metrics.counter("router_hedges_total", "result", "lost");
+        this.failovers = metrics.counter("router_failovers_total");
+    }
+
+    @Override
+    public String generateResponse(String prompt) {
+        return call(prompt, CancellationToken.none(), null);
+    }
+
+    @Override
+    public void streamResponse(String prompt, Consumer<String> onChunk) {
+        call(prompt, CancellationToken.none(), onChunk);
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        return call(prompt, cancellation, null);
+    }
+
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        call(prompt, cancellation, onChunk);
+    }
+
+    /**
+     * Every attempt runs under its own child of {@code cancellation}, so a losing or abandoned attempt is
+     * cancelled without affecting the others, and cancelling the caller's token cancels all of them.
+     */
+    private String call(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        boolean streaming = onChunk != null;
+        BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+        AtomicReference<Attempt> committed = new AtomicReference<>();
+        List<Attempt> attempts = new ArrayList<>();
+        Set<Route> tried = new HashSet<>();
+
+        Route primary = choose(tried, true);
+        primary.selected.increment();
+        attempts.add(start(primary, prompt, cancellation, onChunk, committed, finished));
+        tried.add(primary);
+        boolean hedgeArmed = hedgePercentile > 0 && routes.size() > 1;
+        Throwable lastFailure = null;
+        int collected = 0;
+        Attempt hedged = null;
+        // Wakes the wait below, also when the running attempts cannot be aborted before their next chunk
+        CancellationToken.Registration wakeOnCancel = cancellation.onCancel(() -> finished.add(CANCELLED));
+        try {
+            while (true) {
+                long hedgeDelay = hedgeArmed ? primary.hedgeDelayNanos(hedgePercentile, streaming) : -1;
+                Attempt done = hedgeDelay >= 0 ? finished.poll(hedgeDelay, TimeUnit.NANOSECONDS) : finished.take();
+                if (done == null) {
+                    // The primary is slower than usual: race it against another backend
+                    hedgeArmed = false;
+                    Route hedge = committed.get() == null ? choose(tried, false) : null;
+                    if (hedge != null) {
+                        log.debug("Hedging call to {} with {} after {} ms", primary.name, hedge.name, hedgeDelay / 1_000_000);
+                        hedged = start(hedge, prompt, cancellation, onChunk, committed, finished);
+                        attempts.add(hedged);
+                        tried.add(hedge);
+                    }
+                    continue;
+                }
+                hedgeArmed = false;
+                // A cancelled caller neither gets a late answer nor fails over to another backend
+                cancellation.throwIfCancelled();
+                if (done.failure == null && (!streaming || committed.compareAndSet(null, done) || committed.get() == done)) {
+                    if (hedged != null) {
+                        (done == hedged ? hedgesWon : hedgesLost).increment();
+                    }
+                    return done.result;
+                }
+                if (done.failure != null) {
+                    lastFailure = done.failure;
+                    if (committed.get() == done) {
+                        // Part of the response has already reached the caller; another backend cannot continue it
+                        throw asRuntime(done.failure);
+                    }
+                }
+                if (++collected < attempts.size()) {
+                    // Another attempt is still running or its outcome is waiting in the queue
+                    continue;
+                }
+                Route next = committed.get() == null ? choose(tried, true) : null;
+                if (next == null) {
+                    throw asRuntime(lastFailure);
+                }
+                log.warn("Call to {} failed ({}), retrying on {}", done.route.name, lastFailure.getMessage(), next.name);
+                failovers.increment();
+                attempts.add(start(next, prompt, cancellation, onChunk, committed, finished));
+                tried.add(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a model response", e);
+        } finally {
+            wakeOnCancel.close();
+            for (Attempt attempt : attempts) {
+                if (!attempt.finished) {
+                    attempt.cancelled = true;
+                    attempt.cancellation.cancel();
+                    attempt.future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private Attempt start(Route route, String prompt, CancellationToken cancellation, Consumer<String> onChunk,
+                          AtomicReference<Attempt> committed, BlockingQueue<Attempt> finished) {
+        Attempt attempt = new Attempt(route, cancellation.child());
+        route.inFlight.incrementAndGet();
+        attempt.future = executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                if (onChunk == null) {
+                    attempt.result = route.service.generateResponse(prompt, attempt.cancellation);
+                } else {
+                    route.service.streamResponse(prompt, attempt.cancellation, chunk -> {
+                        if (attempt.firstChunkNanos == 0) {
+                            attempt.firstChunkNanos = System.nanoTime() - start;
+                        }
+                        if (!committed.compareAndSet(null, attempt) && committed.get() != attempt) {
+                            attempt.cancelled = true;
+                            throw new CancellationException("Another backend is already answering");
+                        }
+                        try {
+                            onChunk.accept(chunk);
+                        } catch (RuntimeException e) {
+                            attempt.callerFailed = true;
+                            throw e;
+                        }
+                    });
+                }
+                route.recordSuccess(System.nanoTime() - start, attempt.firstChunkNanos);
+            } catch (Throwable e) {
+                attempt.failure = e;
+                if (attempt.cancelled || attempt.cancellation.isCancelled()) {
+                    route.recordAbandoned(System.nanoTime() - start);
+                } else if (!attempt.callerFailed) {
+                    route.recordFailure(e);
+                }
+            } finally {
+                attempt.cancellation.close();
+                route.inFlight.decrementAndGet();
+                attempt.finished = true;
+                finished.add(attempt);
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * Backend with the lowest expected wait among those not in {@code excluded} and not ejected.
+     * If every candidate is ejected, returns the one whose ejection ends first when {@code allowEjected}
+     * is set, otherwise null.
+     */
+    private Route choose(Set<Route> excluded, boolean allowEjected) {
+        long now = System.nanoTime();
+        Route best = null;
+        Route leastEjected = null;
+        for (Route route : routes) {
+            if (excluded.contains(route)) {
+                continue;
+            }
+            if (route.isEjected(now)) {
+                if (leastEjected == null || route.ejectedUntil < leastEjected.ejectedUntil) {
+                    leastEjected = route;
+                }
+            } else if (best == null || route.expectedWait() < best.expectedWait()) {
+                best = route;
+            }
+        }
+        return best != null ? best : allowEjected ? leastEjected : null;
+    }
+
+    private static RuntimeException asRuntime(Throwable failure) {
+        return failure instanceof RuntimeException e ? e : new RuntimeException("Model call failed", failure);
+    }
+
+    @Override
+    public void registerPromptPrefix(String prefix) {
+        routes.forEach(route -> route.service.registerPromptPrefix(prefix));
+    }
+
+    /**
+     * The highest count of any backend, so that a prompt sized with it fits whichever backend serves it.
+     */
+    @Override
+    public int countTokens(String text) {
+        return routes.stream().mapToInt(route -> route.service.countTokens(text)).max().orElseThrow();
+    }
+
+    @Override
+    public int maxPromptTokens() {
+        return routes.stream().mapToInt(route -> route.service.maxPromptTokens()).min().orElseThrow();
+    }
+
+    @Override
+    public String getBackendName() {
+        return "routed";
+    }
+
+    /**
+     * Models of all backends, e.g. {@code gpt-4+llama-3.2-1b.gguf}. Responses are cached under this name
+     * whichever backend produced them.
+     */
+    @Override
+    public String getModelName() {
+        return routes.stream().map(route -> route.service.getModelName()).collect(Collectors.joining("+"));
+    }
+
+    @Override
+    public double getTemperature() {
+        return routes.getFirst().service.getTemperature();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Route route : routes) {
+            try {
+                route.service.close();
+            } catch (RuntimeException e) {
+                log.warn("Failed to close backend {}", route.name, e);
+            }
+        }
+    }
+
+    private static class Attempt {
+        final Route route;
+        final CancellationToken cancellation;
+        Future<?> future;
+        volatile String result;
+        volatile Throwable failure;
+        volatile long firstChunkNanos;
+        volatile boolean cancelled;
+        volatile boolean callerFailed;
+        volatile boolean finished;
+
+        Attempt(Route route, CancellationToken cancellation) {
+            this.route = route;
+            this.cancellation = cancellation;
+        }
+    }
+
+    /**
+     * One backend with its load and latency statistics.
+     */
+    private static class Route {
+        final String name;
+        final LanguageModelService service;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final Counter selected;
+        final Counter ejections;
+        private final LatencySamples completion = new LatencySamples();
+        private final LatencySamples firstChunk = new LatencySamples();
+        private double ewmaNanos = Double.NaN;
+        private int consecutiveFailures;
+        private int ejectionCount;
+        private volatile long ejectedUntil;
+
+        Route(String name, LanguageModelService service, MetricsRegistry metrics) {
+            this.name = name;
+            this.service = service;
+            this.selected = metrics.counter("router_calls_total", "backend", name);
+            this.ejections = metrics.counter("router_ejections_total", "backend", name);
+            this.ejectedUntil = System.nanoTime();
+        }
+
+        synchronized double expectedWait() {
+            // Unmeasured backends sort first so that every backend gets sampled
+            return Double.isNaN(ewmaNanos) ? inFlight.get() : ewmaNanos * (inFlight.get() + 1);
+        }
+
+        synchronized long hedgeDelayNanos(double percentile, boolean streaming) {
+            return (streaming ? firstChunk : completion).percentile(percentile);
+        }
+
+        boolean isEjected(long now) {
+            return now - ejectedUntil < 0;
+        }
+
+        synchronized void recordSuccess(long elapsedNanos, long firstChunkNanos) {
+            updateEwma(elapsedNanos);
+            completion.add(elapsedNanos);
+            if (firstChunkNanos > 0) {
+                firstChunk.add(firstChunkNanos);
+            }
+            consecutiveFailures = 0;
+            ejectionCount = 0;
+        }
+
+        /**
+         * A call cancelled after losing a hedge took at least {@code elapsedNanos}. Only the EWMA sees it,
+         * so that a backend that keeps losing looks slower; the percentiles keep completed calls only.
+         */
+        synchronized void recordAbandoned(long elapsedNanos) {
+            if (Double.isNaN(ewmaNanos) || elapsedNanos > ewmaNanos) {
+                updateEwma(elapsedNanos);
+            }
+        }
+
+        synchronized void recordFailure(Throwable failure) {
+            // Calls that were already in flight when the backend was ejected do not extend the ejection
+            if (++consecutiveFailures < EJECTION_THRESHOLD || isEjected(System.nanoTime())) {
+                return;
+            }
+            ejectionCount++;
+            Duration ejection = BASE_EJECTION.multipliedBy(1L << Math.min(ejectionCount - 1, 10));
+            if (ejection.compareTo(MAX_EJECTION) > 0) {
+                ejection = MAX_EJECTION;
+            }
+            ejectedUntil = System.nanoTime() + ejection.toNanos();
+            ejections.increment();
+            log.warn("Backend {} failed {} calls in a row ({}), leaving it out of routing for {} s",
+                    name, consecutiveFailures, failure.getMessage(), ejection.toSeconds());
+        }
+
+        private void updateEwma(long elapsedNanos) {
+            ewmaNanos = Double.isNaN(ewmaNanos) ? elapsedNanos : EWMA_WEIGHT * elapsedNanos + (1 - EWMA_WEIGHT) * ewmaNanos;
+        }
+    }
+
+    /**
+     * Ring of the most recent latencies of one kind.
+     */
+    private static class LatencySamples {
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int next;
+        private int size;
+
+        void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        /**
+         * Returns the percentile of the recent samples, or -1 if there are too few to be meaningful.
+         */
+        long percentile(double percentile) {
+            if (size < MIN_SAMPLES_TO_HEDGE) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) Math.ceil(percentile / 100 * size) - 1)];
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import com.gsk.architect.generator.model.Domain;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles generated {@code Solution.java} files in-process with {@link JavaCompiler}, so that a package
+ * name that is not a valid Java identifier (or any other compile error) is found right after generation
+ * instead of in the next Maven build of lab-solutions.
+ *
+ * <p>Sources are split into chunks of up to {@value #MAX_UNITS_PER_TASK} compilation units, and the chunks
+ * are compiled in parallel, one task per chunk. javac's file managers are not thread-safe, so each worker
+ * thread owns one {@link InMemoryFileManager} and reuses it for every chunk it compiles; its cache of the
+ * platform classes is therefore loaded once per worker rather than once per task. Sources are read into
+ * memory and class files are discarded in memory, so compiling touches the disk only to read the sources.
+ *
+ * <p>Annotation processing is off: generated skeletons do not need it, and solutions that rely on a
+ * processor such as Lombok are left to the Maven build.
+ *
+ * <p>Sources are compiled as the lab-solutions build compiles them: for its Java release and against its
+ * classpath, i.e. its {@code target/classes} and the dependency list its build writes to
+ * {@value #CLASSPATH_FILE}, not the generator's own classpath.
+ */
+@Slf4j
+public class SolutionCompiler {
+    public static final Path LAB_SOLUTIONS_MODULE = Paths.get("../lab-solutions");
+    static final String CLASSPATH_FILE = "target/classpath.txt";
+    private static final int MAX_UNITS_PER_TASK = 256;
+    // maven.compiler.release of the root pom, which lab-solutions inherits; keep the two in step
+    private static final String RELEASE = "21";
+
+    /**
+     * A source that failed to compile, with javac's error messages.
+     */
+    public record Failure(Path source, List<String> errors) {
+    }
+
+    public record Report(int compiled, List<Failure> failures, Duration elapsed) {
+        public boolean succeeded() {
+            return failures.isEmpty();
+        }
+    }
+
+    private final JavaCompiler compiler;
+    private final int threads;
+    private final List<String> options;
+
+    public SolutionCompiler() {
+        this(Runtime.getRuntime().availableProcessors(), labSolutionsClasspath(LAB_SOLUTIONS_MODULE));
+    }
+
+    public SolutionCompiler(int threads, List<Path> classpath) {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No Java compiler available; run the generator on a JDK rather than a JRE");
+        }
+        this.threads = Math.max(1, threads);
+        this.options = List.of("--release", RELEASE, "-proc:none", "-implicit:none", "-nowarn",
+                "-classpath", classpath.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator)));
+    }
+
+    /**
+     * Classpath of the lab-solutions module in {@code moduleDirectory}: its compiled classes and the dependencies
+     * listed in {@value #CLASSPATH_FILE}. Without that file, written by {@code mvn compile} in lab-solutions,
+     * solutions that import a dependency fail the check, so a warning says how to create it.
+     */
+    public static List<Path> labSolutionsClasspath(Path moduleDirectory) {
+        List<Path> classpath = new ArrayList<>();
+        classpath.add(moduleDirectory.resolve("target/classes"));
+        Path listing = moduleDirectory.resolve(CLASSPATH_FILE);
+        if (!Files.isRegularFile(listing)) {
+            log.warn("No {}, compiling solutions without the lab-solutions dependencies; run mvn compile first", listing);
+            return classpath;
+        }
+        try {
+            for (String entry : Files.readString(listing).strip().split(Pattern.quote(File.pathSeparator))) {
+                if (!entry.isBlank()) {
+                    classpath.add(Paths.get(entry.strip()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + listing, e);
+        }
+        return classpath;
+    }
+
+    /**
+     * Compiles the {@code Solution.java} of every question in {@code catalogue}, or of one domain if
+     * {@code domain} is not null.
+     */
+    public Report compileCatalogue(QuestionCatalogue catalogue, Path solutionsRoot, Domain domain) {
+        List<Path> sources = new ArrayList<>();
+        for (QuestionCatalogue.Entry entry : catalogue.list(domain)) {
+            Path source = solutionsRoot.resolve(entry.domain().name().toLowerCase()).resolve(entry.slug()).resolve("Solution.java");
+            if (Files.isRegularFile(source)) {
+                sources.add(source);
+            }
+        }
+        return compile(sources);
+    }
+
+    public Report compile(List<Path> sources) {
+        long start = System.nanoTime();
+        if (sources.isEmpty()) {
+            return new Report(0, List.of(), Duration.ZERO);
+        }
+        int chunkSize = Math.max(1, Math.min(MAX_UNITS_PER_TASK, (sources.size() + threads - 1) / threads));
+        int workers = Math.min(threads, (sources.size() + chunkSize - 1) / chunkSize);
+        Collection<InMemoryFileManager> fileManagers = new ConcurrentLinkedQueue<>();
+        ThreadLocal<InMemoryFileManager> workerFileManager = ThreadLocal.withInitial(() -> {
+            InMemoryFileManager fileManager = new InMemoryFileManager(
+                    compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8));
+            fileManagers.add(fileManager);
+            return fileManager;
+        });
+
+        List<Failure> failures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "solution-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<List<Failure>>> futures = new ArrayList<>();
+            for (int from = 0; from < sources.size(); from += chunkSize) {
+                List<Path> chunk = sources.subList(from, Math.min(sources.size(), from + chunkSize));
+                futures.add(executor.submit(() -> compileChunk(chunk, workerFileManager.get())));
+            }
+            for (Future<List<Failure>> future : futures) {
+                failures.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while compiling solutions", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to compile solutions: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (InMemoryFileManager fileManager : fileManagers) {
+                try {
+                    fileManager.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close file manager", e);
+                }
+            }
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        MetricsRegistry.global().histogram("solution_compile_seconds").record(elapsed.toNanos());
+        MetricsRegistry.global().counter("solution_compile_failures_total").add(failures.size());
+        log.info("Compiled {} solution(s) in {} ms with {} worker(s): {} failed",
+                sources.size(), elapsed.toMillis(), workers, failures.size());
+        return new Report(sources.size(), failures, elapsed);
+    }
+
+    /**
+     * Compiles one chunk. javac stops before attribution when any unit fails to parse, so after a failed
+     * task the units without errors are compiled once more on their own to find errors of the later phases.
+     */
+    private List<Failure> compileChunk(List<Path> chunk, InMemoryFileManager fileManager) {
+        Map<Path, List<String>> errors = compileUnits(chunk, fileManager);
+        if (!errors.isEmpty() && errors.size() < chunk.size()) {
+            List<Path> clean = chunk.stream().filter(source -> !errors.containsKey(source)).toList();
+            errors.putAll(compileUnits(clean, fileManager));
+        }
+        List<Failure> failures = new ArrayList<>(errors.size());
+        errors.forEach((source, messages) -> failures.add(new Failure(source, messages)));
+        return failures;
+    }
+
+    private Map<Path, List<String>> compileUnits(List<Path> sources, InMemoryFileManager fileManager) {
+        List<SourceFile> units = new ArrayList<>(sources.size());
+        for (Path source : sources) {
+            try {
+                units.add(new SourceFile(source, Files.readString(source)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + source, e);
+            }
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        compiler.getTask(null, fileManager, diagnostics, options, null, units).call();
+
+        Map<Path, List<String>> errors = new LinkedHashMap<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+                continue;
+            }
+            if (diagnostic.getSource() instanceof SourceFile source) {
+                errors.computeIfAbsent(source.path, path -> new ArrayList<>())
+                        .add("line " + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(Locale.ROOT));
+            } else {
+                // Not tied to one file, e.g. a bad option; every unit of the task is affected
+                for (SourceFile unit : units) {
+                    errors.computeIfAbsent(unit.path, path -> new ArrayList<>()).add(diagnostic.getMessage(Locale.ROOT));
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * A source file whose content has already been read into memory.
+     */
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final Path path;
+        private final String content;
+
+        SourceFile(Path path, String content) {
+            super(path.toUri(), Kind.SOURCE);
+            this.path = path;
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+    /**
+     * Reads classes through the standard file manager and discards the class files javac writes.
+     */
+    private static final class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        InMemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return OutputStream.nullOutputStream();
+                }
+            };
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            return a.toUri().equals(b.toUri());
+        }
+
+        @Override
+        public boolean hasLocation(JavaFileManager.Location location) {
+            // No output directory is configured, yet class files must still be accepted
+            return location == StandardLocation.CLASS_OUTPUT || super.hasLocation(location);
+        }
+    }
+}
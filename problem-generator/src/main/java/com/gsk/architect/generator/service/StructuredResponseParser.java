@@ -0,0 +1,117 @@
+package com.gsk.architect.generator.service;
+
+/**
+ * Incrementally splits a single-call response into its slug, question and hints sections.
+ * Each section starts with a marker line such as {@code ===QUESTION===}. Chunks may break anywhere,
+ * so text is processed a line at a time and forwarded to the {@link Listener} as soon as a line is complete.
+ * Sections must appear in the order slug, question, hints; anything else marks the response as malformed.
+ */
+class StructuredResponseParser {
+    static final String SLUG_MARKER = "===SLUG===";
+    static final String QUESTION_MARKER = "===QUESTION===";
+    static final String HINTS_MARKER = "===HINTS===";
+
+    interface Listener {
+        void onSlug(String slug);
+
+        void onQuestion(String chunk);
+
+        void onHints(String chunk);
+    }
+
+    private enum Section { PREAMBLE, SLUG, QUESTION, HINTS, MALFORMED }
+
+    private final Listener listener;
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder slug = new StringBuilder();
+    private Section section = Section.PREAMBLE;
+    private boolean sawQuestion;
+    private boolean sawHints;
+
+    StructuredResponseParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    void feed(String chunk) {
+        int start = 0;
+        int newline;
+        while ((newline = chunk.indexOf('\n', start)) >= 0) {
+            line.append(chunk, start, newline + 1);
+            processLine(line.toString());
+            line.setLength(0);
+            start = newline + 1;
+        }
+        line.append(chunk, start, chunk.length());
+    }
+
+    /**
+     * Processes a trailing line without a newline. Call once after the last chunk.
+     */
+    void finish() {
+        if (!line.isEmpty()) {
+            processLine(line.toString());
+            line.setLength(0);
+        }
+        if (section == Section.SLUG) {
+            emitSlug();
+        }
+    }
+
+    boolean sawQuestion() {
+        return sawQuestion && section != Section.MALFORMED;
+    }
+
+    boolean sawHints() {
+        return sawHints && section != Section.MALFORMED;
+    }
+
+    private void processLine(String text) {
+        Section marker = markerOf(text);
+        if (marker != null) {
+            enter(marker);
+            return;
+        }
+        switch (section) {
+            case SLUG -> slug.append(text.strip());
+            case QUESTION -> listener.onQuestion(text);
+            case HINTS -> listener.onHints(text);
+            default -> {
+                // Text before the first marker or after the response became malformed is dropped
+            }
+        }
+    }
+
+    private void enter(Section next) {
+        if (section == Section.MALFORMED || next.ordinal() <= section.ordinal()) {
+            section = Section.MALFORMED;
+            return;
+        }
+        if (section == Section.SLUG) {
+            emitSlug();
+        }
+        if (next == Section.HINTS && !sawQuestion) {
+            section = Section.MALFORMED;
+            return;
+        }
+        section = next;
+        sawQuestion |= next == Section.QUESTION;
+        sawHints |= next == Section.HINTS;
+    }
+
+    private void emitSlug() {
+        if (!slug.isEmpty()) {
+            listener.onSlug(slug.toString());
+        }
+    }
+
+    private static Section markerOf(String text) {
+        // Models sometimes wrap the marker in Markdown emphasis or a heading
+        String normalized = text.replace("*", "").replace("#", "").replace("`", "").strip();
+        return switch (normalized) {
+            case SLUG_MARKER -> Section.SLUG;
+            case QUESTION_MARKER -> Section.QUESTION;
+            case HINTS_MARKER -> Section.HINTS;
+            default -> null;
+        };
+    }
+}
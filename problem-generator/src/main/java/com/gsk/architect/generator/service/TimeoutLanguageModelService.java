@@ -0,0 +1,37 @@
+package com.gsk.architect.generator.service;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Gives every call to the wrapped backend a deadline of {@code timeout}, on top of any deadline or
+ * cancellation of the caller's token. Wrapped inside a {@link BoundedLanguageModelService}, the clock
+ * starts once the call has a slot, so time spent queueing behind other calls does not count.
+ */
+public class TimeoutLanguageModelService extends DelegatingLanguageModelService {
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(10);
+
+    private final Duration timeout;
+
+    public TimeoutLanguageModelService(LanguageModelService delegate, Duration timeout) {
+        super(delegate);
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Call timeout must be positive");
+        }
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        try (CancellationToken call = cancellation.child(timeout)) {
+            return delegate.generateResponse(prompt, call);
+        }
+    }
+
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        try (CancellationToken call = cancellation.child(timeout)) {
+            delegate.streamResponse(prompt, call, onChunk);
+        }
+    }
+}
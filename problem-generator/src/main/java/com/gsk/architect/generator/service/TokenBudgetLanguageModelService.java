@@ -0,0 +1,68 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.Counter;
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.Consumer;
+
+/**
+ * Counts every prompt with the backend's tokenizer before it is sent and rejects one over the budget
+ * without calling the backend. The budget is the backend's own {@link #maxPromptTokens()}, or a smaller
+ * one given on the command line to keep calls cheap. Prompt tokens are recorded per call in the
+ * {@code llm_call_prompt_tokens} histogram of the backend; the backends record the tokens they generated
+ * in {@code llm_call_completion_tokens} themselves, so responses are never tokenized again here.
+ *
+ * <p>A prompt that {@link PromptFitter} has already sized is counted once more when it is sent. That
+ * costs a tokenizer pass per call but keeps no state between the two.
+ */
+@Slf4j
+public class TokenBudgetLanguageModelService extends DelegatingLanguageModelService {
+    private final int budget;
+    private final LatencyHistogram promptTokens;
+    private final Counter rejected;
+
+    /**
+     * @param budget largest prompt to send in tokens, or {@link Integer#MAX_VALUE} for the backend's limit
+     */
+    public TokenBudgetLanguageModelService(LanguageModelService delegate, int budget, MetricsRegistry metrics) {
+        super(delegate);
+        if (budget < 1) {
+            throw new IllegalArgumentException("Prompt budget must be positive");
+        }
+        this.budget = budget;
+        String backend = delegate.getBackendName();
+        this.promptTokens = metrics.histogram("llm_call_prompt_tokens", "backend", backend);
+        this.rejected = metrics.counter("llm_prompts_over_budget_total", "backend", backend);
+    }
+
+    @Override
+    public int maxPromptTokens() {
+        return Math.min(budget, delegate.maxPromptTokens());
+    }
+
+    @Override
+    public String generateResponse(String prompt, CancellationToken cancellation) {
+        admit(prompt);
+        return delegate.generateResponse(prompt, cancellation);
+    }
+
+    @Override
+    public void streamResponse(String prompt, CancellationToken cancellation, Consumer<String> onChunk) {
+        admit(prompt);
+        delegate.streamResponse(prompt, cancellation, onChunk);
+    }
+
+    private void admit(String prompt) {
+        int tokens = delegate.countTokens(prompt);
+        int limit = maxPromptTokens();
+        if (tokens > limit) {
+            rejected.increment();
+            throw new IllegalArgumentException(String.format(
+                    "Prompt of %d tokens exceeds the budget of %d tokens for %s", tokens, limit, getModelName()));
+        }
+        promptTokens.record(tokens);
+        log.debug("Sending {} prompt token(s) of a budget of {} to {}", tokens, limit, getBackendName());
+    }
+}
@@ -0,0 +1,37 @@
+package com.gsk.architect.generator.service;
+
+/**
+ * Counts the tokens a model's tokenizer splits text into, so prompts can be sized before they are sent.
+ */
+@FunctionalInterface
+public interface TokenCounter {
+
+    /**
+     * Estimate for backends without a local tokenizer: one token per four bytes of UTF-8, as for English
+     * text with the OpenAI tokenizers, but at least one per word, number or run of punctuation. Usually
+     * a little above the exact count, so prompts sized with it still fit.
+     */
+    TokenCounter APPROXIMATE = TokenCounter::approximate;
+
+    int count(String text);
+
+    private static int approximate(String text) {
+        int pieces = 0;
+        int utf8Bytes = 0;
+        int previousKind = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            utf8Bytes += codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            int kind = Character.isWhitespace(codePoint) ? 0
+                    : Character.isLetter(codePoint) ? 1
+                    : Character.isDigit(codePoint) ? 2
+                    : 3;
+            if (kind != 0 && kind != previousKind) {
+                pieces++;
+            }
+            previousKind = kind;
+        }
+        return Math.max(pieces, (utf8Bytes + 3) / 4);
+    }
+}
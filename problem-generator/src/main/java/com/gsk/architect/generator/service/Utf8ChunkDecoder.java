@@ -0,0 +1,49 @@
+package com.gsk.architect.generator.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns a stream of token pieces into text. A single token may end in the middle of a multi-byte
+ * UTF-8 character, so trailing bytes of an incomplete sequence are held back until the next piece.
+ */
+class Utf8ChunkDecoder {
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Adds a token piece and returns the text that is now complete, possibly empty.
+     */
+    String decode(byte[] piece) {
+        pending.writeBytes(piece);
+        byte[] bytes = pending.toByteArray();
+        int complete = completePrefixLength(bytes);
+        pending.reset();
+        pending.write(bytes, complete, bytes.length - complete);
+        return new String(bytes, 0, complete, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns whatever is still pending; invalid trailing bytes become replacement characters.
+     */
+    String flush() {
+        String rest = pending.toString(StandardCharsets.UTF_8);
+        pending.reset();
+        return rest;
+    }
+
+    private static int completePrefixLength(byte[] bytes) {
+        // Walk back over at most three continuation bytes to the lead byte of the last character
+        int i = bytes.length - 1;
+        int continuation = 0;
+        while (i >= 0 && continuation < 3 && (bytes[i] & 0xC0) == 0x80) {
+            i--;
+            continuation++;
+        }
+        if (i < 0) {
+            return bytes.length;
+        }
+        int lead = bytes[i] & 0xFF;
+        int expected = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+        return bytes.length - i < expected ? i : bytes.length;
+    }
+}
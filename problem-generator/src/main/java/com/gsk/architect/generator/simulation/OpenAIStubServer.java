@@ -0,0 +1,245 @@
+package com.gsk.architect.generator.simulation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the chat completions endpoint, for exercising the OpenAI client's throughput,
+ * rate limiting and backoff without the network. It enforces a requests-per-minute limit with the
+ * same {@code x-ratelimit-*} and {@code retry-after-ms} headers as the real API, fails a configurable
+ * fraction of requests with 500, and answers with random Markdown after a configurable latency,
+ * streamed as server-sent events when the request asks for it.
+ *
+ * <p>Run it standalone and point the generator at it with {@code --openai-base-url}:
+ * <pre>
+ * java -cp problem-generator.jar com.gsk.architect.generator.simulation.OpenAIStubServer --port=8089 --rpm=600
+ * </pre>
+ */
+@Slf4j
+public class OpenAIStubServer implements AutoCloseable {
+    private static final String[] WORDS = {
+            "cache", "shard", "replica", "queue", "latency", "throughput", "partition", "index", "consistency",
+            "quorum", "leader", "follower", "stream", "batch", "window", "bucket", "token", "ledger", "graph",
+            "trie", "heap", "bloom", "filter", "ring", "hash", "snapshot", "compaction", "region", "failover",
+            "checkpoint", "watermark", "backpressure", "gateway", "session", "inventory", "catalogue", "feed"
+    };
+
+    /**
+     * Behaviour of the stub. {@code requestsPerMinute} of zero disables rate limiting.
+     */
+    public record Settings(Duration latency, int requestsPerMinute, double failureRate, int responseWords,
+                           Duration tokenInterval) {
+        public static Settings defaults() {
+            return new Settings(Duration.ofMillis(200), 600, 0.0, 300, Duration.ZERO);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Settings settings;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong responseCounter = new AtomicLong();
+    private long windowStart = System.nanoTime();
+    private int windowCount;
+
+    private OpenAIStubServer(HttpServer server, Settings settings) {
+        this.server = server;
+        this.settings = settings;
+    }
+
+    /**
+     * Starts the stub on {@code port} of the loopback interface; port 0 picks a free port.
+     */
+    public static OpenAIStubServer start(int port, Settings settings) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        OpenAIStubServer stub = new OpenAIStubServer(server, settings);
+        server.createContext("/v1/chat/completions", stub::handle);
+        server.setExecutor(stub.executor);
+        server.start();
+        log.info("OpenAI stub listening on {} with {}", stub.baseUrl(), settings);
+        return stub;
+    }
+
+    public URI baseUrl() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/v1/");
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    public long rateLimitedCount() {
+        return rateLimited.get();
+    }
+
+    public long failedCount() {
+        return failed.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            long retryAfterMillis = admit(exchange);
+            if (retryAfterMillis > 0) {
+                rateLimited.incrementAndGet();
+                exchange.getResponseHeaders().add("retry-after-ms", Long.toString(retryAfterMillis));
+                sendJson(exchange, 429, "{\"error\":{\"message\":\"Rate limit reached\",\"type\":\"requests\"}}");
+                return;
+            }
+            if (settings.failureRate() > 0 && ThreadLocalRandom.current().nextDouble() < settings.failureRate()) {
+                failed.incrementAndGet();
+                sendJson(exchange, 500, "{\"error\":{\"message\":\"Simulated server error\",\"type\":\"server_error\"}}");
+                return;
+            }
+
+            sleep(settings.latency());
+            String[] tokens = responseTokens();
+            if (request.path("stream").asBoolean(false)) {
+                stream(exchange, tokens);
+            } else {
+                sendJson(exchange, 200, completion(request, String.join("", tokens)));
+            }
+        } catch (IOException e) {
+            log.debug("Stub request failed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Counts the request against a fixed one-minute window and sets the rate limit headers.
+     * Returns how long the client should wait if the request is over the limit, or 0.
+     */
+    private synchronized long admit(HttpExchange exchange) {
+        int limit = settings.requestsPerMinute();
+        if (limit <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long windowNanos = Duration.ofMinutes(1).toNanos();
+        if (now - windowStart >= windowNanos) {
+            windowStart = now;
+            windowCount = 0;
+        }
+        long resetMillis = Math.max(1, (windowStart + windowNanos - now) / 1_000_000);
+        boolean allowed = windowCount < limit;
+        if (allowed) {
+            windowCount++;
+        }
+        exchange.getResponseHeaders().add("x-ratelimit-limit-requests", Integer.toString(limit));
+        exchange.getResponseHeaders().add("x-ratelimit-remaining-requests", Integer.toString(limit - windowCount));
+        exchange.getResponseHeaders().add("x-ratelimit-reset-requests", resetMillis + "ms");
+        return allowed ? 0 : resetMillis;
+    }
+
+    private String[] responseTokens() {
+        long id = responseCounter.incrementAndGet();
+        SplittableRandom random = new SplittableRandom(id);
+        String[] tokens = new String[settings.responseWords() + 1];
+        tokens[0] = "Design a " + WORDS[random.nextInt(WORDS.length)] + " service number " + id + "\n\n";
+        for (int i = 1; i < tokens.length; i++) {
+            tokens[i] = WORDS[random.nextInt(WORDS.length)] + (i % 15 == 0 ? ".\n" : " ");
+        }
+        return tokens;
+    }
+
+    private String completion(JsonNode request, String content) throws IOException {
+        ObjectNode response = mapper.createObjectNode()
+                .put("id", "chatcmpl-stub-" + responseCounter.get())
+                .put("object", "chat.completion")
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", request.path("model").asText("stub"));
+        ArrayNode choices = response.putArray("choices");
+        ObjectNode choice = choices.addObject().put("index", 0).put("finish_reason", "stop");
+        choice.putObject("message").put("role", "assistant").put("content", content);
+        int promptChars = 0;
+        for (JsonNode message : request.path("messages")) {
+            promptChars += message.path("content").asText("").length();
+        }
+        response.putObject("usage")
+                .put("prompt_tokens", promptChars / 4)
+                .put("completion_tokens", settings.responseWords())
+                .put("total_tokens", promptChars / 4 + settings.responseWords());
+        return mapper.writeValueAsString(response);
+    }
+
+    private void stream(HttpExchange exchange, String[] tokens) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (String token : tokens) {
+                ObjectNode chunk = mapper.createObjectNode().put("object", "chat.completion.chunk");
+                chunk.putArray("choices").addObject().put("index", 0).putObject("delta").put("content", token);
+                out.write(("data: " + mapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                sleep(settings.tokenInterval());
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        if (!duration.isZero()) {
+            Thread.sleep(duration);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        Settings defaults = Settings.defaults();
+        Settings settings = new Settings(
+                Duration.ofMillis(Long.parseLong(options.getOrDefault("latency-ms", Long.toString(defaults.latency().toMillis())))),
+                Integer.parseInt(options.getOrDefault("rpm", Integer.toString(defaults.requestsPerMinute()))),
+                Double.parseDouble(options.getOrDefault("failure-rate", Double.toString(defaults.failureRate()))),
+                Integer.parseInt(options.getOrDefault("words", Integer.toString(defaults.responseWords()))),
+                Duration.ofMillis(Long.parseLong(options.getOrDefault("token-interval-ms", "0"))));
+        OpenAIStubServer stub = start(Integer.parseInt(options.getOrDefault("port", "8089")), settings);
+        System.out.println("OpenAI stub listening on " + stub.baseUrl() + " (Ctrl+C to stop)");
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+        new CountDownLatch(1).await();
+    }
+}
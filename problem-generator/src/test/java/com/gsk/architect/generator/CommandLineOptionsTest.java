@@ -0,0 +1,31 @@
+package com.gsk.architect.generator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CommandLineOptionsTest {
+
+    @Test
+    void callTimeoutOfZeroTurnsTheDeadlineOff() {
+        CommandLineOptions options = CommandLineOptions.parse(new String[]{"OPENAI", "key", "--call-timeout=0"});
+        assertEquals(0, options.nonNegativeIntFlag("call-timeout", 600));
+        assertThrows(IllegalArgumentException.class, () -> options.intFlag("call-timeout", 600));
+    }
+
+    @Test
+    void negativeAndNonNumericValuesAreRejected() {
+        CommandLineOptions negative = CommandLineOptions.parse(new String[]{"OPENAI", "key", "--call-timeout=-1"});
+        assertThrows(IllegalArgumentException.class, () -> negative.nonNegativeIntFlag("call-timeout", 600));
+        CommandLineOptions text = CommandLineOptions.parse(new String[]{"OPENAI", "key", "--call-timeout=soon"});
+        assertThrows(IllegalArgumentException.class, () -> text.nonNegativeIntFlag("call-timeout", 600));
+    }
+
+    @Test
+    void missingFlagTakesTheDefault() {
+        CommandLineOptions options = CommandLineOptions.parse(new String[]{"OPENAI", "key"});
+        assertEquals(600, options.nonNegativeIntFlag("call-timeout", 600));
+        assertEquals(4, options.intFlag("max-in-flight", 4));
+    }
+}
@@ -0,0 +1,100 @@
+package com.gsk.architect.generator.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BpeTokenizerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mergesTheLowestRankedPairFirst() {
+        // Merging "bc" first would allow "bcd" and leave two tokens; "ab" ranks lower, leaving ab|c|d
+        BpeTokenizer tokenizer = tokenizer(Map.of("ab", 300, "bc", 301, "bcd", 302));
+        assertEquals(3, tokenizer.mergedLength("abcd"));
+    }
+
+    @Test
+    void mergesAgainWithTheNeighboursOfAMergedPair() {
+        BpeTokenizer tokenizer = tokenizer(Map.of("ab", 300, "abab", 301, "ababc", 302));
+        assertEquals(1, tokenizer.mergedLength("ababc"));
+        assertEquals(2, tokenizer.mergedLength("ababa"));
+    }
+
+    @Test
+    void bytesWithoutMergesStayOneTokenEach() {
+        BpeTokenizer tokenizer = tokenizer(Map.of());
+        assertEquals(5, tokenizer.mergedLength("hello"));
+        assertEquals(0, tokenizer.mergedLength(""));
+    }
+
+    @Test
+    void countsEachPieceOfTheEncodingPattern() {
+        BpeTokenizer tokenizer = tokenizer(Map.of("hello", 300, " world", 301));
+        // cl100k_base splits into "hello", " world" and "!"
+        assertEquals(3, tokenizer.count("hello world!"));
+        // Not " hello": a line break is a piece of its own
+        assertEquals(5, tokenizer.count("hello world\nhello world"));
+        assertEquals(0, tokenizer.count(""));
+    }
+
+    @Test
+    void countsMultiByteCharactersByTheirUtf8Bytes() {
+        BpeTokenizer tokenizer = tokenizer(Map.of());
+        // "é" is two bytes in UTF-8 and "€" three, with no merges for either
+        assertEquals(2, tokenizer.count("é"));
+        assertEquals(3, tokenizer.count("€"));
+    }
+
+    @Test
+    void loadsTheTiktokenFileFormat() throws IOException {
+        Path file = directory.resolve(BpeTokenizer.Encoding.CL100K_BASE.fileName());
+        Files.write(file, List.of(line("hello", 300), "", line(" world", 301)));
+        BpeTokenizer tokenizer = BpeTokenizer.load(BpeTokenizer.Encoding.CL100K_BASE, file);
+        assertEquals(2, tokenizer.count("hello world"));
+
+        Files.write(file, List.of("aGVsbG8=300"));
+        assertThrows(IllegalArgumentException.class, () -> BpeTokenizer.load(BpeTokenizer.Encoding.CL100K_BASE, file));
+    }
+
+    @Test
+    void fallsBackToTheApproximationWithoutATable() {
+        assertSame(TokenCounter.APPROXIMATE, BpeTokenizer.forModel("gpt-4", directory.resolve("missing")));
+    }
+
+    @Test
+    void choosesTheEncodingOfTheModel() {
+        assertEquals(BpeTokenizer.Encoding.O200K_BASE, BpeTokenizer.Encoding.forModel("gpt-4o-mini"));
+        assertEquals(BpeTokenizer.Encoding.O200K_BASE, BpeTokenizer.Encoding.forModel("o3"));
+        assertEquals(BpeTokenizer.Encoding.CL100K_BASE, BpeTokenizer.Encoding.forModel("gpt-4"));
+        assertEquals(BpeTokenizer.Encoding.CL100K_BASE, BpeTokenizer.Encoding.forModel("gpt-3.5-turbo"));
+    }
+
+    private static BpeTokenizer tokenizer(Map<String, Integer> merges) {
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int b = 0; b < 256; b++) {
+            ranks.put(String.valueOf((char) b), b);
+        }
+        merges.forEach((token, rank) ->
+                ranks.put(new String(token.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1), rank));
+        return new BpeTokenizer(BpeTokenizer.Encoding.CL100K_BASE, ranks);
+    }
+
+    private static String line(String token, int rank) {
+        return Base64.getEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8)) + " " + rank;
+    }
+}
@@ -0,0 +1,161 @@
+package com.gsk.architect.generator.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationJournalTest {
+    private static final String BATCH = "ECOMMERCE x3";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void reopeningResumesEachJobAfterItsLastRecordedStage() {
+        Path file = root.resolve(GenerationJournal.FILE_NAME);
+        GenerationJournal interrupted = GenerationJournal.open(file, BATCH);
+        interrupted.job("0").questionGenerated("design_a_cart", "# Design a cart");
+        GenerationJournal.Job withHints = interrupted.job("1");
+        withHints.questionGenerated("design_a_queue", "# Design a queue");
+        withHints.hintsGenerated("# Hints");
+        GenerationJournal.Job done = interrupted.job("2");
+        done.questionGenerated("design_a_feed", "# Design a feed");
+        done.hintsGenerated("# Hints");
+        done.filesWritten(root.resolve("ecommerce").resolve("design_a_feed"));
+        // Not closed, as after a crash
+
+        try (GenerationJournal journal = GenerationJournal.open(file, BATCH)) {
+            GenerationJournal.Job question = journal.job("0");
+            assertEquals("design_a_cart", question.questionPackage());
+            assertEquals("# Design a cart", question.question());
+            assertNull(question.hints());
+            assertFalse(question.isComplete());
+
+            assertEquals("# Hints", journal.job("1").hints());
+            assertFalse(journal.job("1").isComplete());
+
+            assertTrue(journal.job("2").isComplete());
+            assertEquals(root.resolve("ecommerce").resolve("design_a_feed"), journal.job("2").outputDirectory());
+
+            assertNull(journal.job("3").question());
+        }
+    }
+
+    @Test
+    void tornLastRecordIsDropped() throws IOException {
+        Path file = root.resolve(GenerationJournal.FILE_NAME);
+        GenerationJournal interrupted = GenerationJournal.open(file, BATCH);
+        interrupted.job("0").questionGenerated("design_a_cart", "# Design a cart");
+        interrupted.job("0").hintsGenerated("# Hints for the cart");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (GenerationJournal journal = GenerationJournal.open(file, BATCH)) {
+            assertEquals("# Design a cart", journal.job("0").question());
+            assertNull(journal.job("0").hints());
+        }
+    }
+
+    @Test
+    void journalOfAnotherBatchIsReplaced() {
+        Path file = root.resolve(GenerationJournal.FILE_NAME);
+        GenerationJournal other = GenerationJournal.open(file, "APPLE x1");
+        other.job("0").questionGenerated("design_icloud", "# Design iCloud");
+        other.close();
+
+        try (GenerationJournal journal = GenerationJournal.open(file, BATCH)) {
+            assertNull(journal.job("0").question());
+        }
+        // The replaced journal has the new batch's header, so it resumes for this batch from now on
+        try (GenerationJournal journal = GenerationJournal.open(file, "APPLE x1")) {
+            assertNull(journal.job("0").question());
+        }
+    }
+
+    @Test
+    void closeDeletesTheJournalOnlyOnceEveryJobIsComplete() {
+        Path file = root.resolve(GenerationJournal.FILE_NAME);
+        GenerationJournal journal = GenerationJournal.open(file, BATCH);
+        journal.job("0").filesWritten(root.resolve("one"));
+        journal.job("1").questionGenerated("two", "# Two");
+        journal.close();
+        assertTrue(Files.exists(file));
+
+        journal = GenerationJournal.open(file, BATCH);
+        journal.job("1").filesWritten(root.resolve("two"));
+        journal.close();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void compactionDropsTheTextOfCompletedJobsAndKeepsUnfinishedOnes() throws IOException {
+        Path file = root.resolve(GenerationJournal.FILE_NAME);
+        String longText = "x".repeat(100 * 1024);
+        try (GenerationJournal journal = GenerationJournal.open(file, BATCH)) {
+            journal.job("pending").questionGenerated("pending", "# Pending");
+            for (int i = 0; i < 4; i++) {
+                GenerationJournal.Job job = journal.job(Integer.toString(i));
+                job.questionGenerated("q" + i, longText);
+                job.hintsGenerated(longText);
+                job.filesWritten(root.resolve("q" + i));
+            }
+            // Every second job pushes the dead text past the threshold, so the last one leaves a compacted file
+            assertTrue(Files.size(file) < longText.length(), "journal holds " + Files.size(file) + " bytes");
+
+            // Appends after compaction go to the rewritten file
+            journal.job("pending").hintsGenerated("# Pending hints");
+        }
+
+        try (GenerationJournal journal = GenerationJournal.open(file, BATCH)) {
+            for (int i = 0; i < 4; i++) {
+                GenerationJournal.Job job = journal.job(Integer.toString(i));
+                assertTrue(job.isComplete());
+                assertNull(job.question());
+                assertEquals(root.resolve("q" + i), job.outputDirectory());
+            }
+            assertEquals("# Pending", journal.job("pending").question());
+            assertEquals("# Pending hints", journal.job("pending").hints());
+        }
+    }
+
+    @Test
+    void concurrentAppendsAreAllRecorded() {
+        Path file = root.resolve(GenerationJournal.FILE_NAME);
+        int jobs = 64;
+        GenerationJournal journal = GenerationJournal.open(file, BATCH);
+        List<GenerationJournal.Job> started = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            started.add(journal.job(Integer.toString(i)));
+        }
+        try (ExecutorService workers = Executors.newFixedThreadPool(8)) {
+            for (GenerationJournal.Job job : started) {
+                workers.submit(() -> {
+                    job.questionGenerated("q" + job.id(), "# Question " + job.id());
+                    job.hintsGenerated("# Hints " + job.id());
+                });
+            }
+        }
+
+        try (GenerationJournal reopened = GenerationJournal.open(file, BATCH)) {
+            for (int i = 0; i < jobs; i++) {
+                assertEquals("# Question " + i, reopened.job(Integer.toString(i)).question());
+                assertEquals("# Hints " + i, reopened.job(Integer.toString(i)).hints());
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.gsk.architect.generator.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlamaSamplerTest {
+    private static final double TOLERANCE = 0.01;
+
+    @Test
+    void greedySamplingTakesTheLargestLogit() {
+        LlamaSampler sampler = new LlamaSampler(0f, 40, 0.9f);
+        float[] logits = {0.5f, 3f, -1f, 2.9f};
+        assertEquals(1, sampler.sample(logits, new SplittableRandom(1)));
+        LlamaSampler.Distribution distribution = sampler.distribution(logits);
+        assertArrayEquals(new int[]{1}, distribution.tokens());
+        assertEquals(1.0, distribution.probability(1));
+    }
+
+    @Test
+    void distributionKeepsTheTopKByDescendingLogit() {
+        LlamaSampler sampler = new LlamaSampler(1f, 2, 1f);
+        LlamaSampler.Distribution distribution = sampler.distribution(new float[]{0f, 2f, 1f, -3f});
+        assertArrayEquals(new int[]{1, 2}, distribution.tokens());
+        double expected = Math.exp(2) / (Math.exp(2) + Math.exp(1));
+        assertEquals(expected, distribution.probability(1), 1e-9);
+        assertEquals(1 - expected, distribution.probability(2), 1e-9);
+        assertEquals(0, distribution.probability(0));
+    }
+
+    @Test
+    void distributionCutsAtTheNucleus() {
+        LlamaSampler sampler = new LlamaSampler(1f, 10, 0.7f);
+        // Softmax of these is about 0.665, 0.245, 0.090
+        LlamaSampler.Distribution distribution = sampler.distribution(new float[]{2f, 1f, 0f});
+        assertArrayEquals(new int[]{0, 1}, distribution.tokens());
+        assertEquals(1.0, distribution.probability(0) + distribution.probability(1), 1e-9);
+    }
+
+    @Test
+    void draftMatchingTheTargetIsAlwaysAccepted() {
+        LlamaSampler.Distribution p = distribution(new int[]{3, 5}, 0.6, 0.4);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(p.accepts(3, p, random));
+            assertTrue(p.accepts(5, p, random));
+        }
+    }
+
+    @Test
+    void greedyTargetAcceptsOnlyItsOwnToken() {
+        LlamaSampler.Distribution target = distribution(new int[]{4}, 1.0);
+        LlamaSampler.Distribution draft = distribution(new int[]{4, 9}, 0.5, 0.5);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(target.accepts(4, draft, random));
+            assertFalse(target.accepts(9, draft, random));
+        }
+        assertArrayEquals(new double[]{1.0}, target.residual(draft).probabilities());
+    }
+
+    @Test
+    void residualRemovesWhatTheDraftAlreadyCovers() {
+        LlamaSampler.Distribution p = distribution(new int[]{0, 1, 2}, 0.5, 0.3, 0.2);
+        LlamaSampler.Distribution q = distribution(new int[]{0, 1}, 0.7, 0.3);
+        LlamaSampler.Distribution residual = p.residual(q);
+        assertEquals(0, residual.probability(0));
+        assertEquals(0, residual.probability(1));
+        assertEquals(1.0, residual.probability(2), 1e-9);
+    }
+
+    @Test
+    void residualOfAnEqualDistributionIsTheDistributionItself() {
+        LlamaSampler.Distribution p = distribution(new int[]{0, 1}, 0.5, 0.5);
+        assertSame(p, p.residual(p));
+    }
+
+    @Test
+    void acceptedOrResampledTokensFollowTheTargetDistribution() {
+        LlamaSampler.Distribution p = distribution(new int[]{0, 1, 2, 3}, 0.1, 0.2, 0.3, 0.4);
+        LlamaSampler.Distribution q = distribution(new int[]{0, 1, 2, 3}, 0.4, 0.3, 0.2, 0.1);
+        SplittableRandom random = new SplittableRandom(42);
+        int samples = 200_000;
+        int[] counts = new int[4];
+        int accepted = 0;
+        for (int i = 0; i < samples; i++) {
+            int token = q.sample(random);
+            if (p.accepts(token, q, random)) {
+                accepted++;
+            } else {
+                token = p.residual(q).sample(random);
+            }
+            counts[token]++;
+        }
+        for (int token = 0; token < 4; token++) {
+            assertEquals(p.probability(token), counts[token] / (double) samples, TOLERANCE, "token " + token);
+        }
+        // Acceptance rate is the overlap of the two distributions, sum of min(p, q)
+        assertEquals(0.1 + 0.2 + 0.2 + 0.1, accepted / (double) samples, TOLERANCE);
+    }
+
+    private static LlamaSampler.Distribution distribution(int[] tokens, double... probabilities) {
+        return new LlamaSampler.Distribution(tokens, probabilities);
+    }
+}
@@ -0,0 +1,115 @@
+package com.gsk.architect.generator.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptFitterTest {
+    private static final Function<CharSequence, String> TEMPLATE = input -> "Hints for:\n" + input;
+    // Tokens are words here, so the cut note costs 9 of them
+    private static final String INPUT = paragraph("a") + "\n\n" + paragraph("b") + "\n\n" + paragraph("c");
+
+    @Test
+    void promptThatFitsIsLeftWhole() {
+        WordCountingModel model = new WordCountingModel(100);
+        PromptFitter.Fitted fitted = PromptFitter.fit(model, TEMPLATE, INPUT);
+        assertEquals(TEMPLATE.apply(INPUT), fitted.prompt());
+        assertEquals(32, fitted.tokens());
+        assertFalse(fitted.trimmed());
+    }
+
+    @Test
+    void promptIsNotCountedWithoutALimit() {
+        WordCountingModel model = new WordCountingModel(Integer.MAX_VALUE);
+        PromptFitter.Fitted fitted = PromptFitter.fit(model, TEMPLATE, INPUT);
+        assertEquals(TEMPLATE.apply(INPUT), fitted.prompt());
+        assertEquals(-1, fitted.tokens());
+        assertEquals(0, model.counted);
+    }
+
+    @Test
+    void inputIsCutAfterTheLastParagraphThatFits() {
+        // Two words of template, twenty of two paragraphs and nine of the note
+        WordCountingModel model = new WordCountingModel(31);
+        PromptFitter.Fitted fitted = PromptFitter.fit(model, TEMPLATE, INPUT);
+        assertEquals(TEMPLATE.apply(paragraph("a") + "\n\n" + paragraph("b") + PromptFitter.CUT_NOTE), fitted.prompt());
+        assertEquals(31, fitted.tokens());
+        assertEquals(32, fitted.originalTokens());
+        assertTrue(fitted.trimmed());
+
+        fitted = PromptFitter.fit(new WordCountingModel(30), TEMPLATE, INPUT);
+        assertEquals(TEMPLATE.apply(paragraph("a") + PromptFitter.CUT_NOTE), fitted.prompt());
+        assertEquals(21, fitted.tokens());
+    }
+
+    @Test
+    void inputIsCutAtAWordIfNoParagraphFits() {
+        WordCountingModel model = new WordCountingModel(15);
+        PromptFitter.Fitted fitted = PromptFitter.fit(model, TEMPLATE, INPUT);
+        assertEquals(TEMPLATE.apply("a1 a2 a3 a4" + PromptFitter.CUT_NOTE), fitted.prompt());
+        assertEquals(15, fitted.tokens());
+    }
+
+    @Test
+    void promptThatCannotFitEvenWithoutItsInputIsRejected() {
+        WordCountingModel model = new WordCountingModel(10);
+        assertThrows(IllegalArgumentException.class, () -> PromptFitter.fit(model, TEMPLATE, INPUT));
+    }
+
+    private static String paragraph(String prefix) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 1; i <= 10; i++) {
+            words.append(i == 1 ? "" : " ").append(prefix).append(i);
+        }
+        return words.toString();
+    }
+
+    /**
+     * Counts whitespace-separated words as tokens and allows prompts of up to {@code limit} of them.
+     */
+    private static final class WordCountingModel implements LanguageModelService {
+        private final int limit;
+        private int counted;
+
+        WordCountingModel(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int countTokens(String text) {
+            counted++;
+            String stripped = text.strip();
+            return stripped.isEmpty() ? 0 : stripped.split("\\s+").length;
+        }
+
+        @Override
+        public int maxPromptTokens() {
+            return limit;
+        }
+
+        @Override
+        public String generateResponse(String prompt) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getBackendName() {
+            return "words";
+        }
+
+        @Override
+        public String getModelName() {
+            return "words";
+        }
+
+        @Override
+        public double getTemperature() {
+            return 0;
+        }
+    }
+}
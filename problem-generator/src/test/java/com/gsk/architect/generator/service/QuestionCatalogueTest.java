@@ -0,0 +1,168 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.model.Domain;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuestionCatalogueTest {
+    private static final Instant CREATED = Instant.parse("2024-05-01T10:15:30Z");
+
+    @TempDir
+    Path root;
+
+    @Test
+    void recordsSurviveReopening() {
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            catalogue.append(Domain.ECOMMERCE, "design_a_cart", readme("# Design a cart"), CREATED);
+            catalogue.append(Domain.APPLE, "design_icloud", readme("\n## Design iCloud"), CREATED.plusSeconds(1));
+        }
+
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            assertEquals(2, catalogue.size());
+            QuestionCatalogue.Entry cart = catalogue.find(Domain.ECOMMERCE, "design_a_cart");
+            assertNotNull(cart);
+            assertEquals("Design a cart", cart.title());
+            assertEquals(CREATED, cart.createdAt());
+            assertEquals("Design iCloud", catalogue.find(Domain.APPLE, "design_icloud").title());
+            assertNull(catalogue.find(Domain.APPLE, "design_a_cart"));
+            assertEquals(List.of("design_a_cart", "design_icloud"),
+                    catalogue.list(null).stream().map(QuestionCatalogue.Entry::slug).toList());
+            assertEquals(List.of("design_icloud"),
+                    catalogue.list(Domain.APPLE).stream().map(QuestionCatalogue.Entry::slug).toList());
+        }
+    }
+
+    @Test
+    void tornLastRecordIsCutOffOnOpen() throws IOException {
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            catalogue.append(Domain.ECOMMERCE, "first", readme("# First"), CREATED);
+            catalogue.append(Domain.ECOMMERCE, "second", readme("# Second"), CREATED);
+        }
+        Path file = root.resolve(QuestionCatalogue.FILE_NAME);
+        long intactSize;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            intactSize = channel.size();
+            channel.truncate(intactSize - 5);
+        }
+
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            assertEquals(1, catalogue.size());
+            assertNotNull(catalogue.find(Domain.ECOMMERCE, "first"));
+            assertNull(catalogue.find(Domain.ECOMMERCE, "second"));
+            // Appends continue after the last intact record
+            catalogue.append(Domain.ECOMMERCE, "second", readme("# Second"), CREATED);
+        }
+        assertEquals(intactSize, Files.size(file));
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            assertEquals(2, catalogue.size());
+        }
+    }
+
+    @Test
+    void recordWithBadChecksumIsCutOffOnOpen() throws IOException {
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            catalogue.append(Domain.ECOMMERCE, "first", readme("# First"), CREATED);
+            catalogue.append(Domain.ECOMMERCE, "second", readme("# Second"), CREATED);
+        }
+        Path file = root.resolve(QuestionCatalogue.FILE_NAME);
+        byte[] bytes = Files.readAllBytes(file);
+        // Inside the hash of the last record, so only its checksum can tell
+        bytes[bytes.length - 20] ^= 0x01;
+        Files.write(file, bytes);
+
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            assertEquals(1, catalogue.size());
+            assertNull(catalogue.find(Domain.ECOMMERCE, "second"));
+        }
+    }
+
+    @Test
+    void bootstrapsFromExistingQuestionDirectories() throws IOException {
+        Path existing = Files.createDirectories(root.resolve("ecommerce").resolve("design_a_cart"));
+        Files.writeString(existing.resolve("README.md"), "# Design a cart\n");
+        Files.createDirectories(root.resolve("ecommerce").resolve("no_readme"));
+
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            assertEquals(1, catalogue.size());
+            assertEquals("Design a cart", catalogue.find(Domain.ECOMMERCE, "design_a_cart").title());
+        }
+    }
+
+    @Test
+    void allocatesVariantsOfTakenSlugs() throws IOException {
+        Files.createDirectories(root.resolve("ecommerce").resolve("on_disk"));
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            catalogue.append(Domain.ECOMMERCE, "catalogued", readme("# Catalogued"), CREATED);
+
+            assertEquals("catalogued_2", catalogue.allocateSlug(Domain.ECOMMERCE, "catalogued"));
+            assertEquals("catalogued_3", catalogue.allocateSlug(Domain.ECOMMERCE, "catalogued"));
+            assertEquals("on_disk_2", catalogue.allocateSlug(Domain.ECOMMERCE, "on_disk"));
+            assertEquals("catalogued", catalogue.allocateSlug(Domain.APPLE, "catalogued"));
+            assertEquals("question", catalogue.allocateSlug(Domain.APPLE, ""));
+
+            String longSlug = "x".repeat(50);
+            catalogue.append(Domain.ECOMMERCE, longSlug, readme("# Long"), CREATED);
+            assertEquals("x".repeat(48) + "_2", catalogue.allocateSlug(Domain.ECOMMERCE, longSlug));
+
+            catalogue.release(Domain.ECOMMERCE, "catalogued_2");
+            assertEquals("catalogued_2", catalogue.allocateSlug(Domain.ECOMMERCE, "catalogued"));
+        }
+    }
+
+    @Test
+    void reclaimKeepsTheSlugUnlessAnotherQuestionTookIt() {
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            assertEquals("resumed", catalogue.reclaimSlug(Domain.ECOMMERCE, "resumed"));
+            catalogue.append(Domain.ECOMMERCE, "taken", readme("# Taken"), CREATED);
+            assertEquals("taken_2", catalogue.reclaimSlug(Domain.ECOMMERCE, "taken"));
+        }
+    }
+
+    @Test
+    void containsMatchesOnContent() {
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            catalogue.append(Domain.ECOMMERCE, "design_a_cart", readme("# Design a cart"), CREATED);
+
+            assertTrue(catalogue.contains(Domain.ECOMMERCE, "design_a_cart", readme("# Design a cart")));
+            assertFalse(catalogue.contains(Domain.ECOMMERCE, "design_a_cart", readme("# Design a basket")));
+            assertFalse(catalogue.contains(Domain.APPLE, "design_a_cart", readme("# Design a cart")));
+        }
+    }
+
+    @Test
+    void secondOpenFailsWhileTheFirstHoldsTheLock() {
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            assertThrows(IllegalStateException.class, () -> QuestionCatalogue.open(root));
+        }
+        QuestionCatalogue.open(root).close();
+    }
+
+    @Test
+    void appendingTheSameSlugTwiceFails() {
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            catalogue.append(Domain.ECOMMERCE, "design_a_cart", readme("# Design a cart"), CREATED);
+            assertThrows(IllegalStateException.class,
+                    () -> catalogue.append(Domain.ECOMMERCE, "design_a_cart", readme("# Again"), CREATED));
+        }
+    }
+
+    private static byte[] readme(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
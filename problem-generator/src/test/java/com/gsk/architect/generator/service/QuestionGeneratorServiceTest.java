@@ -0,0 +1,98 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.model.Domain;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuestionGeneratorServiceTest {
+    private static final String QUESTION = "# Design a shopping cart\n\nSupport 10k carts per second.\n";
+    private static final String HINTS = "# Hints\n\n- Partition carts by user\n";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void resumedJobRewritesItsRecordedTextWithoutCallingTheModel() throws IOException {
+        Path file = root.resolve(GenerationJournal.FILE_NAME);
+        GenerationJournal interrupted = GenerationJournal.open(file, "ECOMMERCE x1");
+        interrupted.job("0").questionGenerated("design_a_shopping_cart", QUESTION);
+        interrupted.job("0").hintsGenerated(HINTS);
+
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root);
+             GenerationJournal journal = GenerationJournal.open(file, "ECOMMERCE x1")) {
+            FakeModel model = new FakeModel();
+            Path directory = new QuestionGeneratorService(model, new FileGeneratorService(root, catalogue))
+                    .generateQuestion(Domain.ECOMMERCE, journal.job("0"));
+
+            assertEquals(root.resolve("ecommerce").resolve("design_a_shopping_cart"), directory);
+            assertEquals(QUESTION, Files.readString(directory.resolve("README.md")));
+            assertEquals(HINTS, Files.readString(directory.resolve("HINTS.md")));
+            assertEquals(0, model.calls.get());
+            assertTrue(journal.job("0").isComplete());
+        }
+    }
+
+    @Test
+    void resumedJobThatWasAlreadyCataloguedIsNotWrittenAgain() throws IOException {
+        Path file = root.resolve(GenerationJournal.FILE_NAME);
+        Path directory;
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root)) {
+            directory = new QuestionGeneratorService(new FakeModel(), new FileGeneratorService(root, catalogue))
+                    .generateQuestion(Domain.ECOMMERCE);
+        }
+        // A crash after the catalogue append but before the journal's FILES record leaves this behind
+        GenerationJournal interrupted = GenerationJournal.open(file, "ECOMMERCE x1");
+        interrupted.job("0").questionGenerated(directory.getFileName().toString(), QUESTION);
+        interrupted.job("0").hintsGenerated(HINTS);
+
+        try (QuestionCatalogue catalogue = QuestionCatalogue.open(root);
+             GenerationJournal journal = GenerationJournal.open(file, "ECOMMERCE x1")) {
+            FakeModel model = new FakeModel();
+            Path resumed = new QuestionGeneratorService(model, new FileGeneratorService(root, catalogue))
+                    .generateQuestion(Domain.ECOMMERCE, journal.job("0"));
+
+            assertEquals(directory, resumed);
+            assertEquals(1, catalogue.size());
+            assertFalse(Files.exists(directory.resolveSibling(directory.getFileName() + "_2")));
+            assertEquals(0, model.calls.get());
+            assertTrue(journal.job("0").isComplete());
+        }
+    }
+
+    /**
+     * Answers the question prompt with {@link #QUESTION} and the hints prompt with {@link #HINTS}.
+     */
+    private static final class FakeModel implements LanguageModelService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String generateResponse(String prompt) {
+            calls.incrementAndGet();
+            return prompt.startsWith("For the following system design question") ? HINTS : QUESTION;
+        }
+
+        @Override
+        public String getBackendName() {
+            return "fake";
+        }
+
+        @Override
+        public String getModelName() {
+            return "fake";
+        }
+
+        @Override
+        public double getTemperature() {
+            return 0;
+        }
+    }
+}
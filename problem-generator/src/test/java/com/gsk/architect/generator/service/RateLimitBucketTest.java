@@ -0,0 +1,98 @@
+package com.gsk.architect.generator.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitBucketTest {
+    // Slack for the time that passes between the calls of a test
+    private static final long SLACK_NANOS = Duration.ofMillis(200).toNanos();
+
+    @Test
+    void unlimitedUntilTheProviderReportsALimit() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        assertEquals(0, bucket.reserve(1_000_000));
+        assertEquals(0, bucket.reserve(1_000_000));
+    }
+
+    @Test
+    void reservationsWithinTheRemainingCapacityDoNotWait() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        bucket.update(100, 100, null);
+        assertEquals(0, bucket.reserve(60));
+        assertEquals(0, bucket.reserve(40));
+    }
+
+    @Test
+    void reservationBeyondTheRemainingCapacityWaitsForTheRefill() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        // 60 requests refill over the 60 seconds to reset: one per second
+        bucket.update(60, 0, Duration.ofSeconds(60));
+        assertWaits(Duration.ofSeconds(1), bucket.reserve(1));
+        // Debt accumulates, so the next caller waits behind the first
+        assertWaits(Duration.ofSeconds(3), bucket.reserve(2));
+    }
+
+    @Test
+    void fullBucketRefillsAtItsLimitPerMinute() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        bucket.update(120, 120, Duration.ZERO);
+        assertEquals(0, bucket.reserve(120));
+        // Two per second
+        assertWaits(Duration.ofSeconds(5), bucket.reserve(10));
+    }
+
+    @Test
+    void costIsCappedAtTheCapacity() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        bucket.update(10, 10, null);
+        // A single request larger than the bucket must still go through once the bucket is full
+        assertEquals(0, bucket.reserve(1_000));
+    }
+
+    @Test
+    void updatesOnlyEverLowerTheLocalEstimate() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        bucket.update(60, 0, Duration.ofSeconds(60));
+        // A late response reporting more remaining must not undo reservations made since
+        bucket.update(60, 60, null);
+        assertWaits(Duration.ofSeconds(1), bucket.reserve(1));
+    }
+
+    @Test
+    void pauseHoldsBackEveryCaller() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        bucket.pause(Duration.ofSeconds(2));
+        assertWaits(Duration.ofSeconds(2), bucket.reserve(1));
+        bucket.pause(Duration.ofMillis(1));
+        assertWaits(Duration.ofSeconds(2), bucket.reserve(1));
+    }
+
+    @Test
+    void parsesProviderResetDurations() {
+        assertEquals(Duration.ofMillis(20), RateLimitBucket.parseDuration("20ms"));
+        assertEquals(Duration.ofSeconds(1), RateLimitBucket.parseDuration("1s"));
+        assertEquals(Duration.ofMinutes(6), RateLimitBucket.parseDuration("6m0s"));
+        assertEquals(Duration.ofMillis(1_500), RateLimitBucket.parseDuration(" 1.5s "));
+        assertEquals(Duration.ofHours(1).plusMinutes(2).plusMillis(3), RateLimitBucket.parseDuration("1h2m3ms"));
+    }
+
+    @Test
+    void unparseableDurationsAreNull() {
+        assertNull(RateLimitBucket.parseDuration(null));
+        assertNull(RateLimitBucket.parseDuration(""));
+        assertNull(RateLimitBucket.parseDuration("soon"));
+        assertNull(RateLimitBucket.parseDuration("5x"));
+        assertNull(RateLimitBucket.parseDuration("1s later"));
+        assertNull(RateLimitBucket.parseDuration("x1s"));
+    }
+
+    private static void assertWaits(Duration expected, long waitNanos) {
+        assertTrue(waitNanos <= expected.toNanos() && waitNanos > expected.toNanos() - SLACK_NANOS,
+                () -> "Expected a wait of about " + expected + " but got " + Duration.ofNanos(waitNanos));
+    }
+}
@@ -0,0 +1,85 @@
+package com.gsk.architect.generator.service;
+
+import com.gsk.architect.generator.metrics.LatencyHistogram;
+import com.gsk.architect.generator.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TokenBudgetLanguageModelServiceTest {
+
+    @Test
+    void everySentPromptIsCountedAndRecorded() {
+        CountingModel model = new CountingModel();
+        MetricsRegistry metrics = new MetricsRegistry();
+        TokenBudgetLanguageModelService budget = new TokenBudgetLanguageModelService(model, 100, metrics);
+        budget.streamResponse("one two three", CancellationToken.none(), chunk -> { });
+        budget.generateResponse("one two", CancellationToken.none());
+        assertEquals(2, model.counted);
+
+        LatencyHistogram.Snapshot recorded = metrics.histogram("llm_call_prompt_tokens", "backend", "counting").snapshot();
+        assertEquals(2, recorded.count());
+        assertEquals(5, recorded.sum());
+    }
+
+    @Test
+    void promptOverTheBudgetIsRejectedWithoutCallingTheBackend() {
+        CountingModel model = new CountingModel();
+        TokenBudgetLanguageModelService budget = new TokenBudgetLanguageModelService(model, 3, new MetricsRegistry());
+        assertThrows(IllegalArgumentException.class,
+                () -> budget.generateResponse("one two three four", CancellationToken.none()));
+        assertEquals(0, model.calls);
+        assertEquals("ok", budget.generateResponse("one two three", CancellationToken.none()));
+        assertEquals(1, model.calls);
+    }
+
+    @Test
+    void budgetIsCappedByTheBackendsLimit() {
+        CountingModel model = new CountingModel();
+        assertEquals(3, new TokenBudgetLanguageModelService(model, 3, new MetricsRegistry()).maxPromptTokens());
+        assertEquals(CountingModel.LIMIT,
+                new TokenBudgetLanguageModelService(model, Integer.MAX_VALUE, new MetricsRegistry()).maxPromptTokens());
+    }
+
+    /**
+     * Counts words as tokens and records how often it counted and was called.
+     */
+    private static final class CountingModel implements LanguageModelService {
+        static final int LIMIT = 1_000;
+        private int counted;
+        private int calls;
+
+        @Override
+        public int countTokens(String text) {
+            counted++;
+            return text.strip().split("\\s+").length;
+        }
+
+        @Override
+        public int maxPromptTokens() {
+            return LIMIT;
+        }
+
+        @Override
+        public String generateResponse(String prompt) {
+            calls++;
+            return "ok";
+        }
+
+        @Override
+        public String getBackendName() {
+            return "counting";
+        }
+
+        @Override
+        public String getModelName() {
+            return "counting";
+        }
+
+        @Override
+        public double getTemperature() {
+            return 0;
+        }
+    }
+}